@@ -5,10 +5,14 @@ public final class Constants {
     public static final String NAS_IMPL_PREFIX = "tr.havelsan.ueransim.nas.impl";
     public static final String NGAP_PDU_CONTENTS = "tr.havelsan.ueransim.ngap.ngap_pdu_contents";
 
+    // class indexes generated at compile time, see the index module
+    public static final String FLOW_INDEX = "META-INF/ueransim/flows.idx";
+    public static final String NAS_TYPE_INDEX = "META-INF/ueransim/nas-types.idx";
+
     public static final int BACKEND_PORT = 5002;
 
     public static final int NGAP_PROTOCOL_ID = 60;
-    public static final int DEFAULT_STREAM_NUMBER = 1;
+    public static final int NON_UE_ASSOCIATED_STREAM_NUMBER = 0;
 
     // here assumed always 3 digit, but it can be changed to false for actual production, no problem.
     public static final boolean ALWAYS_LONG_MNC = true;
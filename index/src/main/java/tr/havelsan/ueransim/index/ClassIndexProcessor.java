@@ -0,0 +1,145 @@
+package tr.havelsan.ueransim.index;
+
+import tr.havelsan.ueransim.core.Constants;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes the class indexes which replace the classpath scans at startup, while the classes are compiled:
+ * <ul>
+ *     <li>{@link Constants#NAS_TYPE_INDEX}: every class under {@link Constants#NAS_IMPL_PREFIX}, nested ones
+ *     included, one <code>binaryName typeName</code> per line. The type name is the MTS name of the class, i.e.
+ *     the simple names of the enclosing classes and the class joined by dots.</li>
+ *     <li>{@link Constants#FLOW_INDEX}: every concrete flow under {@link Constants#FLOWS_PREFIX}, one
+ *     <code>binaryName [inputBinaryName]</code> per line.</li>
+ * </ul>
+ * An index is written only by the module containing such classes. The processor needs to see all classes of the
+ * module, so the module must be compiled completely, which is what Maven does.
+ */
+@SupportedAnnotationTypes("*")
+public class ClassIndexProcessor extends AbstractProcessor {
+    private static final String BASE_FLOW = "tr.havelsan.ueransim.BaseFlow";
+
+    private final TreeMap<String, String> nasTypes = new TreeMap<>();
+    private final TreeMap<String, String> flows = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            write(Constants.NAS_TYPE_INDEX, nasTypes);
+            write(Constants.FLOW_INDEX, flows);
+            return false;
+        }
+
+        var baseFlow = processingEnv.getElementUtils().getTypeElement(BASE_FLOW);
+        for (var element : roundEnv.getRootElements()) {
+            if (element instanceof TypeElement) {
+                visit((TypeElement) element, baseFlow);
+            }
+        }
+        return false;
+    }
+
+    private void visit(TypeElement type, TypeElement baseFlow) {
+        var elements = processingEnv.getElementUtils();
+        var packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        var binaryName = elements.getBinaryName(type).toString();
+
+        if (isInPackage(packageName, Constants.NAS_IMPL_PREFIX)) {
+            nasTypes.put(binaryName, typeName(type));
+        }
+        if (baseFlow != null && isInPackage(packageName, Constants.FLOWS_PREFIX) && isConcreteFlow(type, baseFlow)) {
+            flows.put(binaryName, inputType(type));
+        }
+
+        for (var enclosed : type.getEnclosedElements()) {
+            if (enclosed instanceof TypeElement) {
+                visit((TypeElement) enclosed, baseFlow);
+            }
+        }
+    }
+
+    private static boolean isInPackage(String packageName, String prefix) {
+        return packageName.equals(prefix) || packageName.startsWith(prefix + ".");
+    }
+
+    private boolean isConcreteFlow(TypeElement type, TypeElement baseFlow) {
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT))
+            return false;
+        var types = processingEnv.getTypeUtils();
+        return types.isSubtype(types.erasure(type.asType()), types.erasure(baseFlow.asType()));
+    }
+
+    /**
+     * Returns the binary name of the second parameter of the flow's constructor, or an empty string if there is
+     * none. Flows with several constructors are indexed without an input type, and rejected when they are started.
+     */
+    private String inputType(TypeElement flow) {
+        ExecutableElement constructor = null;
+        for (var enclosed : flow.getEnclosedElements()) {
+            if (enclosed.getKind() == ElementKind.CONSTRUCTOR) {
+                if (constructor != null) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                            "flow has multiple constructors", flow);
+                    return "";
+                }
+                constructor = (ExecutableElement) enclosed;
+            }
+        }
+        if (constructor == null || constructor.getParameters().size() < 2)
+            return "";
+
+        var parameterType = processingEnv.getTypeUtils().erasure(constructor.getParameters().get(1).asType());
+        if (parameterType.getKind() != TypeKind.DECLARED)
+            return "";
+        var parameterElement = (TypeElement) ((DeclaredType) parameterType).asElement();
+        return processingEnv.getElementUtils().getBinaryName(parameterElement).toString();
+    }
+
+    private static String typeName(TypeElement type) {
+        var name = type.getSimpleName().toString();
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing instanceof TypeElement) {
+            name = enclosing.getSimpleName() + "." + name;
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name;
+    }
+
+    private void write(String resource, TreeMap<String, String> entries) {
+        if (entries.isEmpty())
+            return;
+        try {
+            var file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", resource);
+            try (var writer = new PrintWriter(file.openWriter())) {
+                for (var entry : entries.entrySet()) {
+                    writer.println(entry.getValue().isEmpty() ? entry.getKey() : entry.getKey() + " " + entry.getValue());
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "class index could not be written: " + resource + ": " + e.getMessage());
+        }
+    }
+}
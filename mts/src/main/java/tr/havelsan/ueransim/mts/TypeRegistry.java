@@ -2,6 +2,7 @@ package tr.havelsan.ueransim.mts;
 
 import tr.havelsan.ueransim.core.exceptions.IncorrectImplementationException;
 import tr.havelsan.ueransim.utils.BiMap;
+import tr.havelsan.ueransim.utils.ClassIndex;
 import tr.havelsan.ueransim.utils.Utils;
 import tr.havelsan.ueransim.utils.bits.*;
 import tr.havelsan.ueransim.utils.octets.*;
@@ -12,12 +13,14 @@ public final class TypeRegistry {
     static final boolean ALLOW_DEEP_CONVERSION = false;
 
     private static final BiMap<String, Class<?>> types;
+    private static final Map<String, String> unloadedTypes;
     private static final Map<Class<?>, ICustomConstruct<?>> customConstructs;
     private static final Set<ICustomIsConvertable> customIsConvertables;
     private static final Map<Class<?>, ICustomConverter<?>> customConverters;
 
     static {
         types = new BiMap<>();
+        unloadedTypes = new HashMap<>();
         customConstructs = new HashMap<>();
         customIsConvertables = new HashSet<>();
         customConverters = new HashMap<>();
@@ -49,14 +52,30 @@ public final class TypeRegistry {
             registerTypeName(type.getSimpleName(), type);
     }
 
-    public static void registerTypeName(String name, Class<?> type) {
-        if (types.containsKey(name))
+    public static synchronized void registerTypeName(String name, Class<?> type) {
+        if (types.containsKey(name) || unloadedTypes.containsKey(name))
             throw new IncorrectImplementationException(name + " already exists");
         if (types.containsValue(type))
             throw new IncorrectImplementationException(type + " already exists");
         types.put(name, type);
     }
 
+    /**
+     * Registers a type by its binary class name. The class is loaded when the type is first looked up.
+     */
+    public static synchronized void registerTypeName(String name, String className) {
+        if (types.containsKey(name) || unloadedTypes.containsKey(name))
+            throw new IncorrectImplementationException(name + " already exists");
+        unloadedTypes.put(name, className);
+    }
+
+    private static void loadType(String name) {
+        var className = unloadedTypes.remove(name);
+        if (className != null) {
+            registerTypeName(name, ClassIndex.loadClass(className));
+        }
+    }
+
     private static <T> void registerCustomConstruct(Class<T> type, ICustomConstruct<T> constructor) {
         if (customConstructs.containsKey(type))
             throw new IncorrectImplementationException(type + " already exists");
@@ -93,15 +112,23 @@ public final class TypeRegistry {
         return customIsConvertables.stream().anyMatch(c -> c.isConvertable(from, to));
     }
 
-    public static Class<?> getClassByName(String name) {
+    public static synchronized Class<?> getClassByName(String name) {
+        loadType(name);
         return types.getValue(name);
     }
 
-    public static String getClassName(Class<?> type) {
+    public static synchronized String getClassName(Class<?> type) {
+        var name = Utils.getTypeName(type);
+        if (type.getName().equals(unloadedTypes.get(name))) {
+            loadType(name);
+        }
         return types.getKey(type);
     }
 
-    public static List<Class<?>> getClassesAssignableTo(Class<?>... typeArgs) {
+    public static synchronized List<Class<?>> getClassesAssignableTo(Class<?>... typeArgs) {
+        for (var name : new ArrayList<>(unloadedTypes.keySet())) {
+            loadType(name);
+        }
         return Utils.streamToList(types.valueSet().stream()
                 .filter(cls -> Arrays.stream(typeArgs).anyMatch(type -> type.isAssignableFrom(cls))));
     }
@@ -4,7 +4,6 @@ import tr.havelsan.ueransim.core.exceptions.NotImplementedException;
 import tr.havelsan.ueransim.nas.eap.Eap;
 import tr.havelsan.ueransim.nas.eap.EapAkaPrime;
 import tr.havelsan.ueransim.utils.OctetOutputStream;
-import tr.havelsan.ueransim.utils.octets.Octet2;
 
 import java.util.LinkedHashMap;
 
@@ -14,29 +13,25 @@ public class EapEncoder {
      * Encodes EAP PDU into given stream
      */
     public static void eapPdu(OctetOutputStream stream, Eap pdu) {
-        var innerStream = new OctetOutputStream();
+        int startIndex = stream.length();
 
-        innerStream.writeOctet(pdu.code.intValue());
-        innerStream.writeOctet(pdu.id);
-        innerStream.writeOctet2(0); // dummy length
-        innerStream.writeOctet(pdu.EAPType.intValue());
+        stream.writeOctet(pdu.code.intValue());
+        stream.writeOctet(pdu.id);
+        stream.writeOctet2(0); // dummy length
+        stream.writeOctet(pdu.EAPType.intValue());
 
         if (pdu.EAPType.equals(Eap.EEapType.EAP_AKA_PRIME)) {
-            encodeAKAPrime(innerStream, (EapAkaPrime) pdu);
+            encodeAKAPrime(stream, (EapAkaPrime) pdu);
         } else if (pdu.EAPType.equals(Eap.EEapType.NOTIFICATION)) {
-            encodeNotification(innerStream);
+            encodeNotification(stream);
         } else if (pdu.EAPType.equals(Eap.EEapType.IDENTITY)) {
-            encodeIdentity(innerStream);
+            encodeIdentity(stream);
         } else {
             throw new NotImplementedException("eap type not implemented yet: " + pdu.EAPType.name());
         }
 
-        var octets = innerStream.toOctetArray();
-        var realLength = new Octet2(octets.length).toOctetArray();
-        octets[2] = realLength[0];
-        octets[3] = realLength[1];
-
-        stream.writeOctets(octets);
+        // real length
+        stream.setOctet2(startIndex + 2, stream.length() - startIndex);
     }
 
     private static void encodeNotification(OctetOutputStream stream) {
@@ -8,11 +8,16 @@ import tr.havelsan.ueransim.nas.core.messages.PlainMmMessage;
 import tr.havelsan.ueransim.nas.core.messages.PlainSmMessage;
 import tr.havelsan.ueransim.nas.core.messages.SecuredMmMessage;
 import tr.havelsan.ueransim.nas.impl.enums.*;
-import tr.havelsan.ueransim.nas.impl.messages.*;
 import tr.havelsan.ueransim.utils.OctetInputStream;
 import tr.havelsan.ueransim.utils.bits.Bit4;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ConcurrentHashMap;
+
 public class NasDecoder {
+    private static final ConcurrentHashMap<Class<?>, MethodHandle> ieConstructors = new ConcurrentHashMap<>();
 
     public static NasMessage nasPdu(byte[] data) {
         return nasPdu(new OctetInputStream(data));
@@ -26,11 +31,8 @@ public class NasDecoder {
         if (epd.equals(EExtendedProtocolDiscriminator.MOBILITY_MANAGEMENT_MESSAGES)) {
             var sht = ESecurityHeaderType.fromValue(stream.readOctetI());
             if (sht.equals(ESecurityHeaderType.NOT_PROTECTED)) {
-                var messageType = EMessageType.fromValue(stream.readOctetI());
-
-                PlainMmMessage plainMmMessage = decodePlainMmMessage(stream, messageType);
+                PlainMmMessage plainMmMessage = decodePlainMmMessage(stream, stream.readOctetI());
                 plainMmMessage.securityHeaderType = sht;
-                plainMmMessage.messageType = messageType;
 
                 nasMessage = plainMmMessage;
             } else {
@@ -39,12 +41,9 @@ public class NasDecoder {
         } else {
             var pduSessionId = EPduSessionIdentity.fromValue(stream.readOctetI());
             var pti = EProcedureTransactionIdentity.fromValue(stream.readOctetI());
-            var messageType = EMessageType.fromValue(stream.readOctetI());
-
-            PlainSmMessage plainSmMessage = decodePlainSmMessage(stream, messageType);
+            PlainSmMessage plainSmMessage = decodePlainSmMessage(stream, stream.readOctetI());
             plainSmMessage.pduSessionId = pduSessionId;
             plainSmMessage.pti = pti;
-            plainSmMessage.messageType = messageType;
 
             nasMessage = plainSmMessage;
         }
@@ -53,115 +52,25 @@ public class NasDecoder {
         return nasMessage;
     }
 
-    private static PlainMmMessage decodePlainMmMessage(OctetInputStream stream, EMessageType messageType) {
-        PlainMmMessage message;
-
-        if (messageType.equals(EMessageType.AUTHENTICATION_REQUEST)) {
-            message = new AuthenticationRequest();
-        } else if (messageType.equals(EMessageType.REGISTRATION_REQUEST)) {
-            message = new RegistrationRequest();
-        } else if (messageType.equals(EMessageType.AUTHENTICATION_RESPONSE)) {
-            message = new AuthenticationResponse();
-        } else if (messageType.equals(EMessageType.IDENTITY_REQUEST)) {
-            message = new IdentityRequest();
-        } else if (messageType.equals(EMessageType.IDENTITY_RESPONSE)) {
-            message = new IdentityResponse();
-        } else if (messageType.equals(EMessageType.REGISTRATION_ACCEPT)) {
-            message = new RegistrationAccept();
-        } else if (messageType.equals(EMessageType.REGISTRATION_COMPLETE)) {
-            message = new RegistrationComplete();
-        } else if (messageType.equals(EMessageType.AUTHENTICATION_RESULT)) {
-            message = new AuthenticationResult();
-        } else if (messageType.equals(EMessageType.REGISTRATION_REJECT)) {
-            message = new RegistrationReject();
-        } else if (messageType.equals(EMessageType.AUTHENTICATION_FAILURE)) {
-            message = new AuthenticationFailure();
-        } else if (messageType.equals(EMessageType.AUTHENTICATION_REJECT)) {
-            message = new AuthenticationReject();
-        } else if (messageType.equals(EMessageType.DEREGISTRATION_ACCEPT_UE_ORIGINATING)) {
-            message = new DeRegistrationAcceptUeOriginating();
-        } else if (messageType.equals(EMessageType.DEREGISTRATION_ACCEPT_UE_TERMINATED)) {
-            message = new DeRegistrationAcceptUeTerminated();
-        } else if (messageType.equals(EMessageType.DEREGISTRATION_REQUEST_UE_ORIGINATING)) {
-            message = new DeRegistrationRequestUeOriginating();
-        } else if (messageType.equals(EMessageType.DEREGISTRATION_REQUEST_UE_TERMINATED)) {
-            message = new DeRegistrationRequestUeTerminated();
-        } else if (messageType.equals(EMessageType.SERVICE_REQUEST)) {
-            message = new ServiceRequest();
-        } else if (messageType.equals(EMessageType.SERVICE_REJECT)) {
-            message = new ServiceReject();
-        } else if (messageType.equals(EMessageType.SERVICE_ACCEPT)) {
-            message = new ServiceAccept();
-        } else if (messageType.equals(EMessageType.CONFIGURATION_UPDATE_COMMAND)) {
-            message = new ConfigurationUpdateCommand();
-        } else if (messageType.equals(EMessageType.CONFIGURATION_UPDATE_COMPLETE)) {
-            message = new ConfigurationUpdateComplete();
-        } else if (messageType.equals(EMessageType.SECURITY_MODE_COMMAND)) {
-            message = new SecurityModeCommand();
-        } else if (messageType.equals(EMessageType.SECURITY_MODE_COMPLETE)) {
-            message = new SecurityModeComplete();
-        } else if (messageType.equals(EMessageType.SECURITY_MODE_REJECT)) {
-            message = new SecurityModeReject();
-        } else if (messageType.equals(EMessageType.FIVEG_MM_STATUS)) {
-            message = new FiveGMmStatus();
-        } else if (messageType.equals(EMessageType.NOTIFICATION)) {
-            message = new Notification();
-        } else if (messageType.equals(EMessageType.NOTIFICATION_RESPONSE)) {
-            message = new NotificationResponse();
-        } else if (messageType.equals(EMessageType.UL_NAS_TRANSPORT)) {
-            message = new UlNasTransport();
-        } else if (messageType.equals(EMessageType.DL_NAS_TRANSPORT)) {
-            message = new DlNasTransport();
-        } else {
+    // the message type octet is looked up in the registry, so that registered types need not be EMessageType constants
+    private static PlainMmMessage decodePlainMmMessage(OctetInputStream stream, int messageType) {
+        var message = NasMessageRegistry.create(messageType);
+        if (!(message instanceof PlainMmMessage))
             throw new ReservedOrInvalidValueException("Message Type", messageType);
-        }
-
-        message = message.decodeMessage(stream);
 
-        return message;
+        var decoded = ((PlainMmMessage) message).decodeMessage(stream);
+        decoded.messageType = ((PlainMmMessage) message).messageType;
+        return decoded;
     }
 
-    private static PlainSmMessage decodePlainSmMessage(OctetInputStream stream, EMessageType messageType) {
-        PlainSmMessage message;
-
-        if (messageType.equals(EMessageType.PDU_SESSION_ESTABLISHMENT_REQUEST)) {
-            message = new PduSessionEstablishmentRequest();
-        } else if (messageType.equals(EMessageType.PDU_SESSION_ESTABLISHMENT_ACCEPT)) {
-            message = new PduSessionEstablishmentAccept();
-        } else if (messageType.equals(EMessageType.PDU_SESSION_ESTABLISHMENT_REJECT)) {
-            message = new PduSessionEstablishmentReject();
-        } else if (messageType.equals(EMessageType.PDU_SESSION_AUTHENTICATION_COMMAND)) {
-            message = new PduSessionAuthenticationCommand();
-        } else if (messageType.equals(EMessageType.PDU_SESSION_AUTHENTICATION_COMPLETE)) {
-            message = new PduSessionAuthenticationComplete();
-        } else if (messageType.equals(EMessageType.PDU_SESSION_AUTHENTICATION_RESULT)) {
-            message = new PduSessionAuthenticationResult();
-        } else if (messageType.equals(EMessageType.PDU_SESSION_MODIFICATION_REQUEST)) {
-            message = new PduSessionModificationRequest();
-        } else if (messageType.equals(EMessageType.PDU_SESSION_MODIFICATION_REJECT)) {
-            message = new PduSessionModificationReject();
-        } else if (messageType.equals(EMessageType.PDU_SESSION_MODIFICATION_COMMAND)) {
-            message = new PduSessionModificationCommand();
-        } else if (messageType.equals(EMessageType.PDU_SESSION_MODIFICATION_COMPLETE)) {
-            message = new PduSessionModificationComplete();
-        } else if (messageType.equals(EMessageType.PDU_SESSION_MODIFICATION_COMMAND_REJECT)) {
-            message = new PduSessionModificationCommandReject();
-        } else if (messageType.equals(EMessageType.PDU_SESSION_RELEASE_REQUEST)) {
-            message = new PduSessionReleaseRequest();
-        } else if (messageType.equals(EMessageType.PDU_SESSION_RELEASE_REJECT)) {
-            message = new PduSessionReleaseReject();
-        } else if (messageType.equals(EMessageType.PDU_SESSION_RELEASE_COMMAND)) {
-            message = new PduSessionReleaseCommand();
-        } else if (messageType.equals(EMessageType.PDU_SESSION_RELEASE_COMPLETE)) {
-            message = new PduSessionReleaseComplete();
-        } else if (messageType.equals(EMessageType.FIVEG_SM_STATUS)) {
-            message = new FiveGSmStatus();
-        } else {
+    private static PlainSmMessage decodePlainSmMessage(OctetInputStream stream, int messageType) {
+        var message = NasMessageRegistry.create(messageType);
+        if (!(message instanceof PlainSmMessage))
             throw new ReservedOrInvalidValueException("Message Type", messageType);
-        }
 
-        message = message.decodeMessage(stream);
-        return message;
+        var decoded = ((PlainSmMessage) message).decodeMessage(stream);
+        decoded.messageType = ((PlainSmMessage) message).messageType;
+        return decoded;
     }
 
     private static SecuredMmMessage decodeSecurityProtectedNasMessage(OctetInputStream stream, EExtendedProtocolDiscriminator epd, ESecurityHeaderType sht) {
@@ -206,19 +115,25 @@ public class NasDecoder {
     }
 
     public static <T extends InformationElement1> T ie1(int halfOctet, Class<T> clazz) {
-        try {
-            T instance = clazz.getConstructor().newInstance();
-            return (T) instance.decodeIE1(new Bit4(halfOctet & 0xF));
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        return (T) newInstance(clazz).decodeIE1(new Bit4(halfOctet & 0xF));
     }
 
     public static <T extends InformationElement> T ie2346(OctetInputStream stream, Class<T> clazz) {
+        return (T) newInstance(clazz).decodeIE(stream);
+    }
+
+    private static <T extends InformationElement> T newInstance(Class<T> clazz) {
+        var constructor = ieConstructors.computeIfAbsent(clazz, type -> {
+            try {
+                return MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(InformationElement.class));
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        });
         try {
-            T instance = clazz.getConstructor().newInstance();
-            return (T) instance.decodeIE(stream);
-        } catch (Exception e) {
+            return clazz.cast((InformationElement) constructor.invokeExact());
+        } catch (Throwable e) {
             throw new RuntimeException(e);
         }
     }
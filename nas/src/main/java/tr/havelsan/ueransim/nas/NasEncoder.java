@@ -1,5 +1,6 @@
 package tr.havelsan.ueransim.nas;
 
+import tr.havelsan.ueransim.core.exceptions.EncodingException;
 import tr.havelsan.ueransim.nas.core.ies.*;
 import tr.havelsan.ueransim.nas.core.messages.NasMessage;
 import tr.havelsan.ueransim.utils.OctetOutputStream;
@@ -8,14 +9,39 @@ import tr.havelsan.ueransim.utils.octets.Octet;
 import tr.havelsan.ueransim.nas.core.ies.*;
 
 public class NasEncoder {
+    // encoding buffer of the thread, taken out while in use so that nested encodings do not share it
+    private static final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[1024]);
 
     /**
      * Encodes NAS/5GS PDU into byte array
      */
     public static byte[] nasPdu(NasMessage pdu) {
-        var stream = new OctetOutputStream();
+        var buffer = scratch.get();
+        scratch.set(null);
+        if (buffer == null) {
+            buffer = new byte[1024];
+        }
+
+        var stream = new OctetOutputStream(buffer);
+        try {
+            pdu.encodeMessage(stream);
+            return stream.toByteArray();
+        } finally {
+            scratch.set(stream.getBuffer());
+        }
+    }
+
+    /**
+     * Encodes NAS/5GS PDU into the start of the buffer, and returns the encoded length.
+     *
+     * @throws EncodingException if the PDU does not fit into the buffer
+     */
+    public static int nasPdu(NasMessage pdu, byte[] buffer) {
+        var stream = new OctetOutputStream(buffer);
         pdu.encodeMessage(stream);
-        return stream.toByteArray();
+        if (stream.getBuffer() != buffer)
+            throw new EncodingException("buffer is too small for the PDU of length " + stream.length());
+        return stream.length();
     }
 
     /**
@@ -53,20 +79,27 @@ public class NasEncoder {
         if (ie == null) throw new IllegalArgumentException();
         if (ie instanceof InformationElement1) throw new IllegalArgumentException();
 
-        var newStream = new OctetOutputStream();
-
         if (ie instanceof InformationElement2) {
             ((InformationElement2) ie).encodeIE2(stream);
         } else if (ie instanceof InformationElement3) {
             ((InformationElement3) ie).encodeIE3(stream);
         } else if (ie instanceof InformationElement4) {
-            ((InformationElement4) ie).encodeIE4(newStream);
-            stream.writeOctet(newStream.length());
-            stream.writeStream(newStream);
+            // the length is written once the contents are
+            int lengthIndex = stream.length();
+            stream.writeOctet(0);
+            ((InformationElement4) ie).encodeIE4(stream);
+            int length = stream.length() - lengthIndex - 1;
+            if (length > 0xFF)
+                throw new EncodingException("information element is too long: " + ie.getClass().getSimpleName());
+            stream.setOctet(lengthIndex, length);
         } else if (ie instanceof InformationElement6) {
-            ((InformationElement6) ie).encodeIE6(newStream);
-            stream.writeOctet2(newStream.length());
-            stream.writeStream(newStream);
+            int lengthIndex = stream.length();
+            stream.writeOctet2(0);
+            ((InformationElement6) ie).encodeIE6(stream);
+            int length = stream.length() - lengthIndex - 2;
+            if (length > 0xFFFF)
+                throw new EncodingException("information element is too long: " + ie.getClass().getSimpleName());
+            stream.setOctet2(lengthIndex, length);
         } else {
             throw new IllegalArgumentException("bad ie type");
         }
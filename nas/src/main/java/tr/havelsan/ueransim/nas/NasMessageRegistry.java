@@ -0,0 +1,150 @@
+package tr.havelsan.ueransim.nas;
+
+import tr.havelsan.ueransim.core.exceptions.IncorrectImplementationException;
+import tr.havelsan.ueransim.nas.core.messages.NasMessage;
+import tr.havelsan.ueransim.nas.core.messages.PlainMmMessage;
+import tr.havelsan.ueransim.nas.core.messages.PlainSmMessage;
+import tr.havelsan.ueransim.nas.impl.enums.EMessageType;
+import tr.havelsan.ueransim.nas.impl.messages.*;
+
+import java.util.function.Supplier;
+
+/**
+ * Plain NAS message classes by message type octet, used by {@link NasDecoder} to create the message to be decoded.
+ * The messages in the implementation are registered here, other message types, including octets that are not
+ * constants of {@link EMessageType}, can be added with {@link #register} before they are decoded.
+ */
+public class NasMessageRegistry {
+    // copied on each registration, so that the decoder reads it without locking
+    private static volatile Registration[] registrations = new Registration[256];
+
+    static {
+        /* Mobility Management Messages */
+        register(EMessageType.REGISTRATION_REQUEST, RegistrationRequest::new);
+        register(EMessageType.REGISTRATION_ACCEPT, RegistrationAccept::new);
+        register(EMessageType.REGISTRATION_COMPLETE, RegistrationComplete::new);
+        register(EMessageType.REGISTRATION_REJECT, RegistrationReject::new);
+        register(EMessageType.DEREGISTRATION_REQUEST_UE_ORIGINATING, DeRegistrationRequestUeOriginating::new);
+        register(EMessageType.DEREGISTRATION_ACCEPT_UE_ORIGINATING, DeRegistrationAcceptUeOriginating::new);
+        register(EMessageType.DEREGISTRATION_REQUEST_UE_TERMINATED, DeRegistrationRequestUeTerminated::new);
+        register(EMessageType.DEREGISTRATION_ACCEPT_UE_TERMINATED, DeRegistrationAcceptUeTerminated::new);
+        register(EMessageType.SERVICE_REQUEST, ServiceRequest::new);
+        register(EMessageType.SERVICE_REJECT, ServiceReject::new);
+        register(EMessageType.SERVICE_ACCEPT, ServiceAccept::new);
+        register(EMessageType.CONFIGURATION_UPDATE_COMMAND, ConfigurationUpdateCommand::new);
+        register(EMessageType.CONFIGURATION_UPDATE_COMPLETE, ConfigurationUpdateComplete::new);
+        register(EMessageType.AUTHENTICATION_REQUEST, AuthenticationRequest::new);
+        register(EMessageType.AUTHENTICATION_RESPONSE, AuthenticationResponse::new);
+        register(EMessageType.AUTHENTICATION_REJECT, AuthenticationReject::new);
+        register(EMessageType.AUTHENTICATION_FAILURE, AuthenticationFailure::new);
+        register(EMessageType.AUTHENTICATION_RESULT, AuthenticationResult::new);
+        register(EMessageType.IDENTITY_REQUEST, IdentityRequest::new);
+        register(EMessageType.IDENTITY_RESPONSE, IdentityResponse::new);
+        register(EMessageType.SECURITY_MODE_COMMAND, SecurityModeCommand::new);
+        register(EMessageType.SECURITY_MODE_COMPLETE, SecurityModeComplete::new);
+        register(EMessageType.SECURITY_MODE_REJECT, SecurityModeReject::new);
+        register(EMessageType.FIVEG_MM_STATUS, FiveGMmStatus::new);
+        register(EMessageType.NOTIFICATION, Notification::new);
+        register(EMessageType.NOTIFICATION_RESPONSE, NotificationResponse::new);
+        register(EMessageType.UL_NAS_TRANSPORT, UlNasTransport::new);
+        register(EMessageType.DL_NAS_TRANSPORT, DlNasTransport::new);
+
+        /* Session Management Messages */
+        register(EMessageType.PDU_SESSION_ESTABLISHMENT_REQUEST, PduSessionEstablishmentRequest::new);
+        register(EMessageType.PDU_SESSION_ESTABLISHMENT_ACCEPT, PduSessionEstablishmentAccept::new);
+        register(EMessageType.PDU_SESSION_ESTABLISHMENT_REJECT, PduSessionEstablishmentReject::new);
+        register(EMessageType.PDU_SESSION_AUTHENTICATION_COMMAND, PduSessionAuthenticationCommand::new);
+        register(EMessageType.PDU_SESSION_AUTHENTICATION_COMPLETE, PduSessionAuthenticationComplete::new);
+        register(EMessageType.PDU_SESSION_AUTHENTICATION_RESULT, PduSessionAuthenticationResult::new);
+        register(EMessageType.PDU_SESSION_MODIFICATION_REQUEST, PduSessionModificationRequest::new);
+        register(EMessageType.PDU_SESSION_MODIFICATION_REJECT, PduSessionModificationReject::new);
+        register(EMessageType.PDU_SESSION_MODIFICATION_COMMAND, PduSessionModificationCommand::new);
+        register(EMessageType.PDU_SESSION_MODIFICATION_COMPLETE, PduSessionModificationComplete::new);
+        register(EMessageType.PDU_SESSION_MODIFICATION_COMMAND_REJECT, PduSessionModificationCommandReject::new);
+        register(EMessageType.PDU_SESSION_RELEASE_REQUEST, PduSessionReleaseRequest::new);
+        register(EMessageType.PDU_SESSION_RELEASE_REJECT, PduSessionReleaseReject::new);
+        register(EMessageType.PDU_SESSION_RELEASE_COMMAND, PduSessionReleaseCommand::new);
+        register(EMessageType.PDU_SESSION_RELEASE_COMPLETE, PduSessionReleaseComplete::new);
+        register(EMessageType.FIVEG_SM_STATUS, FiveGSmStatus::new);
+    }
+
+    /**
+     * Registers the message class of the message type, replacing the registered one if any. The supplier is called
+     * once here, to check that it creates a {@link PlainMmMessage} or {@link PlainSmMessage} of the message type.
+     */
+    public static void register(EMessageType messageType, Supplier<? extends NasMessage> supplier) {
+        register(messageType.intValue(), supplier);
+    }
+
+    /**
+     * Registers the message class of the message type octet, which does not need to be a constant of
+     * {@link EMessageType}. The messages created by the supplier must have a message type of this value.
+     */
+    public static synchronized void register(int messageType, Supplier<? extends NasMessage> supplier) {
+        if (messageType < 0 || messageType > 0xFF)
+            throw new IllegalArgumentException("message type is not an octet: " + messageType);
+
+        var message = supplier.get();
+        EMessageType type;
+        if (message instanceof PlainMmMessage) {
+            type = ((PlainMmMessage) message).messageType;
+        } else if (message instanceof PlainSmMessage) {
+            type = ((PlainSmMessage) message).messageType;
+        } else {
+            throw new IncorrectImplementationException(message.getClass(), "not a plain NAS message");
+        }
+        if (type == null || type.intValue() != messageType)
+            throw new IncorrectImplementationException(message.getClass(), "not a message of type " + messageType);
+
+        var copy = registrations.clone();
+        copy[messageType] = new Registration(supplier, message.getClass(), type);
+        registrations = copy;
+    }
+
+    /**
+     * Returns a new message of the message type octet, or <code>null</code> if the message type is not registered.
+     */
+    public static NasMessage create(int messageType) {
+        var registration = registrations[messageType & 0xFF];
+        return registration != null ? registration.supplier.get() : null;
+    }
+
+    public static NasMessage create(EMessageType messageType) {
+        return create(messageType.intValue());
+    }
+
+    /**
+     * Returns the message class of the message type octet, or <code>null</code> if the message type is not
+     * registered.
+     */
+    public static Class<? extends NasMessage> getMessageClass(int messageType) {
+        var registration = registrations[messageType & 0xFF];
+        return registration != null ? registration.messageClass : null;
+    }
+
+    public static Class<? extends NasMessage> getMessageClass(EMessageType messageType) {
+        return getMessageClass(messageType.intValue());
+    }
+
+    /**
+     * Returns the message type of the registered messages of the message type octet, or <code>null</code> if the
+     * message type is not registered.
+     */
+    public static EMessageType getMessageType(int messageType) {
+        var registration = registrations[messageType & 0xFF];
+        return registration != null ? registration.messageType : null;
+    }
+
+    private static class Registration {
+        final Supplier<? extends NasMessage> supplier;
+        final Class<? extends NasMessage> messageClass;
+        final EMessageType messageType;
+
+        Registration(Supplier<? extends NasMessage> supplier, Class<? extends NasMessage> messageClass,
+                     EMessageType messageType) {
+            this.supplier = supplier;
+            this.messageClass = messageClass;
+            this.messageType = messageType;
+        }
+    }
+}
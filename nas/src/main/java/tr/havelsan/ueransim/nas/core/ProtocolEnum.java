@@ -2,13 +2,21 @@ package tr.havelsan.ueransim.nas.core;
 
 import tr.havelsan.ueransim.core.exceptions.ReservedOrInvalidValueException;
 import tr.havelsan.ueransim.utils.IIntValue;
+import tr.havelsan.ueransim.utils.LongIntHashMap;
 import tr.havelsan.ueransim.utils.Utils;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ProtocolEnum extends ProtocolValue implements IIntValue {
+    private static final ConcurrentHashMap<Class<?>, LookupTable> tables = new ConcurrentHashMap<>();
+
     protected final int value;
     protected final String name;
 
@@ -21,84 +29,140 @@ public class ProtocolEnum extends ProtocolValue implements IIntValue {
     }
 
     protected static <T extends ProtocolEnum> T fromValueGeneric(Class<T> clazz, int value, T defaultValue) {
-        var declaredFields = clazz.getDeclaredFields();
-        for (var field : declaredFields) {
-            if (!Modifier.isStatic(field.getModifiers())) continue;
-            if (!Modifier.isPublic(field.getModifiers())) continue;
-            if (!clazz.isAssignableFrom(field.getType())) continue;
-
-            T val;
-            try {
-                val = (T) field.get(null);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException(e);
-            }
-
-            if (val == null) continue;
-
-            if (val.value == value)
-                return val;
-        }
+        var val = lookupValue(clazz, value);
+        if (val != null)
+            return val;
 
         if (defaultValue != null)
             return defaultValue;
         throw new ReservedOrInvalidValueException(clazz.getSimpleName(), value);
     }
 
+    /**
+     * Returns the constant of the class having the value, or <code>null</code> if there is none.
+     */
+    protected static <T extends ProtocolEnum> T lookupValue(Class<T> clazz, int value) {
+        return (T) table(clazz).get(value);
+    }
+
     public static <T extends ProtocolEnum> T fromIntValue(Class<T> clazz, int value) {
+        var fromValue = table(clazz).fromValue;
+        if (fromValue == null)
+            throw new ReservedOrInvalidValueException(clazz.getSimpleName(), value);
+
         Object res;
         try {
-            var method = clazz.getDeclaredMethod("fromValue", int.class);
-            res = method.invoke(null, value);
-        } catch (Exception e) {
+            res = (ProtocolEnum) fromValue.invokeExact(value);
+        } catch (Throwable e) {
             throw new ReservedOrInvalidValueException(clazz.getSimpleName(), value);
         }
         return (T) res;
     }
 
     public static <T extends ProtocolEnum> T fromIdentifier(Class<T> clazz, String identifier) {
-        var declaredFields = clazz.getDeclaredFields();
-        for (var field : declaredFields) {
-            if (!Modifier.isStatic(field.getModifiers())) continue;
-            if (!Modifier.isPublic(field.getModifiers())) continue;
-            if (!clazz.isAssignableFrom(field.getType())) continue;
-
-            if (field.getName().equals(identifier)) {
-                T val;
+        return (T) table(clazz).byIdentifier.get(identifier);
+    }
+
+    public static <T extends ProtocolEnum> List<T> fromName(Class<T> clazz, String name) {
+        var values = table(clazz).byName.get(name);
+        return values != null ? new ArrayList<>((List<T>) values) : new ArrayList<>();
+    }
+
+    private static LookupTable table(Class<?> clazz) {
+        var table = tables.get(clazz);
+        if (table == null) {
+            // not built in computeIfAbsent, since reading the constants may initialize other protocol enums
+            var created = new LookupTable(clazz);
+            table = tables.putIfAbsent(clazz, created);
+            if (table == null) {
+                table = created;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Constants of a protocol enum class, indexed by value, identifier and name. If several constants have the
+     * same value, the first declared one is found.
+     */
+    private static class LookupTable {
+        // values up to this bound, or up to a few times the number of constants, are looked up in an array
+        private static final int DENSE_LIMIT = 256;
+
+        final ProtocolEnum[] constants;
+        final ProtocolEnum[] dense;
+        final LongIntHashMap sparse;
+        final HashMap<String, ProtocolEnum> byIdentifier;
+        final HashMap<String, List<ProtocolEnum>> byName;
+        // fromValue(int) of the class as (int)ProtocolEnum, or null if there is none
+        final MethodHandle fromValue;
+
+        LookupTable(Class<?> clazz) {
+            var values = new ArrayList<ProtocolEnum>();
+            this.byIdentifier = new HashMap<>();
+            this.byName = new HashMap<>();
+
+            for (var field : clazz.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) continue;
+                if (!Modifier.isPublic(field.getModifiers())) continue;
+                if (!clazz.isAssignableFrom(field.getType())) continue;
+
+                ProtocolEnum val;
                 try {
-                    val = (T) field.get(null);
+                    val = (ProtocolEnum) field.get(null);
                 } catch (IllegalAccessException e) {
                     throw new RuntimeException(e);
                 }
-                return val;
-            }
-        }
-        return null;
-    }
 
-    public static <T extends ProtocolEnum> List<T> fromName(Class<T> clazz, String name) {
-        var res = new ArrayList<T>();
+                byIdentifier.putIfAbsent(field.getName(), val);
+                if (val == null) continue;
+
+                values.add(val);
+                byName.computeIfAbsent(val.name, k -> new ArrayList<>()).add(val);
+            }
 
-        var declaredFields = clazz.getDeclaredFields();
-        for (var field : declaredFields) {
-            if (!Modifier.isStatic(field.getModifiers())) continue;
-            if (!Modifier.isPublic(field.getModifiers())) continue;
-            if (!clazz.isAssignableFrom(field.getType())) continue;
+            this.constants = values.toArray(new ProtocolEnum[0]);
 
-            T val;
-            try {
-                val = (T) field.get(null);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException(e);
+            int max = 0;
+            for (var val : constants) {
+                max = Math.max(max, val.value);
             }
 
-            if (val == null) continue;
+            if (max < Math.max(DENSE_LIMIT, 4 * constants.length)) {
+                this.dense = new ProtocolEnum[max + 1];
+                this.sparse = null;
+                for (var val : constants) {
+                    if (dense[val.value] == null) {
+                        dense[val.value] = val;
+                    }
+                }
+            } else {
+                this.dense = null;
+                this.sparse = new LongIntHashMap(constants.length);
+                for (int i = 0; i < constants.length; i++) {
+                    if (sparse.get(constants[i].value) == LongIntHashMap.NO_VALUE) {
+                        sparse.put(constants[i].value, i);
+                    }
+                }
+            }
 
-            if (val.name.equals(name))
-                res.add(val);
+            MethodHandle handle;
+            try {
+                var method = clazz.getDeclaredMethod("fromValue", int.class);
+                handle = MethodHandles.publicLookup().unreflect(method)
+                        .asType(MethodType.methodType(ProtocolEnum.class, int.class));
+            } catch (Exception e) {
+                handle = null;
+            }
+            this.fromValue = handle;
         }
 
-        return res;
+        ProtocolEnum get(int value) {
+            if (dense != null)
+                return value >= 0 && value < dense.length ? dense[value] : null;
+            int index = sparse.get(value);
+            return index != LongIntHashMap.NO_VALUE ? constants[index] : null;
+        }
     }
 
     @Override
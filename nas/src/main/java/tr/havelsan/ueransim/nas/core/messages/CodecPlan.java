@@ -0,0 +1,402 @@
+package tr.havelsan.ueransim.nas.core.messages;
+
+import tr.havelsan.ueransim.core.exceptions.DecodingException;
+import tr.havelsan.ueransim.core.exceptions.EncodingException;
+import tr.havelsan.ueransim.core.exceptions.IncorrectImplementationException;
+import tr.havelsan.ueransim.nas.NasEncoder;
+import tr.havelsan.ueransim.nas.core.ies.*;
+import tr.havelsan.ueransim.utils.OctetInputStream;
+import tr.havelsan.ueransim.utils.OctetOutputStream;
+import tr.havelsan.ueransim.utils.bits.Bit4;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Information element layout of a NAS message class, compiled once from {@link NasMessage#build} with the fields
+ * bound to method handles. Encoding and decoding a message with its plan only reads and writes the fields.
+ * <p>
+ * The information elements are also numbered as slots, so that a {@link NasMessageView} can find them in an encoded
+ * message and decode them one by one.
+ */
+final class CodecPlan {
+    private static final ConcurrentHashMap<Class<?>, CodecPlan> plans = new ConcurrentHashMap<>();
+
+    private final MethodHandle messageFactory;
+    private final Entry[] mandatory;
+    private final Entry[] optional;
+    // optional IEs by the first octet, type 1 IEs are placed at every octet having their IEI as the upper half
+    private final Entry[] optionalByOctet;
+    private final Slot[] slots;
+    private final HashMap<String, Integer> slotsByName;
+
+    private CodecPlan(Class<?> messageType) {
+        this.messageFactory = constructor(messageType, NasMessage.class);
+        if (messageFactory == null)
+            throw new IncorrectImplementationException("no public default constructor: " + messageType);
+
+        var builder = new NasMessage.MessageBuilder();
+        newMessage().build(builder);
+
+        var slotList = new ArrayList<Slot>();
+
+        this.mandatory = new Entry[builder.mandatory.size()];
+        for (int i = 0; i < mandatory.length; i++) {
+            mandatory[i] = new Entry(messageType, builder.mandatory.get(i), slotList);
+        }
+
+        this.optional = new Entry[builder.optional.size()];
+        for (int i = 0; i < optional.length; i++) {
+            optional[i] = new Entry(messageType, builder.optional.get(i), slotList);
+        }
+
+        this.slots = slotList.toArray(new Slot[0]);
+        this.slotsByName = new HashMap<>();
+        for (var slot : slots) {
+            slotsByName.put(slot.name, slot.index);
+        }
+
+        // a type 1 IEI takes precedence over the full octet IEIs starting with it, a repeated IEI is the last one
+        this.optionalByOctet = new Entry[256];
+        for (var entry : optional) {
+            if (!entry.isType1) {
+                optionalByOctet[entry.iei & 0xFF] = entry;
+            }
+        }
+        for (var entry : optional) {
+            if (entry.isType1) {
+                for (int lsb = 0; lsb < 16; lsb++) {
+                    optionalByOctet[(entry.iei & 0xF) << 4 | lsb] = entry;
+                }
+            }
+        }
+    }
+
+    static CodecPlan of(NasMessage message) {
+        return of(message.getClass());
+    }
+
+    static CodecPlan of(Class<?> messageType) {
+        return plans.computeIfAbsent(messageType, CodecPlan::new);
+    }
+
+    NasMessage newMessage() {
+        try {
+            return (NasMessage) messageFactory.invokeExact();
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //======================================================================================================
+    //                                           DECODING
+    //======================================================================================================
+
+    NasMessage decode(OctetInputStream stream) {
+        var instance = newMessage();
+
+        for (var entry : mandatory) {
+            if (entry.isType1) {
+                int octet = stream.readOctetI();
+                if (entry.slot0 != null) {
+                    entry.slot0.set(instance, entry.slot0.newIE1().decodeIE1(new Bit4(octet & 0xF)));
+                }
+                if (entry.slot1 != null) {
+                    entry.slot1.set(instance, entry.slot1.newIE1().decodeIE1(new Bit4((octet >> 4) & 0xF)));
+                }
+            } else {
+                entry.slot0.set(instance, entry.slot0.newIE().decodeIE(stream));
+            }
+        }
+
+        while (stream.hasNext()) {
+            int iei = stream.readOctetI();
+
+            var entry = optionalByOctet[iei];
+            if (entry == null)
+                throw new IncorrectImplementationException("iei is invalid: " + iei);
+
+            if (entry.isType1) {
+                entry.slot0.set(instance, entry.slot0.newIE1().decodeIE1(new Bit4(iei & 0xF)));
+            } else {
+                entry.slot0.set(instance, entry.slot0.newIE().decodeIE(stream));
+            }
+        }
+
+        return instance;
+    }
+
+    //======================================================================================================
+    //                                           ENCODING
+    //======================================================================================================
+
+    void encode(NasMessage message, OctetOutputStream stream) {
+        for (var entry : mandatory) {
+            if (entry.isType1) {
+                int little = 0, big = 0;
+                if (entry.slot0 != null) {
+                    var value0 = (InformationElement1) entry.slot0.get(message);
+                    if (value0 == null)
+                        throw new EncodingException("mandatory information element is null: " + entry.slot0.name);
+                    little = value0.encodeIE1() & 0xF;
+                }
+                if (entry.slot1 != null) {
+                    var value1 = (InformationElement1) entry.slot1.get(message);
+                    if (value1 == null)
+                        throw new EncodingException("mandatory information element is null: " + entry.slot1.name);
+                    big = value1.encodeIE1() & 0xF;
+                }
+                stream.writeOctet(big, little);
+            } else {
+                var value = entry.slot0.get(message);
+                if (value == null)
+                    throw new EncodingException("mandatory information element is null: " + entry.slot0.name);
+                NasEncoder.ie2346(stream, value);
+            }
+        }
+
+        for (var entry : optional) {
+            var value = entry.slot0.get(message);
+            if (value == null)
+                continue;
+
+            if (entry.isType1) {
+                stream.writeOctet(entry.iei & 0xF, ((InformationElement1) value).encodeIE1() & 0xF);
+            } else {
+                NasEncoder.ie2346(stream, entry.iei, value);
+            }
+        }
+    }
+
+    //======================================================================================================
+    //                                            SLOTS
+    //======================================================================================================
+
+    int slotCount() {
+        return slots.length;
+    }
+
+    /**
+     * Returns the slot of the field, or -1 if the field is not an information element of the message.
+     */
+    int slotOf(String field) {
+        var index = slotsByName.get(field);
+        return index != null ? index : -1;
+    }
+
+    void setSlot(NasMessage message, int slot, InformationElement value) {
+        slots[slot].set(message, value);
+    }
+
+    /**
+     * Finds the information elements in the encoded message body starting at the offset, without decoding them.
+     * The position of each present slot is stored, which is the octet containing the half octet value for type 1
+     * and the octet after the IEI otherwise. The positions of absent slots are left as they are.
+     */
+    void index(byte[] data, int offset, int[] positions) {
+        int position = offset;
+
+        for (var entry : mandatory) {
+            if (entry.isType1) {
+                if (entry.slot0 != null) positions[entry.slot0.index] = position;
+                if (entry.slot1 != null) positions[entry.slot1.index] = position;
+                position++;
+            } else {
+                positions[entry.slot0.index] = position;
+                position = skip(entry.slot0, data, position);
+            }
+        }
+
+        while (position < data.length) {
+            int iei = data[position] & 0xFF;
+
+            var entry = optionalByOctet[iei];
+            if (entry == null)
+                throw new IncorrectImplementationException("iei is invalid: " + iei);
+
+            if (entry.isType1) {
+                positions[entry.slot0.index] = position;
+                position++;
+            } else {
+                positions[entry.slot0.index] = position + 1;
+                position = skip(entry.slot0, data, position + 1);
+            }
+        }
+
+        if (position > data.length)
+            throw new DecodingException("information element exceeds the message");
+    }
+
+    /**
+     * Decodes the information element of the slot at the position found by {@link #index}.
+     */
+    InformationElement decodeSlot(int slot, byte[] data, int position) {
+        var s = slots[slot];
+        if (s.format == 1) {
+            int octet = data[position] & 0xFF;
+            return s.newIE1().decodeIE1(new Bit4(s.highHalf ? octet >> 4 : octet & 0xF));
+        }
+        return s.newIE().decodeIE(new OctetInputStream(data, position));
+    }
+
+    private static int skip(Slot slot, byte[] data, int position) {
+        switch (slot.format) {
+            case 2:
+                return position;
+            case 3:
+                int length = slot.fixedLength;
+                if (length < 0) {
+                    // the length of type 3 IEs is fixed, so it is learnt by decoding the first one
+                    var stream = new OctetInputStream(data, position);
+                    slot.newIE().decodeIE(stream);
+                    length = stream.currentIndex() - position;
+                    slot.fixedLength = length;
+                }
+                return position + length;
+            case 4:
+                if (position >= data.length)
+                    throw new DecodingException("information element exceeds the message");
+                return position + 1 + (data[position] & 0xFF);
+            case 6:
+                if (position + 1 >= data.length)
+                    throw new DecodingException("information element exceeds the message");
+                return position + 2 + ((data[position] & 0xFF) << 8 | (data[position + 1] & 0xFF));
+            default:
+                throw new IncorrectImplementationException("information element format is unknown: " + slot.type);
+        }
+    }
+
+    //======================================================================================================
+    //                                           INTERNAL
+    //======================================================================================================
+
+    /**
+     * Returns the public default constructor of the type as a handle of type <code>()returnType</code>, or
+     * <code>null</code> if there is none.
+     */
+    private static MethodHandle constructor(Class<?> type, Class<?> returnType) {
+        try {
+            return MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(returnType));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static int format(Class<?> type) {
+        if (InformationElement1.class.isAssignableFrom(type)) return 1;
+        if (InformationElement2.class.isAssignableFrom(type)) return 2;
+        if (InformationElement3.class.isAssignableFrom(type)) return 3;
+        if (InformationElement4.class.isAssignableFrom(type)) return 4;
+        if (InformationElement6.class.isAssignableFrom(type)) return 6;
+        return 0;
+    }
+
+    private static class Entry {
+        final boolean isType1;
+        final int iei;
+        final Slot slot0;
+        final Slot slot1;
+
+        Entry(Class<?> messageType, NasMessage.InformationElementEntry entry, List<Slot> slots) {
+            if (entry.isType1 && entry.field0 == null && entry.field1 == null)
+                throw new EncodingException("both fields cannot be null");
+
+            this.isType1 = entry.isType1;
+            this.iei = entry.iei;
+            this.slot0 = entry.field0 != null
+                    ? new Slot(messageType, entry.field0, entry.isType1, false, slots.size()) : null;
+            if (slot0 != null) slots.add(slot0);
+            this.slot1 = entry.field1 != null
+                    ? new Slot(messageType, entry.field1, entry.isType1, true, slots.size()) : null;
+            if (slot1 != null) slots.add(slot1);
+        }
+    }
+
+    /**
+     * An information element field of the message.
+     */
+    private static class Slot {
+        final String name;
+        final Class<?> type;
+        final int index;
+        final int format;
+        // whether a mandatory type 1 IE is the upper half of its octet
+        final boolean highHalf;
+        final MethodHandle getter;
+        final MethodHandle setter;
+        final MethodHandle factory;
+        volatile int fixedLength = -1;
+
+        Slot(Class<?> messageType, String name, boolean isType1, boolean highHalf, int index) {
+            Field field;
+            try {
+                field = messageType.getField(name);
+            } catch (NoSuchFieldException e) {
+                throw new IncorrectImplementationException("public field could not found: " + name);
+            }
+
+            this.name = name;
+            this.type = field.getType();
+            this.index = index;
+            this.highHalf = highHalf;
+            this.format = format(type);
+
+            if (!InformationElement.class.isAssignableFrom(type))
+                throw new IncorrectImplementationException("bad type for field: " + name);
+            if (isType1 != InformationElement1.class.isAssignableFrom(type)) {
+                throw new IncorrectImplementationException(isType1 ? "bad type for field: " + name
+                        : "explicitly specify that this IE is type 1");
+            }
+
+            try {
+                var lookup = MethodHandles.publicLookup();
+                this.getter = lookup.unreflectGetter(field)
+                        .asType(MethodType.methodType(InformationElement.class, NasMessage.class));
+                this.setter = lookup.unreflectSetter(field)
+                        .asType(MethodType.methodType(void.class, NasMessage.class, InformationElement.class));
+            } catch (IllegalAccessException e) {
+                throw new IncorrectImplementationException("could not access to field: " + name);
+            }
+
+            // abstract IEs are only encoded, so a missing constructor is reported when decoding
+            this.factory = constructor(type, InformationElement.class);
+        }
+
+        InformationElement get(NasMessage message) {
+            try {
+                return (InformationElement) getter.invokeExact(message);
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        void set(NasMessage message, InformationElement value) {
+            try {
+                setter.invokeExact(message, value);
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        InformationElement newIE() {
+            if (factory == null)
+                throw new IncorrectImplementationException("no public default constructor: " + type);
+            try {
+                return (InformationElement) factory.invokeExact();
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        InformationElement1 newIE1() {
+            return (InformationElement1) newIE();
+        }
+    }
+}
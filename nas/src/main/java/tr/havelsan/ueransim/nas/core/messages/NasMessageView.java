@@ -0,0 +1,198 @@
+package tr.havelsan.ueransim.nas.core.messages;
+
+import tr.havelsan.ueransim.core.exceptions.IncorrectImplementationException;
+import tr.havelsan.ueransim.core.exceptions.ReservedOrInvalidValueException;
+import tr.havelsan.ueransim.nas.NasDecoder;
+import tr.havelsan.ueransim.nas.NasMessageRegistry;
+import tr.havelsan.ueransim.nas.core.ies.InformationElement;
+import tr.havelsan.ueransim.nas.impl.enums.*;
+
+import java.util.Arrays;
+
+/**
+ * An encoded NAS message, read without decoding it as a whole. The header is decoded and the information elements
+ * are located when the view is created, and each information element is decoded when it is first accessed.
+ * <p>
+ * Security protected messages are not indexed, only their header and class are known until they are decoded.
+ * A view may be shared between threads, e.g. by a flow and the message log; the decoded parts are created once under
+ * the view's lock.
+ */
+public final class NasMessageView {
+    private final byte[] pdu;
+    private final EExtendedProtocolDiscriminator extendedProtocolDiscriminator;
+    private final ESecurityHeaderType securityHeaderType;
+    private final EPduSessionIdentity pduSessionId;
+    private final EProcedureTransactionIdentity pti;
+    private final EMessageType messageType;
+    private final Class<? extends NasMessage> messageClass;
+
+    private final CodecPlan plan;
+    private final int[] positions;
+    private final InformationElement[] values;
+    private volatile NasMessage message;
+
+    private NasMessageView(byte[] pdu) {
+        this.pdu = pdu;
+        this.extendedProtocolDiscriminator = EExtendedProtocolDiscriminator.fromValue(pdu[0] & 0xFF);
+
+        int offset;
+        if (extendedProtocolDiscriminator.equals(EExtendedProtocolDiscriminator.MOBILITY_MANAGEMENT_MESSAGES)) {
+            this.securityHeaderType = ESecurityHeaderType.fromValue(pdu[1] & 0xFF);
+            this.pduSessionId = null;
+            this.pti = null;
+
+            if (!securityHeaderType.equals(ESecurityHeaderType.NOT_PROTECTED)) {
+                this.messageType = null;
+                this.messageClass = SecuredMmMessage.class;
+                this.plan = null;
+                this.positions = null;
+                this.values = null;
+                return;
+            }
+            offset = 3;
+        } else {
+            this.securityHeaderType = null;
+            this.pduSessionId = EPduSessionIdentity.fromValue(pdu[1] & 0xFF);
+            this.pti = EProcedureTransactionIdentity.fromValue(pdu[2] & 0xFF);
+            offset = 4;
+        }
+
+        // the message type must be of the same kind as the header, as checked by the decoder
+        var baseClass = securityHeaderType != null ? PlainMmMessage.class : PlainSmMessage.class;
+        int messageTypeOctet = pdu[offset - 1] & 0xFF;
+        this.messageClass = NasMessageRegistry.getMessageClass(messageTypeOctet);
+        if (messageClass == null || !baseClass.isAssignableFrom(messageClass))
+            throw new ReservedOrInvalidValueException("Message Type", messageTypeOctet);
+        this.messageType = NasMessageRegistry.getMessageType(messageTypeOctet);
+
+        this.plan = CodecPlan.of(messageClass);
+        this.positions = new int[plan.slotCount()];
+        Arrays.fill(positions, -1);
+        plan.index(pdu, offset, positions);
+        this.values = new InformationElement[positions.length];
+    }
+
+    /**
+     * Creates a view of the encoded NAS PDU. The array is not copied and must not be modified afterwards.
+     */
+    public static NasMessageView of(byte[] pdu) {
+        return new NasMessageView(pdu);
+    }
+
+    public byte[] getPdu() {
+        return pdu;
+    }
+
+    public EExtendedProtocolDiscriminator getExtendedProtocolDiscriminator() {
+        return extendedProtocolDiscriminator;
+    }
+
+    /**
+     * Returns the security header type, or <code>null</code> for session management messages.
+     */
+    public ESecurityHeaderType getSecurityHeaderType() {
+        return securityHeaderType;
+    }
+
+    /**
+     * Returns the PDU session identity, or <code>null</code> for mobility management messages.
+     */
+    public EPduSessionIdentity getPduSessionId() {
+        return pduSessionId;
+    }
+
+    /**
+     * Returns the procedure transaction identity, or <code>null</code> for mobility management messages.
+     */
+    public EProcedureTransactionIdentity getPti() {
+        return pti;
+    }
+
+    /**
+     * Returns the message type, or <code>null</code> for security protected messages.
+     */
+    public EMessageType getMessageType() {
+        return messageType;
+    }
+
+    public Class<? extends NasMessage> getMessageClass() {
+        return messageClass;
+    }
+
+    public boolean isSecured() {
+        return plan == null;
+    }
+
+    /**
+     * Returns whether the information element field is present in the message.
+     */
+    public boolean has(String field) {
+        return positions[slotOf(field)] >= 0;
+    }
+
+    /**
+     * Returns the information element field of the message, or <code>null</code> if it is not present. The
+     * information element is decoded on the first call.
+     */
+    public <T extends InformationElement> T get(String field, Class<T> type) {
+        return type.cast(get(slotOf(field)));
+    }
+
+    /**
+     * Returns the fully decoded message, which is created once and shared by the following calls.
+     */
+    public NasMessage decode() {
+        var decoded = message;
+        return decoded != null ? decoded : decodeMessage();
+    }
+
+    private synchronized NasMessage decodeMessage() {
+        if (message != null) {
+            return message;
+        }
+        if (plan == null) {
+            message = NasDecoder.nasPdu(pdu);
+            return message;
+        }
+
+        var instance = plan.newMessage();
+        for (int slot = 0; slot < positions.length; slot++) {
+            if (positions[slot] >= 0) {
+                plan.setSlot(instance, slot, get(slot));
+            }
+        }
+
+        instance.extendedProtocolDiscriminator = extendedProtocolDiscriminator;
+        if (instance instanceof PlainMmMessage) {
+            ((PlainMmMessage) instance).securityHeaderType = securityHeaderType;
+            ((PlainMmMessage) instance).messageType = messageType;
+        } else {
+            ((PlainSmMessage) instance).pduSessionId = pduSessionId;
+            ((PlainSmMessage) instance).pti = pti;
+            ((PlainSmMessage) instance).messageType = messageType;
+        }
+
+        message = instance;
+        return message;
+    }
+
+    private synchronized InformationElement get(int slot) {
+        int position = positions[slot];
+        if (position < 0) {
+            return null;
+        }
+        var value = values[slot];
+        if (value == null) {
+            value = plan.decodeSlot(slot, pdu, position);
+            values[slot] = value;
+        }
+        return value;
+    }
+
+    private int slotOf(String field) {
+        int slot = plan != null ? plan.slotOf(field) : -1;
+        if (slot < 0)
+            throw new IncorrectImplementationException(messageClass, "no information element field: " + field);
+        return slot;
+    }
+}
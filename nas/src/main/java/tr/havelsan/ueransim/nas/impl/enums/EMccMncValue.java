@@ -2115,7 +2115,8 @@ public class EMccMncValue extends ProtocolEnum {
     }
 
     public static EMccMncValue fromValue(int value) {
-        return fromValueGeneric(EMccMncValue.class, value, unknownValue(value));
+        var res = lookupValue(EMccMncValue.class, value);
+        return res != null ? res : unknownValue(value);
     }
 
     public static EMccMncValue unknownValue(int value) {
@@ -711,7 +711,8 @@ public class EMccValue extends ProtocolEnum {
     }
 
     public static EMccValue fromValue(int value) {
-        return fromValueGeneric(EMccValue.class, value, unknownValue(value));
+        var res = lookupValue(EMccValue.class, value);
+        return res != null ? res : unknownValue(value);
     }
 
     public static EMccValue unknownValue(int value) {
@@ -105,7 +105,7 @@ public class EMessageType extends ProtocolEnum {
     public static final EMessageType FIVEG_SM_STATUS
             = new EMessageType(0b11010110, "5GSM status");
 
-    private EMessageType(int value, String name) {
+    protected EMessageType(int value, String name) {
         super(value, name);
     }
 
@@ -1009,7 +1009,8 @@ public class EMncValue extends ProtocolEnum {
     }
 
     public static EMncValue fromValue(int value) {
-        return fromValueGeneric(EMncValue.class, value, unknownValue(value));
+        var res = lookupValue(EMncValue.class, value);
+        return res != null ? res : unknownValue(value);
     }
 
     public static EMncValue unknownValue(int value) {
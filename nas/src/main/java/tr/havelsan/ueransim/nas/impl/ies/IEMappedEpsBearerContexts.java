@@ -66,11 +66,9 @@ public class IEMappedEpsBearerContexts extends InformationElement6 {
 
         @Override
         public void encode(OctetOutputStream stream) {
-            var innerStream = new OctetOutputStream();
-            Arrays.stream(epsParameterList).forEach(param -> param.encode(innerStream));
-
             stream.writeOctet(epsBearerIdentity.intValue() << 4);
-            stream.writeOctet(innerStream.length() + 1);
+            int lengthIndex = stream.length();
+            stream.writeOctet(0); // dummy length
 
             var flags = new Octet();
             flags = flags.setBitRange(6, 7, operationCode.intValue());
@@ -78,7 +76,8 @@ public class IEMappedEpsBearerContexts extends InformationElement6 {
             flags = flags.setBitRange(0, 3, epsParameterList.length);
             stream.writeOctet(flags);
 
-            stream.writeStream(innerStream);
+            Arrays.stream(epsParameterList).forEach(param -> param.encode(stream));
+            stream.setOctet(lengthIndex, stream.length() - lengthIndex - 1);
         }
     }
 
@@ -37,7 +37,7 @@ public class IESessionAmbr extends InformationElement4 {
         stream.writeOctet(unitForSessionAmbrForDownlink.intValue());
         stream.writeOctet2(sessionAmbrForDownlink);
         stream.writeOctet(unitForSessionAmbrForUplink.intValue());
-        stream.writeOctet(sessionAmbrForUplink.intValue());
+        stream.writeOctet2(sessionAmbrForUplink);
     }
 
     public static class EUnitForSessionAmbr extends ProtocolEnum {
@@ -0,0 +1,108 @@
+package tr.havelsan.ueransim.nas;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import tr.havelsan.ueransim.core.exceptions.EncodingException;
+import tr.havelsan.ueransim.nas.impl.ies.IEAbba;
+import tr.havelsan.ueransim.nas.impl.ies.IEDnn;
+import tr.havelsan.ueransim.nas.impl.ies.IEMappedEpsBearerContexts;
+import tr.havelsan.ueransim.nas.impl.ies.IEPayloadContainer;
+import tr.havelsan.ueransim.nas.impl.messages.AuthenticationResult;
+import tr.havelsan.ueransim.nas.impl.messages.UlNasTransport;
+import tr.havelsan.ueransim.utils.OctetInputStream;
+import tr.havelsan.ueransim.utils.OctetOutputStream;
+import tr.havelsan.ueransim.utils.Utils;
+import tr.havelsan.ueransim.utils.octets.OctetString;
+
+import java.util.Arrays;
+
+public class Test_NasEncoder {
+    // payload container (type 6), PDU session ID, request type (type 1) and DNN (type 4)
+    private static final String UL_NAS_TRANSPORT = "7E0067" + "01" + "0003AABBCC" + "1205" + "81"
+            + "2509" + "08696E7465726E6574";
+
+    // EAP-AKA' challenge (type 6) carrying AT_RAND
+    private static final String AUTHENTICATION_RESULT = "7E005A" + "00" + "001C"
+            + "0101001C" + "32" + "01" + "0000" + "01050000" + "00112233445566778899AABBCCDDEEFF";
+
+    @Test
+    public void testUlNasTransport() {
+        var message = NasDecoder.nasPdu(Utils.hexStringToByteArray(UL_NAS_TRANSPORT));
+        Assert.assertEquals(UlNasTransport.class, message.getClass());
+        Assert.assertEquals("internet", new String(((UlNasTransport) message).dnn.data.toByteArray(), 1, 8));
+        Assert.assertEquals(UL_NAS_TRANSPORT, Utils.byteArrayToHexString(NasEncoder.nasPdu(message)));
+    }
+
+    @Test
+    public void testEap() {
+        var message = NasDecoder.nasPdu(Utils.hexStringToByteArray(AUTHENTICATION_RESULT));
+        Assert.assertEquals(AuthenticationResult.class, message.getClass());
+        Assert.assertNotNull(((AuthenticationResult) message).eapMessage.eap);
+        Assert.assertEquals(AUTHENTICATION_RESULT, Utils.byteArrayToHexString(NasEncoder.nasPdu(message)));
+    }
+
+    @Test
+    public void testMappedEpsBearerContexts() {
+        // EBI 5, operation code and E bit set, two EPS parameters
+        var encoded = "000A" + "5008" + "52" + "0102AABB" + "0201CC";
+        var ie = NasDecoder.ie2346(new OctetInputStream(Utils.hexStringToByteArray(encoded)),
+                IEMappedEpsBearerContexts.class);
+        Assert.assertEquals(1, ie.mappedEpsBearerContexts.length);
+        Assert.assertEquals(2, ie.mappedEpsBearerContexts[0].epsParameterList.length);
+
+        var stream = new OctetOutputStream();
+        NasEncoder.ie2346(stream, ie);
+        Assert.assertEquals(encoded, Utils.byteArrayToHexString(stream.toByteArray()));
+    }
+
+    @Test
+    public void testType4Length() {
+        var stream = new OctetOutputStream();
+        NasEncoder.ie2346(stream, 0x38, new IEAbba(new OctetString("0000")));
+        Assert.assertEquals("38020000", Utils.byteArrayToHexString(stream.toByteArray()));
+
+        try {
+            NasEncoder.ie2346(new OctetOutputStream(), new IEAbba(new OctetString(new byte[256])));
+            Assert.fail();
+        } catch (EncodingException ignored) {
+        }
+    }
+
+    @Test
+    public void testType6Length() {
+        var stream = new OctetOutputStream();
+        NasEncoder.ie2346(stream, new IEPayloadContainer(new OctetString(new byte[300])));
+        Assert.assertEquals(302, stream.length());
+        Assert.assertEquals("012C", Utils.byteArrayToHexString(stream.toByteArray()).substring(0, 4));
+
+        try {
+            NasEncoder.ie2346(new OctetOutputStream(), new IEPayloadContainer(new OctetString(new byte[0x10000])));
+            Assert.fail();
+        } catch (EncodingException ignored) {
+        }
+    }
+
+    @Test
+    public void testCallerBuffer() {
+        var message = NasDecoder.nasPdu(Utils.hexStringToByteArray(UL_NAS_TRANSPORT));
+        var expected = NasEncoder.nasPdu(message);
+
+        var buffer = new byte[64];
+        int length = NasEncoder.nasPdu(message, buffer);
+        Assert.assertEquals(expected.length, length);
+        Assert.assertEquals(UL_NAS_TRANSPORT, Utils.byteArrayToHexString(Arrays.copyOf(buffer, length)));
+
+        try {
+            NasEncoder.nasPdu(message, new byte[expected.length - 1]);
+            Assert.fail();
+        } catch (EncodingException ignored) {
+        }
+    }
+
+    @Test
+    public void testDnn() {
+        var stream = new OctetOutputStream();
+        NasEncoder.ie2346(stream, 0x25, new IEDnn("internet"));
+        Assert.assertEquals("2509" + "08696E7465726E6574", Utils.byteArrayToHexString(stream.toByteArray()));
+    }
+}
@@ -0,0 +1,73 @@
+package tr.havelsan.ueransim.nas;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import tr.havelsan.ueransim.core.exceptions.IncorrectImplementationException;
+import tr.havelsan.ueransim.nas.core.IMessageBuilder;
+import tr.havelsan.ueransim.nas.core.messages.NasMessageView;
+import tr.havelsan.ueransim.nas.core.messages.PlainMmMessage;
+import tr.havelsan.ueransim.nas.impl.enums.EMessageType;
+import tr.havelsan.ueransim.nas.impl.ies.IEPduSessionStatus;
+import tr.havelsan.ueransim.nas.impl.messages.ServiceAccept;
+import tr.havelsan.ueransim.utils.octets.OctetString;
+
+public class Test_NasMessageRegistry {
+    // not a message type of the specification
+    private static final int EXPERIMENTAL = 0x70;
+
+    @Test
+    public void testUnknownMessageType() {
+        NasMessageRegistry.register(EXPERIMENTAL, ExperimentalMessage::new);
+
+        var pdu = new OctetString("7E007050020000").toByteArray();
+        var message = NasDecoder.nasPdu(pdu);
+        Assert.assertEquals(ExperimentalMessage.class, message.getClass());
+        Assert.assertEquals(EXPERIMENTAL, ((ExperimentalMessage) message).messageType.intValue());
+        Assert.assertNotNull(((ExperimentalMessage) message).pduSessionStatus);
+        Assert.assertArrayEquals(pdu, NasEncoder.nasPdu(message));
+
+        var view = NasMessageView.of(pdu);
+        Assert.assertEquals(ExperimentalMessage.class, view.getMessageClass());
+        Assert.assertEquals(EXPERIMENTAL, view.getMessageType().intValue());
+        Assert.assertTrue(view.has("pduSessionStatus"));
+    }
+
+    @Test
+    public void testInconsistentRegistration() {
+        try {
+            NasMessageRegistry.register(EXPERIMENTAL + 1, ExperimentalMessage::new);
+            Assert.fail();
+        } catch (IncorrectImplementationException ignored) {
+        }
+        try {
+            NasMessageRegistry.register(EMessageType.SERVICE_REQUEST, ServiceAccept::new);
+            Assert.fail();
+        } catch (IncorrectImplementationException ignored) {
+        }
+        Assert.assertEquals(ServiceAccept.class, NasMessageRegistry.getMessageClass(EMessageType.SERVICE_ACCEPT));
+    }
+
+    public static class ExperimentalMessageType extends EMessageType {
+        public static final ExperimentalMessageType EXPERIMENTAL_REQUEST
+                = new ExperimentalMessageType(EXPERIMENTAL, "Experimental request");
+
+        private ExperimentalMessageType(int value, String name) {
+            super(value, name);
+        }
+    }
+
+    public static class ExperimentalMessage extends PlainMmMessage {
+        public IEPduSessionStatus pduSessionStatus;
+
+        public ExperimentalMessage() {
+            super(ExperimentalMessageType.EXPERIMENTAL_REQUEST);
+        }
+
+        @Override
+        public void build(IMessageBuilder builder) {
+            super.build(builder);
+
+            builder.optionalIE(0x50, "pduSessionStatus");
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package tr.havelsan.ueransim.nas.core.messages;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import tr.havelsan.ueransim.nas.NasDecoder;
+import tr.havelsan.ueransim.nas.NasEncoder;
+import tr.havelsan.ueransim.nas.core.ies.InformationElement1;
+import tr.havelsan.ueransim.nas.impl.enums.EMessageType;
+import tr.havelsan.ueransim.nas.impl.ies.IE5gMmCapability;
+import tr.havelsan.ueransim.nas.impl.messages.RegistrationRequest;
+import tr.havelsan.ueransim.utils.Json;
+import tr.havelsan.ueransim.utils.Utils;
+
+public class Test_NasMessageView {
+    // registration type and ngKSI share the octet after the header, the optional type 1 IEs are in reverse order
+    private static final String REGISTRATION_REQUEST = "7E0041" + "71" + "0007F4004101020304"
+            + "2E0280A0" + "91" + "B1" + "C3";
+
+    // the contents of the UE security capability look like the optional type 1 IEs, and must be skipped
+    private static final String REGISTRATION_REQUEST_2 = "7E0041" + "29" + "0007F4004101020304"
+            + "2E0391B1C3";
+
+    @Test
+    public void testHalfOctets() {
+        var view = NasMessageView.of(Utils.hexStringToByteArray(REGISTRATION_REQUEST));
+        Assert.assertEquals(RegistrationRequest.class, view.getMessageClass());
+        Assert.assertEquals(EMessageType.REGISTRATION_REQUEST, view.getMessageType());
+
+        Assert.assertEquals(0x1, halfOctet(view, "registrationType"));
+        Assert.assertEquals(0x7, halfOctet(view, "nasKeySetIdentifier"));
+        Assert.assertEquals(0x3, halfOctet(view, "nonCurrentNgKsi"));
+        Assert.assertEquals(0x1, halfOctet(view, "micoIndication"));
+        Assert.assertEquals(0x1, halfOctet(view, "networkSlicingIndication"));
+        Assert.assertTrue(view.has("ueSecurityCapability"));
+        Assert.assertFalse(view.has("mmCapability"));
+        Assert.assertNull(view.get("mmCapability", IE5gMmCapability.class));
+
+        assertSameAsDecoder(view);
+    }
+
+    @Test
+    public void testValuesAreNotIndexed() {
+        var view = NasMessageView.of(Utils.hexStringToByteArray(REGISTRATION_REQUEST_2));
+        Assert.assertEquals(0x9, halfOctet(view, "registrationType"));
+        Assert.assertEquals(0x2, halfOctet(view, "nasKeySetIdentifier"));
+        Assert.assertFalse(view.has("nonCurrentNgKsi"));
+        Assert.assertFalse(view.has("micoIndication"));
+        Assert.assertFalse(view.has("networkSlicingIndication"));
+        Assert.assertTrue(view.has("ueSecurityCapability"));
+
+        assertSameAsDecoder(view);
+    }
+
+    @Test
+    public void testSharedDecode() {
+        var view = NasMessageView.of(Utils.hexStringToByteArray(REGISTRATION_REQUEST));
+        var message = (RegistrationRequest) view.decode();
+        Assert.assertSame(message, view.decode());
+        Assert.assertSame(message.micoIndication, view.get("micoIndication", InformationElement1.class));
+    }
+
+    private static int halfOctet(NasMessageView view, String field) {
+        return view.get(field, InformationElement1.class).encodeIE1() & 0xF;
+    }
+
+    private static void assertSameAsDecoder(NasMessageView view) {
+        var decoded = NasDecoder.nasPdu(view.getPdu());
+        Assert.assertEquals(Json.toJson(decoded), Json.toJson(view.decode()));
+        Assert.assertArrayEquals(NasEncoder.nasPdu(decoded), NasEncoder.nasPdu(view.decode()));
+    }
+}
@@ -13,6 +13,7 @@ import tr.havelsan.ueransim.ngap.RuntimeConfiguration;
 import tr.havelsan.ueransim.ngap.ValueFactory;
 import tr.havelsan.ueransim.ngap.ngap_ies.*;
 import tr.havelsan.ueransim.ngap2.UserLocationInformationNr;
+import tr.havelsan.ueransim.utils.ByteBufferInputStream;
 import tr.havelsan.ueransim.utils.OctetInputStream;
 import tr.havelsan.ueransim.utils.Utils;
 import tr.havelsan.ueransim.utils.octets.Octet3;
@@ -21,6 +22,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 public class Ngap {
@@ -86,6 +88,19 @@ public class Ngap {
         }
     }
 
+    /**
+     * Decodes the remaining bytes of the given buffer without copying them into an intermediate array.
+     */
+    public static <T extends Value> T perDecode(Class<T> type, ByteBuffer data) {
+        try {
+            var value = type.getConstructor().newInstance();
+            value.perDecode(getContext(), new ByteBufferInputStream(data));
+            return value;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static <T extends Value> T perDecode(Class<T> type, String base16) {
         return perDecode(type, Utils.hexStringToByteArray(base16));
     }
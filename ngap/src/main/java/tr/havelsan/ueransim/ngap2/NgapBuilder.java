@@ -27,6 +27,7 @@ public class NgapBuilder {
     private NgapCriticality procedureCriticality;
     private NgapProcedure procedure;
     private List<ProtocolIE> protocolIEs;
+    private Long ranUeNgapId;
 
     public NgapBuilder(NgapProcedure procedure, NgapCriticality criticality) {
         this.protocolIEs = new ArrayList<>();
@@ -48,6 +49,7 @@ public class NgapBuilder {
     }
 
     public NgapBuilder addRanUeNgapId(long value, NgapCriticality criticality) {
+        this.ranUeNgapId = value;
         return addProtocolIE(new RAN_UE_NGAP_ID(value), criticality, Values.NGAP_Constants__id_RAN_UE_NGAP_ID);
     }
 
@@ -75,6 +77,13 @@ public class NgapBuilder {
         }
     }
 
+    /**
+     * Returns the RAN-UE-NGAP-ID added via {@link #addRanUeNgapId}, or <code>null</code> if the message is not UE associated.
+     */
+    public Long getRanUeNgapId() {
+        return ranUeNgapId;
+    }
+
     public NGAP_PDU build() {
         int procedureCode = NgapInternal.findProcedureCode(procedure);
         Value procedureContent = NgapInternal.createProcedureValue(procedure);
@@ -5,6 +5,7 @@ import fr.marben.asnsdk.japi.spe.SequenceValue;
 import fr.marben.asnsdk.japi.spe.Value;
 import tr.havelsan.ueransim.nas.NasDecoder;
 import tr.havelsan.ueransim.nas.core.messages.NasMessage;
+import tr.havelsan.ueransim.nas.core.messages.NasMessageView;
 import tr.havelsan.ueransim.ngap.Values;
 import tr.havelsan.ueransim.ngap.ngap_commondatatypes.Criticality;
 import tr.havelsan.ueransim.ngap.ngap_commondatatypes.ProtocolIE_ID;
@@ -185,6 +186,20 @@ public class NgapInternal {
     }
 
     public static NasMessage extractNasMessage(NGAP_PDU ngapPdu) {
+        var nasPdu = extractNasPdu(ngapPdu);
+        return nasPdu != null ? NasDecoder.nasPdu(nasPdu) : null;
+    }
+
+    /**
+     * Same as {@link #extractNasMessage}, but only the header of the NAS message is decoded and its information
+     * elements are decoded on access.
+     */
+    public static NasMessageView extractNasView(NGAP_PDU ngapPdu) {
+        var nasPdu = extractNasPdu(ngapPdu);
+        return nasPdu != null ? NasMessageView.of(nasPdu) : null;
+    }
+
+    private static byte[] extractNasPdu(NGAP_PDU ngapPdu) {
         if (ngapPdu == null) return null;
 
         var ngapMessage = NgapInternal.extractNgapMessage(ngapPdu);
@@ -199,6 +214,6 @@ public class NgapInternal {
             return null;
         }
 
-        return NasDecoder.nasPdu(protocolIes.get(0).getValue());
+        return protocolIes.get(0).getValue();
     }
 }
@@ -0,0 +1,129 @@
+package tr.havelsan.ueransim.ngap2;
+
+/**
+ * Locates and replaces the top level protocol IEs of an APER encoded NGAP PDU without decoding it. Every IE
+ * value is an octet aligned open type, so the IEs can be walked by their length determinants alone.
+ * Fragmented (64K and above) lengths are not supported, the methods return -1 or null for them.
+ */
+public class NgapRawPdu {
+    // choice, procedureCode and criticality octets before the message open type
+    private static final int MESSAGE_LENGTH_OFFSET = 3;
+
+    /**
+     * Returns the offset of the length determinant of the IE, or -1 if the PDU does not contain it.
+     */
+    public static int findIe(byte[] pdu, int ieId) {
+        if (pdu.length < MESSAGE_LENGTH_OFFSET + 1)
+            return -1;
+        int messageLengthSize = lengthSize(pdu, MESSAGE_LENGTH_OFFSET);
+        if (messageLengthSize < 0)
+            return -1;
+
+        // extension bit of the message SEQUENCE, then the 16-bit IE count
+        int offset = MESSAGE_LENGTH_OFFSET + messageLengthSize + 1;
+        if (offset + 2 > pdu.length)
+            return -1;
+        int count = ((pdu[offset] & 0xFF) << 8) | (pdu[offset + 1] & 0xFF);
+        offset += 2;
+
+        for (int i = 0; i < count && offset + 4 <= pdu.length; i++) {
+            int id = ((pdu[offset] & 0xFF) << 8) | (pdu[offset + 1] & 0xFF);
+            int lengthOffset = offset + 3;
+            if (id == ieId)
+                return lengthOffset;
+
+            int size = lengthSize(pdu, lengthOffset);
+            if (size < 0)
+                return -1;
+            offset = lengthOffset + size + length(pdu, lengthOffset);
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the encoded value of the IE, or null if the PDU does not contain it.
+     */
+    public static byte[] getIeValue(byte[] pdu, int ieId) {
+        int lengthOffset = findIe(pdu, ieId);
+        if (lengthOffset < 0)
+            return null;
+
+        int start = lengthOffset + lengthSize(pdu, lengthOffset);
+        int end = start + length(pdu, lengthOffset);
+        if (end > pdu.length)
+            return null;
+
+        var value = new byte[end - start];
+        System.arraycopy(pdu, start, value, 0, value.length);
+        return value;
+    }
+
+    /**
+     * Replaces the encoded value of the IE. If the length is unchanged the PDU is modified in place and returned,
+     * otherwise a new PDU is returned with the IE and message lengths updated. Returns null if the IE is not found,
+     * or if a length determinant would change its size.
+     */
+    public static byte[] replaceIeValue(byte[] pdu, int ieId, byte[] value) {
+        int lengthOffset = findIe(pdu, ieId);
+        if (lengthOffset < 0)
+            return null;
+
+        int ieLengthSize = lengthSize(pdu, lengthOffset);
+        int oldLength = length(pdu, lengthOffset);
+        int valueOffset = lengthOffset + ieLengthSize;
+
+        if (oldLength == value.length) {
+            System.arraycopy(value, 0, pdu, valueOffset, value.length);
+            return pdu;
+        }
+
+        int delta = value.length - oldLength;
+        int messageLengthSize = lengthSize(pdu, MESSAGE_LENGTH_OFFSET);
+        int messageLength = length(pdu, MESSAGE_LENGTH_OFFSET) + delta;
+        if (encodedLengthSize(value.length) != ieLengthSize || encodedLengthSize(messageLength) != messageLengthSize)
+            return null;
+
+        var result = new byte[pdu.length + delta];
+        System.arraycopy(pdu, 0, result, 0, valueOffset);
+        System.arraycopy(value, 0, result, valueOffset, value.length);
+        System.arraycopy(pdu, valueOffset + oldLength, result, valueOffset + value.length,
+                pdu.length - valueOffset - oldLength);
+
+        writeLength(result, lengthOffset, value.length);
+        writeLength(result, MESSAGE_LENGTH_OFFSET, messageLength);
+        return result;
+    }
+
+    private static int lengthSize(byte[] pdu, int offset) {
+        if (offset >= pdu.length)
+            return -1;
+        int first = pdu[offset] & 0xFF;
+        if ((first & 0x80) == 0)
+            return 1;
+        if ((first & 0xC0) == 0x80 && offset + 1 < pdu.length)
+            return 2;
+        return -1;
+    }
+
+    private static int length(byte[] pdu, int offset) {
+        int first = pdu[offset] & 0xFF;
+        if ((first & 0x80) == 0)
+            return first;
+        return ((first & 0x3F) << 8) | (pdu[offset + 1] & 0xFF);
+    }
+
+    private static int encodedLengthSize(int length) {
+        if (length < 128) return 1;
+        if (length < 16384) return 2;
+        return -1;
+    }
+
+    private static void writeLength(byte[] pdu, int offset, int length) {
+        if (length < 128) {
+            pdu[offset] = (byte) length;
+        } else {
+            pdu[offset] = (byte) (0x80 | (length >> 8));
+            pdu[offset + 1] = (byte) length;
+        }
+    }
+}
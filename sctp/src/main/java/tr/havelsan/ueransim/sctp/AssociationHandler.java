@@ -3,17 +3,29 @@ package tr.havelsan.ueransim.sctp;
 import com.sun.nio.sctp.AbstractNotificationHandler;
 import com.sun.nio.sctp.AssociationChangeNotification;
 import com.sun.nio.sctp.HandlerResult;
+import com.sun.nio.sctp.PeerAddressChangeNotification;
+import com.sun.nio.sctp.SendFailedNotification;
 import com.sun.nio.sctp.ShutdownNotification;
 
 import java.io.PrintStream;
 
 public class AssociationHandler extends AbstractNotificationHandler<PrintStream> {
+    private final AssociationMetrics metrics;
+    private int outboundStreams;
+    private int inboundStreams;
+    private volatile boolean shutdown;
+
+    public AssociationHandler(AssociationMetrics metrics) {
+        this.metrics = metrics;
+    }
 
     @Override
     public HandlerResult handleNotification(AssociationChangeNotification notification, PrintStream attachment) {
+        metrics.event("ASSOC_" + notification.event().name());
         if (notification.event() == AssociationChangeNotification.AssocChangeEvent.COMM_UP) {
             int outbound = notification.association().maxOutboundStreams();
             int inbound = notification.association().maxInboundStreams();
+            setStreamCounts(outbound, inbound);
             attachment.printf(
                     "New association setup with %d outbound streams" + ", and %d inbound streams.\n",
                     outbound, inbound
@@ -22,9 +34,43 @@ public class AssociationHandler extends AbstractNotificationHandler<PrintStream>
         return HandlerResult.CONTINUE;
     }
 
+    @Override
+    public HandlerResult handleNotification(PeerAddressChangeNotification notification, PrintStream attachment) {
+        metrics.event("PEER_" + notification.event().name());
+        return HandlerResult.CONTINUE;
+    }
+
+    @Override
+    public HandlerResult handleNotification(SendFailedNotification notification, PrintStream attachment) {
+        metrics.event("SEND_FAILED");
+        attachment.printf("Sending a message on stream %d failed with error %d.\n",
+                notification.streamNumber(), notification.errorCode());
+        return HandlerResult.CONTINUE;
+    }
+
     @Override
     public HandlerResult handleNotification(ShutdownNotification notification, PrintStream attachment) {
+        metrics.event("SHUTDOWN");
+        shutdown = true;
         attachment.print("The association has been shutdown.\n");
         return HandlerResult.RETURN;
     }
-}
\ No newline at end of file
+
+    void setStreamCounts(int outboundStreams, int inboundStreams) {
+        this.outboundStreams = outboundStreams;
+        this.inboundStreams = inboundStreams;
+        metrics.ensureStreams(Math.max(outboundStreams, inboundStreams));
+    }
+
+    public int getOutboundStreams() {
+        return outboundStreams;
+    }
+
+    public int getInboundStreams() {
+        return inboundStreams;
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+}
@@ -0,0 +1,136 @@
+package tr.havelsan.ueransim.sctp;
+
+import com.sun.nio.sctp.SctpChannel;
+import com.sun.nio.sctp.SctpSocketOption;
+import com.sun.nio.sctp.SctpStandardSocketOptions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe counters of one association, updated by the client on every message and by the
+ * {@link AssociationHandler} on every notification. Use {@link #snapshot(SctpChannel, SendQueueStats)} to read them.
+ */
+public class AssociationMetrics {
+    private static final int MESSAGES_OUT = 0;
+    private static final int BYTES_OUT = 1;
+    private static final int MESSAGES_IN = 2;
+    private static final int BYTES_IN = 3;
+    private static final int COUNTERS_PER_STREAM = 4;
+
+    private static final SctpSocketOption<?>[] SAMPLED_OPTIONS = {
+            SctpStandardSocketOptions.SO_SNDBUF,
+            SctpStandardSocketOptions.SO_RCVBUF,
+            SctpStandardSocketOptions.SO_LINGER,
+            SctpStandardSocketOptions.SCTP_NODELAY,
+            SctpStandardSocketOptions.SCTP_DISABLE_FRAGMENTS,
+            SctpStandardSocketOptions.SCTP_EXPLICIT_COMPLETE,
+            SctpStandardSocketOptions.SCTP_FRAGMENT_INTERLEAVE,
+            SctpStandardSocketOptions.SCTP_INIT_MAXSTREAMS,
+            SctpStandardSocketOptions.SCTP_PRIMARY_ADDR,
+    };
+
+    private volatile AtomicLongArray streamCounters;
+    private final AtomicLong sendTimeCount;
+    private final AtomicLong sendTimeTotal;
+    private final AtomicLong sendTimeMax;
+    private final Map<String, LongAdder> events;
+
+    public AssociationMetrics() {
+        this.streamCounters = new AtomicLongArray(COUNTERS_PER_STREAM);
+        this.sendTimeCount = new AtomicLong();
+        this.sendTimeTotal = new AtomicLong();
+        this.sendTimeMax = new AtomicLong();
+        this.events = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param sendTimeNanos time from the send call until the message was handed to the kernel.
+     */
+    public void messageSent(int streamNumber, int bytes, long sendTimeNanos) {
+        var counters = countersFor(streamNumber);
+        counters.incrementAndGet(streamNumber * COUNTERS_PER_STREAM + MESSAGES_OUT);
+        counters.addAndGet(streamNumber * COUNTERS_PER_STREAM + BYTES_OUT, bytes);
+
+        sendTimeCount.incrementAndGet();
+        sendTimeTotal.addAndGet(sendTimeNanos);
+        sendTimeMax.accumulateAndGet(sendTimeNanos, Math::max);
+    }
+
+    public void messageReceived(int streamNumber, int bytes) {
+        var counters = countersFor(streamNumber);
+        counters.incrementAndGet(streamNumber * COUNTERS_PER_STREAM + MESSAGES_IN);
+        counters.addAndGet(streamNumber * COUNTERS_PER_STREAM + BYTES_IN, bytes);
+    }
+
+    public void event(String name) {
+        events.computeIfAbsent(name, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Allocates the counters of the given number of streams up front, so that they are not grown while in use.
+     */
+    void ensureStreams(int streamCount) {
+        if (streamCount > 0) countersFor(streamCount - 1);
+    }
+
+    /**
+     * Reads the counters, and samples the current socket options of the channel if one is given.
+     */
+    public AssociationStats snapshot(SctpChannel channel, SendQueueStats sendQueueStats) {
+        var counters = streamCounters;
+        int streams = counters.length() / COUNTERS_PER_STREAM;
+        var perStream = new AssociationStats.StreamStats[streams];
+        for (int i = 0; i < streams; i++) {
+            perStream[i] = new AssociationStats.StreamStats(i,
+                    counters.get(i * COUNTERS_PER_STREAM + MESSAGES_OUT),
+                    counters.get(i * COUNTERS_PER_STREAM + BYTES_OUT),
+                    counters.get(i * COUNTERS_PER_STREAM + MESSAGES_IN),
+                    counters.get(i * COUNTERS_PER_STREAM + BYTES_IN));
+        }
+
+        var eventCounts = new TreeMap<String, Long>();
+        events.forEach((name, count) -> eventCounts.put(name, count.sum()));
+
+        return new AssociationStats(perStream, sendTimeCount.get(), sendTimeTotal.get(), sendTimeMax.get(),
+                eventCounts, sampleSocketOptions(channel), sendQueueStats);
+    }
+
+    private AtomicLongArray countersFor(int streamNumber) {
+        var counters = streamCounters;
+        if ((streamNumber + 1) * COUNTERS_PER_STREAM <= counters.length())
+            return counters;
+
+        synchronized (this) {
+            counters = streamCounters;
+            if ((streamNumber + 1) * COUNTERS_PER_STREAM > counters.length()) {
+                var grown = new AtomicLongArray((streamNumber + 1) * COUNTERS_PER_STREAM);
+                for (int i = 0; i < counters.length(); i++) {
+                    grown.set(i, counters.get(i));
+                }
+                streamCounters = counters = grown;
+            }
+            return counters;
+        }
+    }
+
+    private static Map<String, Object> sampleSocketOptions(SctpChannel channel) {
+        var options = new LinkedHashMap<String, Object>();
+        if (channel == null || !channel.isOpen())
+            return options;
+
+        for (var option : SAMPLED_OPTIONS) {
+            try {
+                options.put(option.name(), channel.getOption(option));
+            } catch (Exception ignored) {
+                // not supported by the platform
+            }
+        }
+        return options;
+    }
+}
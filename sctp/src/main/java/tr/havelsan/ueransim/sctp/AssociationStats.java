@@ -0,0 +1,94 @@
+package tr.havelsan.ueransim.sctp;
+
+import java.util.Map;
+
+/**
+ * Snapshot of the {@link AssociationMetrics} of an association. Note that the SCTP socket API of the JDK does not
+ * expose SCTP_STATUS, so retransmissions, rwnd and RTT are not available; the send time and the send queue
+ * statistics are the closest indicators of transport congestion.
+ */
+public class AssociationStats {
+    public final StreamStats[] streams;
+    public final long sendCount;
+    public final long sendTimeTotalNanos;
+    public final long sendTimeMaxNanos;
+    public final Map<String, Long> events;
+    public final Map<String, Object> socketOptions;
+    /**
+     * Statistics of the outbound queue, or null if the client sends synchronously.
+     */
+    public final SendQueueStats sendQueue;
+
+    public AssociationStats(StreamStats[] streams, long sendCount, long sendTimeTotalNanos, long sendTimeMaxNanos,
+                            Map<String, Long> events, Map<String, Object> socketOptions, SendQueueStats sendQueue) {
+        this.streams = streams;
+        this.sendCount = sendCount;
+        this.sendTimeTotalNanos = sendTimeTotalNanos;
+        this.sendTimeMaxNanos = sendTimeMaxNanos;
+        this.events = events;
+        this.socketOptions = socketOptions;
+        this.sendQueue = sendQueue;
+    }
+
+    public long messagesOut() {
+        long total = 0;
+        for (var stream : streams) total += stream.messagesOut;
+        return total;
+    }
+
+    public long messagesIn() {
+        long total = 0;
+        for (var stream : streams) total += stream.messagesIn;
+        return total;
+    }
+
+    public long bytesOut() {
+        long total = 0;
+        for (var stream : streams) total += stream.bytesOut;
+        return total;
+    }
+
+    public long bytesIn() {
+        long total = 0;
+        for (var stream : streams) total += stream.bytesIn;
+        return total;
+    }
+
+    public double averageSendTimeNanos() {
+        return sendCount == 0 ? 0 : (double) sendTimeTotalNanos / sendCount;
+    }
+
+    @Override
+    public String toString() {
+        var sb = new StringBuilder();
+        sb.append(String.format("out=%d msgs/%d bytes in=%d msgs/%d bytes sendTime(avg=%.1fus max=%.1fus)",
+                messagesOut(), bytesOut(), messagesIn(), bytesIn(),
+                averageSendTimeNanos() / 1000.0, sendTimeMaxNanos / 1000.0));
+        for (var stream : streams) {
+            if (stream.messagesOut != 0 || stream.messagesIn != 0) {
+                sb.append(String.format("\n  stream %d: out=%d msgs/%d bytes in=%d msgs/%d bytes",
+                        stream.streamNumber, stream.messagesOut, stream.bytesOut, stream.messagesIn, stream.bytesIn));
+            }
+        }
+        if (!events.isEmpty()) sb.append("\n  events: ").append(events);
+        if (!socketOptions.isEmpty()) sb.append("\n  socket options: ").append(socketOptions);
+        if (sendQueue != null) sb.append("\n  send queue: ").append(sendQueue);
+        return sb.toString();
+    }
+
+    public static class StreamStats {
+        public final int streamNumber;
+        public final long messagesOut;
+        public final long bytesOut;
+        public final long messagesIn;
+        public final long bytesIn;
+
+        public StreamStats(int streamNumber, long messagesOut, long bytesOut, long messagesIn, long bytesIn) {
+            this.streamNumber = streamNumber;
+            this.messagesOut = messagesOut;
+            this.bytesOut = bytesOut;
+            this.messagesIn = messagesIn;
+            this.bytesIn = bytesIn;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package tr.havelsan.ueransim.sctp;
+
+/**
+ * Decorates an {@link ISCTPClient} so that every sent and received message is also written to a
+ * {@link PcapWriter}.
+ */
+public class CapturingSCTPClient implements ISCTPClient {
+    private final ISCTPClient client;
+    private final PcapWriter writer;
+
+    public CapturingSCTPClient(ISCTPClient client, PcapWriter writer) {
+        this.client = client;
+        this.writer = writer;
+    }
+
+    @Override
+    public void start() throws Exception {
+        client.start();
+    }
+
+    @Override
+    public void send(int streamNumber, byte[] data) throws Exception {
+        client.send(streamNumber, data);
+        writer.capture(true, streamNumber, data);
+    }
+
+    @Override
+    public void receiverLoop(ISCTPBufferHandler handler) throws Exception {
+        ISCTPBufferHandler capturingHandler = (receivedBuffer, messageInfo, channel) -> {
+            int streamNumber = messageInfo != null ? messageInfo.streamNumber() : 0;
+            writer.capture(false, streamNumber, receivedBuffer);
+            handler.handleSCTPMessage(receivedBuffer, messageInfo, channel);
+        };
+        client.receiverLoop(capturingHandler);
+    }
+
+    @Override
+    public void close() {
+        try {
+            client.close();
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    public void abortReceiver() {
+        client.abortReceiver();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return client.isOpen();
+    }
+
+    @Override
+    public int getOutboundStreams() {
+        return client.getOutboundStreams();
+    }
+
+    @Override
+    public int getInboundStreams() {
+        return client.getInboundStreams();
+    }
+
+    @Override
+    public AssociationStats getStats() {
+        return client.getStats();
+    }
+
+    public ISCTPClient getClient() {
+        return client;
+    }
+}
@@ -0,0 +1,26 @@
+package tr.havelsan.ueransim.sctp;
+
+import com.sun.nio.sctp.MessageInfo;
+import com.sun.nio.sctp.SctpChannel;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Zero-copy variant of {@link ISCTPHandler}. The received buffer is a read-only view over the receive buffer
+ * of the association, and it is only valid until this method returns. Handlers that need to keep the data
+ * must copy it.
+ */
+public interface ISCTPBufferHandler {
+    void handleSCTPMessage(ByteBuffer receivedBuffer, MessageInfo messageInfo, SctpChannel channel) throws Exception;
+
+    /**
+     * Adapts a byte array based handler, copying each received message into a new array.
+     */
+    static ISCTPBufferHandler of(ISCTPHandler handler) {
+        return (receivedBuffer, messageInfo, channel) -> {
+            byte[] receivedBytes = new byte[receivedBuffer.remaining()];
+            receivedBuffer.get(receivedBytes);
+            handler.handleSCTPMessage(receivedBytes, messageInfo, channel);
+        };
+    }
+}
@@ -5,11 +5,30 @@ public interface ISCTPClient {
 
     void send(int streamNumber, byte[] data) throws Exception;
 
-    void receiverLoop(ISCTPHandler handler) throws Exception;
+    /**
+     * Receives messages until the receiver is aborted or the association is closed. Byte array based handlers
+     * can be passed with {@link ISCTPBufferHandler#of}.
+     */
+    void receiverLoop(ISCTPBufferHandler handler) throws Exception;
 
     void close();
 
     void abortReceiver();
 
     boolean isOpen();
+
+    /**
+     * Returns the number of outbound streams negotiated for the association.
+     */
+    int getOutboundStreams();
+
+    /**
+     * Returns the number of inbound streams negotiated for the association.
+     */
+    int getInboundStreams();
+
+    /**
+     * Returns a snapshot of the message counters, association events and current socket options.
+     */
+    AssociationStats getStats();
 }
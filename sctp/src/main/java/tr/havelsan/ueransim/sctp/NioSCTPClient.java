@@ -0,0 +1,282 @@
+package tr.havelsan.ueransim.sctp;
+
+import com.sun.nio.sctp.MessageInfo;
+import com.sun.nio.sctp.SctpChannel;
+import com.sun.nio.sctp.SctpStandardSocketOptions;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking SCTP client driven by an {@link SCTPEventLoop}. Received messages are dispatched to the
+ * handler on the I/O thread of the association, and outgoing messages are queued by the senders and written
+ * in batches by the same thread.
+ */
+public class NioSCTPClient implements ISCTPClient {
+    private static final int MIN_RECEIVER_BUFFER_SIZE = 65536;
+    private static final int DEFAULT_SEND_QUEUE_HIGH_WATER_MARK = 4096;
+    private static final int MAX_DRAIN_BATCH = 256;
+
+    private final SCTPEventLoop eventLoop;
+    private final String host;
+    private final int port;
+    private final int protocolId;
+    private final int streamCount;
+
+    private final SendQueue sendQueue;
+    private final AssociationMetrics metrics;
+    private final AtomicBoolean interestUpdateScheduled;
+    private final Object receiverLock;
+
+    private SctpChannel channel;
+    private AssociationHandler associationHandler;
+    private ByteBuffer receiveBuffer;
+    private SCTPEventLoop.IOThread ioThread;
+    private SelectionKey selectionKey;
+
+    private volatile ISCTPBufferHandler handler;
+    private Exception receiverFailure;
+
+    public NioSCTPClient(SCTPEventLoop eventLoop, String host, int port, int protocolId, int streamCount) {
+        this(eventLoop, host, port, protocolId, streamCount, DEFAULT_SEND_QUEUE_HIGH_WATER_MARK);
+    }
+
+    /**
+     * @param sendQueueHighWaterMark number of queued outgoing messages at which {@link #send(int, byte[])}
+     *                               starts blocking the calling thread.
+     */
+    public NioSCTPClient(SCTPEventLoop eventLoop, String host, int port, int protocolId, int streamCount,
+                         int sendQueueHighWaterMark) {
+        this.eventLoop = eventLoop;
+        this.host = host;
+        this.port = port;
+        this.protocolId = protocolId;
+        this.streamCount = streamCount;
+
+        this.sendQueue = new SendQueue(sendQueueHighWaterMark);
+        this.metrics = new AssociationMetrics();
+        this.interestUpdateScheduled = new AtomicBoolean();
+        this.receiverLock = new Object();
+    }
+
+    @Override
+    public void start() throws Exception {
+        if (this.channel != null) throw new RuntimeException("start was already called");
+        var serverAddress = new InetSocketAddress(host, port);
+        this.channel = SctpChannel.open(serverAddress, streamCount, streamCount);
+        this.associationHandler = new AssociationHandler(metrics);
+
+        var association = channel.association();
+        if (association != null) {
+            associationHandler.setStreamCounts(association.maxOutboundStreams(), association.maxInboundStreams());
+        }
+
+        this.receiveBuffer = ByteBuffer.allocateDirect(Math.max(MIN_RECEIVER_BUFFER_SIZE,
+                channel.getOption(SctpStandardSocketOptions.SO_RCVBUF)));
+
+        channel.configureBlocking(false);
+        this.ioThread = eventLoop.register(this);
+    }
+
+    @Override
+    public void send(int streamNumber, byte[] data) throws Exception {
+        if (!isOpen()) throw new IOException("association is closed");
+
+        // Handlers run on the I/O thread, which is the only one that drains the queue, so it must not wait
+        if (Thread.currentThread() != ioThread) {
+            sendQueue.awaitCapacity();
+            if (!isOpen()) throw new IOException("association is closed");
+        }
+        if (sendQueue.offer(streamNumber, data)) {
+            scheduleInterestUpdate();
+        }
+    }
+
+    /**
+     * Starts dispatching received messages to the handler on the I/O thread, and returns immediately.
+     * Dispatching continues until {@link #abortReceiver()} or {@link #close()} is called.
+     */
+    public void startReceiving(ISCTPBufferHandler handler) {
+        synchronized (receiverLock) {
+            this.receiverFailure = null;
+            this.handler = handler;
+        }
+        scheduleInterestUpdate();
+    }
+
+    /**
+     * Blocks the calling thread while messages are dispatched on the I/O thread, so that callers written for
+     * {@link SCTPClient} work unchanged.
+     */
+    @Override
+    public void receiverLoop(ISCTPBufferHandler handler) throws Exception {
+        startReceiving(handler);
+
+        Exception failure;
+        synchronized (receiverLock) {
+            while (this.handler == handler && channel.isOpen()) {
+                receiverLock.wait();
+            }
+            failure = receiverFailure;
+        }
+        if (failure != null) throw failure;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            sendQueue.close();
+            synchronized (receiverLock) {
+                receiverLock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void abortReceiver() {
+        synchronized (receiverLock) {
+            handler = null;
+            receiverLock.notifyAll();
+        }
+        scheduleInterestUpdate();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel != null && channel.isOpen();
+    }
+
+    @Override
+    public int getOutboundStreams() {
+        return associationHandler.getOutboundStreams();
+    }
+
+    @Override
+    public int getInboundStreams() {
+        return associationHandler.getInboundStreams();
+    }
+
+    @Override
+    public AssociationStats getStats() {
+        return metrics.snapshot(channel, sendQueue.stats());
+    }
+
+    //======================================================================================================
+    //                                       I/O THREAD SIDE
+    //======================================================================================================
+
+    void registered(Selector selector) {
+        try {
+            selectionKey = channel.register(selector, 0, this);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        updateInterestOps();
+    }
+
+    void ready(SelectionKey key) {
+        try {
+            if (key.isWritable()) {
+                flushSendQueue();
+            }
+            if (key.isReadable()) {
+                readMessages();
+            }
+        } catch (IOException e) {
+            failReceiver(e);
+            close();
+            return;
+        }
+        updateInterestOps();
+    }
+
+    private void scheduleInterestUpdate() {
+        if (ioThread != null && interestUpdateScheduled.compareAndSet(false, true)) {
+            ioThread.execute(() -> {
+                interestUpdateScheduled.set(false);
+                updateInterestOps();
+            });
+        }
+    }
+
+    private void updateInterestOps() {
+        if (selectionKey == null || !selectionKey.isValid())
+            return;
+
+        int ops = 0;
+        if (handler != null) ops |= SelectionKey.OP_READ;
+        if (!sendQueue.isEmpty()) ops |= SelectionKey.OP_WRITE;
+        selectionKey.interestOps(ops);
+    }
+
+    private void flushSendQueue() throws IOException {
+        int batch = 0;
+        SendQueue.Entry entry;
+        while (batch < MAX_DRAIN_BATCH && (entry = sendQueue.peek()) != null) {
+            var messageInfo = MessageInfo.createOutgoing(null, entry.streamNumber);
+            messageInfo.payloadProtocolID(protocolId);
+
+            // A non-blocking send either writes the whole message or nothing
+            if (channel.send(ByteBuffer.wrap(entry.data), messageInfo) == 0)
+                break;
+            metrics.messageSent(entry.streamNumber, entry.data.length, System.nanoTime() - entry.enqueueTime);
+            sendQueue.remove();
+            batch++;
+        }
+        sendQueue.drained(batch);
+    }
+
+    private void readMessages() throws IOException {
+        ISCTPBufferHandler handler;
+        while ((handler = this.handler) != null) {
+            var messageInfo = channel.receive(receiveBuffer, System.out, associationHandler);
+            if (messageInfo == null) {
+                if (associationHandler.isShutdown()) close();
+                return;
+            }
+            if (messageInfo.bytes() == -1) {
+                close();
+                return;
+            }
+
+            if (!messageInfo.isComplete()) {
+                if (!receiveBuffer.hasRemaining()) {
+                    var grown = ByteBuffer.allocateDirect(receiveBuffer.capacity() * 2);
+                    receiveBuffer.flip();
+                    grown.put(receiveBuffer);
+                    receiveBuffer = grown;
+                }
+                continue;
+            }
+
+            receiveBuffer.flip();
+            metrics.messageReceived(messageInfo.streamNumber(), receiveBuffer.remaining());
+            try {
+                handler.handleSCTPMessage(receiveBuffer.asReadOnlyBuffer(), messageInfo, channel);
+            } catch (Exception e) {
+                failReceiver(e);
+            } finally {
+                receiveBuffer.clear();
+            }
+        }
+    }
+
+    private void failReceiver(Exception e) {
+        synchronized (receiverLock) {
+            if (handler != null) {
+                receiverFailure = e;
+                handler = null;
+            }
+            receiverLock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package tr.havelsan.ueransim.sctp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the SCTP user messages out of a pcap file. IPv4 packets are accepted over raw IP, Ethernet and Linux
+ * cooked captures, which covers the files written by {@link PcapWriter} and by tcpdump. Fragmented user
+ * messages are skipped.
+ */
+public class PcapReader {
+    private static final int LINKTYPE_ETHERNET = 1;
+    private static final int LINKTYPE_RAW = 101;
+    private static final int LINKTYPE_LINUX_SLL = 113;
+    private static final int LINKTYPE_IPV4 = 228;
+
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+    private static final int ETHERTYPE_VLAN = 0x8100;
+    private static final int IP_PROTOCOL_SCTP = 132;
+    private static final int CHUNK_DATA = 0;
+
+    /**
+     * Returns the complete DATA chunks in the file whose PPID matches, or all of them if the PPID is negative.
+     */
+    public static List<Message> read(Path path, int payloadProtocolId) throws IOException {
+        var file = ByteBuffer.wrap(Files.readAllBytes(path));
+
+        int magic = file.order(ByteOrder.LITTLE_ENDIAN).getInt(0);
+        boolean nanoResolution;
+        if (magic == 0xa1b2c3d4 || magic == 0xa1b23c4d) {
+            nanoResolution = magic == 0xa1b23c4d;
+        } else {
+            file.order(ByteOrder.BIG_ENDIAN);
+            magic = file.getInt(0);
+            if (magic != 0xa1b2c3d4 && magic != 0xa1b23c4d)
+                throw new IOException("not a pcap file (pcapng is not supported): " + path);
+            nanoResolution = magic == 0xa1b23c4d;
+        }
+
+        int linkType = file.getInt(20) & 0xFFFF;
+        file.position(24);
+
+        var messages = new ArrayList<Message>();
+        while (file.remaining() >= 16) {
+            long seconds = file.getInt() & 0xFFFFFFFFL;
+            long fraction = file.getInt() & 0xFFFFFFFFL;
+            int capturedLength = file.getInt();
+            file.getInt();
+            if (capturedLength > file.remaining())
+                break;
+
+            long timestamp = seconds * 1_000_000_000L + (nanoResolution ? fraction : fraction * 1000);
+            var packet = file.slice().order(ByteOrder.BIG_ENDIAN);
+            packet.limit(capturedLength);
+            file.position(file.position() + capturedLength);
+
+            int ipStart = ipStart(packet, linkType);
+            if (ipStart >= 0) {
+                readPacket(packet, ipStart, timestamp, payloadProtocolId, messages);
+            }
+        }
+        return messages;
+    }
+
+    private static int ipStart(ByteBuffer packet, int linkType) {
+        switch (linkType) {
+            case LINKTYPE_RAW:
+            case LINKTYPE_IPV4:
+                return 0;
+            case LINKTYPE_ETHERNET: {
+                int offset = 12;
+                int etherType = packet.getShort(offset) & 0xFFFF;
+                while (etherType == ETHERTYPE_VLAN) {
+                    offset += 4;
+                    etherType = packet.getShort(offset) & 0xFFFF;
+                }
+                return etherType == ETHERTYPE_IPV4 ? offset + 2 : -1;
+            }
+            case LINKTYPE_LINUX_SLL:
+                return (packet.getShort(14) & 0xFFFF) == ETHERTYPE_IPV4 ? 16 : -1;
+            default:
+                return -1;
+        }
+    }
+
+    private static void readPacket(ByteBuffer packet, int ipStart, long timestamp, int payloadProtocolId,
+                                   List<Message> output) {
+        if (packet.limit() < ipStart + 20 || (packet.get(ipStart) & 0xF0) != 0x40)
+            return;
+        if ((packet.get(ipStart + 9) & 0xFF) != IP_PROTOCOL_SCTP)
+            return;
+
+        int ipHeaderLength = (packet.get(ipStart) & 0x0F) * 4;
+        int ipEnd = Math.min(packet.limit(), ipStart + (packet.getShort(ipStart + 2) & 0xFFFF));
+        var source = Arrays.copyOfRange(packet.array(), packet.arrayOffset() + ipStart + 12,
+                packet.arrayOffset() + ipStart + 16);
+        var destination = Arrays.copyOfRange(packet.array(), packet.arrayOffset() + ipStart + 16,
+                packet.arrayOffset() + ipStart + 20);
+
+        int sctpStart = ipStart + ipHeaderLength;
+        if (ipEnd < sctpStart + 12)
+            return;
+        int sourcePort = packet.getShort(sctpStart) & 0xFFFF;
+        int destinationPort = packet.getShort(sctpStart + 2) & 0xFFFF;
+
+        int chunk = sctpStart + 12;
+        while (chunk + 4 <= ipEnd) {
+            int type = packet.get(chunk) & 0xFF;
+            int flags = packet.get(chunk + 1) & 0xFF;
+            int length = packet.getShort(chunk + 2) & 0xFFFF;
+            if (length < 4 || chunk + length > ipEnd)
+                return;
+
+            if (type == CHUNK_DATA && length >= 16 && (flags & 0x03) == 0x03) {
+                int streamNumber = packet.getShort(chunk + 8) & 0xFFFF;
+                int ppid = packet.getInt(chunk + 12);
+                if (payloadProtocolId < 0 || ppid == payloadProtocolId) {
+                    var payload = new byte[length - 16];
+                    packet.position(chunk + 16);
+                    packet.get(payload);
+                    output.add(new Message(timestamp, toAddress(source, sourcePort),
+                            toAddress(destination, destinationPort), streamNumber, ppid, payload));
+                }
+            }
+            chunk += (length + 3) & ~3;
+        }
+    }
+
+    private static InetSocketAddress toAddress(byte[] address, int port) {
+        try {
+            return new InetSocketAddress(InetAddress.getByAddress(address), port);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static class Message {
+        public final long timestamp;
+        public final InetSocketAddress source;
+        public final InetSocketAddress destination;
+        public final int streamNumber;
+        public final int payloadProtocolId;
+        public final byte[] payload;
+
+        public Message(long timestamp, InetSocketAddress source, InetSocketAddress destination, int streamNumber,
+                       int payloadProtocolId, byte[] payload) {
+            this.timestamp = timestamp;
+            this.source = source;
+            this.destination = destination;
+            this.streamNumber = streamNumber;
+            this.payloadProtocolId = payloadProtocolId;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package tr.havelsan.ueransim.sctp;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes SCTP user messages to pcap files, framed as IPv4 packets carrying a single SCTP DATA chunk so that
+ * Wireshark dissects the payload by its PPID. Records are queued by the callers and written into memory-mapped
+ * segment files by a background thread. When a segment is full a new one is started, and the oldest segments
+ * are deleted if a segment limit is set.
+ */
+public class PcapWriter implements AutoCloseable {
+    private static final int PCAP_MAGIC = 0xa1b2c3d4;
+    private static final int LINKTYPE_IPV4 = 228;
+    private static final int SNAP_LENGTH = 65535;
+
+    private static final int PCAP_HEADER_SIZE = 24;
+    private static final int RECORD_HEADER_SIZE = 16;
+    private static final int IP_HEADER_SIZE = 20;
+    private static final int SCTP_HEADER_SIZE = 12;
+    private static final int DATA_CHUNK_HEADER_SIZE = 16;
+    private static final int FRAMING_SIZE = IP_HEADER_SIZE + SCTP_HEADER_SIZE + DATA_CHUNK_HEADER_SIZE;
+
+    private static final int QUEUE_CAPACITY = 65536;
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final Path directory;
+    private final String baseName;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final int payloadProtocolId;
+
+    private final byte[] localAddress;
+    private final int localPort;
+    private final byte[] remoteAddress;
+    private final int remotePort;
+
+    private final BlockingQueue<Record> queue;
+    private final AtomicLong droppedRecords;
+    private final Thread thread;
+    private volatile boolean running;
+
+    // writer thread only
+    private final ArrayDeque<Path> segments;
+    private final CRC32C crc;
+    private final int[] tsn;
+    private final short[][] ssn;
+    private int segmentIndex;
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+
+    /**
+     * @param segmentSize maximum size of one pcap file in bytes, which must hold the pcap header and a record of
+     *                    the snapshot length.
+     * @param maxSegments number of most recent segments kept on disk, or 0 to keep all of them.
+     * @param local       address written as the source of the sent messages. Non-IPv4 addresses are written
+     *                    as 0.0.0.0.
+     * @param remote      address written as the destination of the sent messages.
+     */
+    public PcapWriter(Path directory, String baseName, int segmentSize, int maxSegments, int payloadProtocolId,
+                      InetSocketAddress local, InetSocketAddress remote) throws IOException {
+        // longer packets are dropped, so that every record fits into a new segment
+        if (segmentSize < PCAP_HEADER_SIZE + RECORD_HEADER_SIZE + SNAP_LENGTH)
+            throw new IllegalArgumentException("segmentSize is too small, minimum is "
+                    + (PCAP_HEADER_SIZE + RECORD_HEADER_SIZE + SNAP_LENGTH));
+
+        this.directory = Files.createDirectories(directory);
+        this.baseName = baseName;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.payloadProtocolId = payloadProtocolId;
+
+        this.localAddress = ipv4Address(local);
+        this.localPort = local.getPort();
+        this.remoteAddress = ipv4Address(remote);
+        this.remotePort = remote.getPort();
+
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.droppedRecords = new AtomicLong();
+
+        this.segments = new ArrayDeque<>();
+        this.crc = new CRC32C();
+        this.tsn = new int[2];
+        this.ssn = new short[2][65536];
+
+        openSegment();
+
+        this.running = true;
+        this.thread = new Thread(this::writerLoop, "pcap-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues a message for capture. The payload array must not be modified afterwards. If the writer cannot
+     * keep up the record is dropped rather than blocking the caller.
+     */
+    public void capture(boolean outgoing, int streamNumber, byte[] payload) {
+        var now = Instant.now();
+        var record = new Record(now.getEpochSecond(), now.getNano() / 1000, outgoing, streamNumber, payload);
+        if (!running || !queue.offer(record)) {
+            droppedRecords.incrementAndGet();
+        }
+    }
+
+    /**
+     * Queues a copy of the remaining bytes of the buffer for capture, without changing its position.
+     */
+    public void capture(boolean outgoing, int streamNumber, ByteBuffer payload) {
+        var copy = new byte[payload.remaining()];
+        payload.duplicate().get(copy);
+        capture(outgoing, streamNumber, copy);
+    }
+
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    /**
+     * Writes the queued records, and closes the current segment.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writerLoop() {
+        var batch = new ArrayList<Record>();
+        try {
+            while (running || !queue.isEmpty()) {
+                var first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+
+                batch.add(first);
+                queue.drainTo(batch);
+                for (var record : batch) {
+                    write(record);
+                }
+                batch.clear();
+            }
+            closeSegment();
+        } catch (IOException | InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void write(Record record) throws IOException {
+        int paddedLength = (record.payload.length + 3) & ~3;
+        int packetLength = FRAMING_SIZE + paddedLength;
+        if (packetLength > SNAP_LENGTH) {
+            droppedRecords.incrementAndGet();
+            return;
+        }
+        if (segment.remaining() < RECORD_HEADER_SIZE + packetLength) {
+            closeSegment();
+            openSegment();
+        }
+
+        int direction = record.outgoing ? 0 : 1;
+        int streamSequence = ssn[direction][record.streamNumber & 0xFFFF]++ & 0xFFFF;
+        int transmissionSequence = tsn[direction]++;
+
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt((int) record.seconds);
+        segment.putInt(record.micros);
+        segment.putInt(packetLength);
+        segment.putInt(packetLength);
+
+        segment.order(ByteOrder.BIG_ENDIAN);
+        int ipStart = segment.position();
+        segment.put((byte) 0x45);
+        segment.put((byte) 0);
+        segment.putShort((short) packetLength);
+        segment.putInt(0);
+        segment.put((byte) 64);
+        segment.put((byte) 132);
+        segment.putShort((short) 0);
+        segment.put(record.outgoing ? localAddress : remoteAddress);
+        segment.put(record.outgoing ? remoteAddress : localAddress);
+        segment.putShort(ipStart + 10, ipChecksum(ipStart));
+
+        int sctpStart = segment.position();
+        segment.putShort((short) (record.outgoing ? localPort : remotePort));
+        segment.putShort((short) (record.outgoing ? remotePort : localPort));
+        segment.putInt(0);
+        segment.putInt(0);
+
+        segment.put((byte) 0);
+        segment.put((byte) 0x03);
+        segment.putShort((short) (DATA_CHUNK_HEADER_SIZE + record.payload.length));
+        segment.putInt(transmissionSequence);
+        segment.putShort((short) record.streamNumber);
+        segment.putShort((short) streamSequence);
+        segment.putInt(payloadProtocolId);
+        segment.put(record.payload);
+        for (int i = record.payload.length; i < paddedLength; i++) {
+            segment.put((byte) 0);
+        }
+
+        // The CRC32c is stored in little-endian order, unlike the rest of the SCTP header
+        int end = segment.position();
+        crc.reset();
+        crc.update(segment.duplicate().position(sctpStart).limit(end));
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt(sctpStart + 8, (int) crc.getValue());
+    }
+
+    private short ipChecksum(int start) {
+        int sum = 0;
+        for (int i = 0; i < IP_HEADER_SIZE; i += 2) {
+            sum += segment.getShort(start + i) & 0xFFFF;
+        }
+        while ((sum >>> 16) != 0) {
+            sum = (sum & 0xFFFF) + (sum >>> 16);
+        }
+        return (short) ~sum;
+    }
+
+    private void openSegment() throws IOException {
+        var path = directory.resolve(String.format("%s-%05d.pcap", baseName, ++segmentIndex));
+        segmentChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+
+        segments.add(path);
+        while (maxSegments > 0 && segments.size() > maxSegments) {
+            Files.deleteIfExists(segments.remove());
+        }
+
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt(PCAP_MAGIC);
+        segment.putShort((short) 2);
+        segment.putShort((short) 4);
+        segment.putInt(0);
+        segment.putInt(0);
+        segment.putInt(SNAP_LENGTH);
+        segment.putInt(LINKTYPE_IPV4);
+    }
+
+    private void closeSegment() throws IOException {
+        int size = segment.position();
+        segment.force();
+        segment = null;
+        segmentChannel.truncate(size);
+        segmentChannel.close();
+    }
+
+    private static byte[] ipv4Address(InetSocketAddress address) {
+        var inetAddress = address.getAddress();
+        return inetAddress instanceof Inet4Address ? inetAddress.getAddress() : new byte[4];
+    }
+
+    private static class Record {
+        final long seconds;
+        final int micros;
+        final boolean outgoing;
+        final int streamNumber;
+        final byte[] payload;
+
+        Record(long seconds, int micros, boolean outgoing, int streamNumber, byte[] payload) {
+            this.seconds = seconds;
+            this.micros = micros;
+            this.outgoing = outgoing;
+            this.streamNumber = streamNumber;
+            this.payload = payload;
+        }
+    }
+}
@@ -2,33 +2,71 @@ package tr.havelsan.ueransim.sctp;
 
 import com.sun.nio.sctp.MessageInfo;
 import com.sun.nio.sctp.SctpChannel;
+import com.sun.nio.sctp.SctpStandardSocketOptions;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 
+/**
+ * Sends from the calling thread and receives on the thread running {@link #receiverLoop}. The channel is
+ * non-blocking and waited on with selectors, so that {@link #abortReceiver} can wake up a waiting receiver.
+ */
 public class SCTPClient implements ISCTPClient {
-    private static final int RECEIVER_BUFFER_SIZE = 1073741824;
+    private static final int MIN_RECEIVER_BUFFER_SIZE = 65536;
 
     private final String host;
     private final int port;
     private final int protocolId;
+    private final int streamCount;
+    private final AssociationMetrics metrics;
 
     private SctpChannel channel;
     private AssociationHandler associationHandler;
-    private boolean receiving;
+    private ByteBuffer receiveBuffer;
+    private Selector readSelector;
+    private Selector writeSelector;
+    private volatile boolean receiving;
 
     public SCTPClient(String host, int port, int protocolId) {
+        this(host, port, protocolId, 0);
+    }
+
+    /**
+     * @param streamCount number of inbound and outbound streams requested for the association,
+     *                    or <code>0</code> to use the default of the endpoint.
+     */
+    public SCTPClient(String host, int port, int protocolId, int streamCount) {
         this.host = host;
         this.port = port;
         this.protocolId = protocolId;
+        this.streamCount = streamCount;
+        this.metrics = new AssociationMetrics();
     }
 
     @Override
     public void start() throws Exception {
         if (this.channel != null) throw new RuntimeException("start was already called");
         var serverAddress = new InetSocketAddress(host, port);
-        this.channel = SctpChannel.open(serverAddress, 0, 0);
-        this.associationHandler = new AssociationHandler();
+        this.channel = SctpChannel.open(serverAddress, streamCount, streamCount);
+        this.associationHandler = new AssociationHandler(metrics);
+
+        var association = channel.association();
+        if (association != null) {
+            associationHandler.setStreamCounts(association.maxOutboundStreams(), association.maxInboundStreams());
+        }
+
+        this.receiveBuffer = ByteBuffer.allocateDirect(Math.max(MIN_RECEIVER_BUFFER_SIZE,
+                channel.getOption(SctpStandardSocketOptions.SO_RCVBUF)));
+
+        channel.configureBlocking(false);
+        this.readSelector = Selector.open();
+        channel.register(readSelector, SelectionKey.OP_READ);
+        this.writeSelector = Selector.open();
+        channel.register(writeSelector, SelectionKey.OP_WRITE);
         this.receiving = true;
     }
 
@@ -37,24 +75,76 @@ public class SCTPClient implements ISCTPClient {
         ByteBuffer outgoingBuffer = ByteBuffer.wrap(data);
         MessageInfo outgoingMessage = MessageInfo.createOutgoing(null, streamNumber);
         outgoingMessage.payloadProtocolID(protocolId);
-        channel.send(outgoingBuffer, outgoingMessage);
+
+        long sendStart = System.nanoTime();
+        // A non-blocking send either writes the whole message or nothing
+        while (channel.send(outgoingBuffer, outgoingMessage) == 0) {
+            synchronized (writeSelector) {
+                writeSelector.select();
+                writeSelector.selectedKeys().clear();
+            }
+        }
+        metrics.messageSent(streamNumber, data.length, System.nanoTime() - sendStart);
     }
 
     @Override
-    public void receiverLoop(ISCTPHandler handler) throws Exception {
+    public void receiverLoop(ISCTPBufferHandler handler) throws Exception {
         receiving = true;
 
         MessageInfo messageInfo;
         while (receiving && channel.isOpen()) {
-            ByteBuffer incomingBuffer = ByteBuffer.allocate(RECEIVER_BUFFER_SIZE);
-            messageInfo = channel.receive(incomingBuffer, System.out, associationHandler);
-            if (messageInfo == null || messageInfo.bytes() == -1) break;
+            receiveBuffer.clear();
+            messageInfo = receiveMessage();
+            if (messageInfo == null) break;
+
+            receiveBuffer.flip();
+            metrics.messageReceived(messageInfo.streamNumber(), receiveBuffer.remaining());
+            handler.handleSCTPMessage(receiveBuffer.asReadOnlyBuffer(), messageInfo, channel);
+        }
+    }
 
-            byte[] receivedBytes = new byte[messageInfo.bytes()];
-            for (int i = 0; i < receivedBytes.length; i++) {
-                receivedBytes[i] = incomingBuffer.get(i);
+    /**
+     * Receives a whole message into the receive buffer. If the message is delivered partially, the remaining
+     * parts are appended to the buffer, and the buffer is grown if needed. Returns <code>null</code> if the
+     * association is shut down or closed, or the receiver is aborted before a message starts.
+     */
+    private MessageInfo receiveMessage() throws IOException {
+        while (true) {
+            var messageInfo = channel.receive(receiveBuffer, System.out, associationHandler);
+            if (messageInfo == null) {
+                if (associationHandler.isShutdown()) return null;
+                // a partially received message is completed even if the receiver is aborted meanwhile
+                if (!awaitReadable(receiveBuffer.position() == 0)) return null;
+                continue;
+            }
+            if (messageInfo.bytes() == -1) return null;
+            if (messageInfo.isComplete()) return messageInfo;
+
+            if (!receiveBuffer.hasRemaining()) {
+                var grown = ByteBuffer.allocateDirect(receiveBuffer.capacity() * 2);
+                receiveBuffer.flip();
+                grown.put(receiveBuffer);
+                receiveBuffer = grown;
             }
-            handler.handleSCTPMessage(receivedBytes, messageInfo, channel);
+        }
+    }
+
+    /**
+     * Waits until the channel is readable. Returns false if the channel is closed, or if the receiver is aborted
+     * and abortable is set.
+     */
+    private boolean awaitReadable(boolean abortable) throws IOException {
+        try {
+            while (true) {
+                if ((abortable && !receiving) || !channel.isOpen()) return false;
+                if (readSelector.select() > 0) {
+                    readSelector.selectedKeys().clear();
+                    return true;
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // closed meanwhile
+            return false;
         }
     }
 
@@ -62,6 +152,8 @@ public class SCTPClient implements ISCTPClient {
     public void close() {
         try {
             channel.close();
+            readSelector.close();
+            writeSelector.close();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -70,10 +162,28 @@ public class SCTPClient implements ISCTPClient {
     @Override
     public void abortReceiver() {
         receiving = false;
+        if (readSelector != null) {
+            readSelector.wakeup();
+        }
     }
 
     @Override
     public boolean isOpen() {
         return channel.isOpen();
     }
+
+    @Override
+    public int getOutboundStreams() {
+        return associationHandler.getOutboundStreams();
+    }
+
+    @Override
+    public int getInboundStreams() {
+        return associationHandler.getInboundStreams();
+    }
+
+    @Override
+    public AssociationStats getStats() {
+        return metrics.snapshot(channel, null);
+    }
 }
@@ -0,0 +1,99 @@
+package tr.havelsan.ueransim.sctp;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of I/O threads, each multiplexing many non-blocking SCTP associations over one selector.
+ * Associations are assigned to the threads in round-robin order when they are registered.
+ */
+public class SCTPEventLoop {
+    private final IOThread[] threads;
+    private final AtomicInteger nextThread;
+
+    public SCTPEventLoop(int threadCount) throws IOException {
+        if (threadCount < 1) throw new IllegalArgumentException("threadCount must be positive");
+
+        this.threads = new IOThread[threadCount];
+        this.nextThread = new AtomicInteger();
+
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new IOThread(Selector.open(), "sctp-io-" + i);
+            threads[i].start();
+        }
+    }
+
+    IOThread register(NioSCTPClient client) {
+        var thread = threads[Math.floorMod(nextThread.getAndIncrement(), threads.length)];
+        thread.execute(() -> client.registered(thread.selector));
+        return thread;
+    }
+
+    public void close() {
+        for (var thread : threads) {
+            thread.shutdown();
+        }
+    }
+
+    static class IOThread extends Thread {
+        private final Selector selector;
+        private final Queue<Runnable> tasks;
+        private volatile boolean running;
+
+        IOThread(Selector selector, String name) {
+            super(name);
+            this.selector = selector;
+            this.tasks = new ConcurrentLinkedQueue<>();
+            this.running = true;
+            setDaemon(true);
+        }
+
+        /**
+         * Runs the task on this I/O thread. Selection keys must only be modified through this method.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+
+                    var selectedKeys = selector.selectedKeys();
+                    for (var key : selectedKeys) {
+                        if (key.isValid()) {
+                            ((NioSCTPClient) key.attachment()).ready(key);
+                        }
+                    }
+                    selectedKeys.clear();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                for (var key : selector.keys()) {
+                    ((NioSCTPClient) key.attachment()).close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
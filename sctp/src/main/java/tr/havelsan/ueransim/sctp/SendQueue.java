@@ -0,0 +1,140 @@
+package tr.havelsan.ueransim.sctp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free multi-producer single-consumer queue of outgoing messages for one association. Producers are the
+ * flow threads, the consumer is the I/O thread of the association. Producers are blocked while the queue depth
+ * is at or above the high-water mark.
+ */
+class SendQueue {
+    private final int highWaterMark;
+
+    private final AtomicReference<Entry> head;
+    private Entry tail;
+
+    private final AtomicInteger depth;
+    private final AtomicInteger maxDepth;
+    private final AtomicLong blockedSends;
+    private final Object notFull;
+    private volatile int waitingProducers;
+    private volatile boolean closed;
+
+    // written by the consumer only
+    private volatile long drainBatches;
+    private volatile long drainedMessages;
+    private volatile int lastDrainBatch;
+    private volatile int maxDrainBatch;
+
+    SendQueue(int highWaterMark) {
+        if (highWaterMark < 1) throw new IllegalArgumentException("highWaterMark must be positive");
+
+        this.highWaterMark = highWaterMark;
+        this.tail = new Entry(0, null);
+        this.head = new AtomicReference<>(tail);
+        this.depth = new AtomicInteger();
+        this.maxDepth = new AtomicInteger();
+        this.blockedSends = new AtomicLong();
+        this.notFull = new Object();
+    }
+
+    /**
+     * Blocks the calling producer until the queue depth is below the high-water mark, or the queue is closed.
+     */
+    void awaitCapacity() throws InterruptedException {
+        if (depth.get() < highWaterMark || closed)
+            return;
+
+        blockedSends.incrementAndGet();
+        synchronized (notFull) {
+            waitingProducers++;
+            try {
+                while (depth.get() >= highWaterMark && !closed) {
+                    notFull.wait();
+                }
+            } finally {
+                waitingProducers--;
+            }
+        }
+    }
+
+    /**
+     * Appends a message. Returns true if the queue was empty, i.e. the consumer has to be notified.
+     */
+    boolean offer(int streamNumber, byte[] data) {
+        var entry = new Entry(streamNumber, data);
+        head.getAndSet(entry).next = entry;
+
+        int newDepth = depth.incrementAndGet();
+        maxDepth.accumulateAndGet(newDepth, Math::max);
+        return newDepth == 1;
+    }
+
+    /**
+     * Returns the oldest message without removing it, or null if the queue is empty. Consumer only.
+     */
+    Entry peek() {
+        return tail.next;
+    }
+
+    /**
+     * Removes the message returned by the last {@link #peek()}. Consumer only.
+     */
+    void remove() {
+        var next = tail.next;
+        if (next == null) return;
+        next.data = null;
+        tail = next;
+
+        if (depth.decrementAndGet() < highWaterMark && waitingProducers > 0) {
+            synchronized (notFull) {
+                notFull.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Records the number of messages written in one drain pass of the consumer.
+     */
+    void drained(int batchSize) {
+        if (batchSize == 0) return;
+        drainBatches++;
+        drainedMessages += batchSize;
+        lastDrainBatch = batchSize;
+        if (batchSize > maxDrainBatch) maxDrainBatch = batchSize;
+    }
+
+    /**
+     * Releases the blocked producers. Called when the association is closed.
+     */
+    void close() {
+        closed = true;
+        synchronized (notFull) {
+            notFull.notifyAll();
+        }
+    }
+
+    boolean isEmpty() {
+        return depth.get() == 0;
+    }
+
+    SendQueueStats stats() {
+        return new SendQueueStats(depth.get(), maxDepth.get(), highWaterMark, blockedSends.get(),
+                drainBatches, drainedMessages, lastDrainBatch, maxDrainBatch);
+    }
+
+    static class Entry {
+        final int streamNumber;
+        final long enqueueTime;
+        byte[] data;
+        volatile Entry next;
+
+        Entry(int streamNumber, byte[] data) {
+            this.streamNumber = streamNumber;
+            this.enqueueTime = System.nanoTime();
+            this.data = data;
+        }
+    }
+}
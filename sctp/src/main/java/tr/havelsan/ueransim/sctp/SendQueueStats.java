@@ -0,0 +1,41 @@
+package tr.havelsan.ueransim.sctp;
+
+/**
+ * Snapshot of the outbound queue of an association. A queue that stays near the high-water mark with full drain
+ * batches means the peer (or the network) is the bottleneck; a queue that is mostly empty with single-message
+ * batches means the simulator is.
+ */
+public class SendQueueStats {
+    public final int depth;
+    public final int maxDepth;
+    public final int highWaterMark;
+    public final long blockedSends;
+    public final long drainBatches;
+    public final long drainedMessages;
+    public final int lastDrainBatch;
+    public final int maxDrainBatch;
+
+    public SendQueueStats(int depth, int maxDepth, int highWaterMark, long blockedSends, long drainBatches,
+                          long drainedMessages, int lastDrainBatch, int maxDrainBatch) {
+        this.depth = depth;
+        this.maxDepth = maxDepth;
+        this.highWaterMark = highWaterMark;
+        this.blockedSends = blockedSends;
+        this.drainBatches = drainBatches;
+        this.drainedMessages = drainedMessages;
+        this.lastDrainBatch = lastDrainBatch;
+        this.maxDrainBatch = maxDrainBatch;
+    }
+
+    public double averageDrainBatch() {
+        return drainBatches == 0 ? 0 : (double) drainedMessages / drainBatches;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("depth=%d maxDepth=%d highWaterMark=%d blockedSends=%d drainBatches=%d " +
+                        "drainedMessages=%d avgDrainBatch=%.2f maxDrainBatch=%d",
+                depth, maxDepth, highWaterMark, blockedSends, drainBatches, drainedMessages,
+                averageDrainBatch(), maxDrainBatch);
+    }
+}
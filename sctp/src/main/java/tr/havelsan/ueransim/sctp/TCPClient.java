@@ -0,0 +1,132 @@
+package tr.havelsan.ueransim.sctp;
+
+import com.sun.nio.sctp.MessageInfo;
+
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Carries the messages over a TCP connection with the framing of {@link TCPFraming}, for hosts without kernel
+ * SCTP support. The peer must speak the same framing, e.g. a {@link TCPServer}. Received messages are passed to
+ * the handler with a {@link MessageInfo} holding the stream number and the PPID, and a null channel.
+ * <p>
+ * The channel is non-blocking and waited on with selectors, so that {@link #abortReceiver} can wake up a waiting
+ * receiver.
+ */
+public class TCPClient implements ISCTPClient {
+    private final String host;
+    private final int port;
+    private final int protocolId;
+    private final int streamCount;
+    private final AssociationMetrics metrics;
+
+    private SocketChannel channel;
+    private ByteBuffer sendHeader;
+    private Selector readSelector;
+    private Selector writeSelector;
+    private TCPFraming.FrameReader frameReader;
+    private volatile boolean receiving;
+
+    /**
+     * @param streamCount number of streams reported to the flows, since TCP itself has none.
+     */
+    public TCPClient(String host, int port, int protocolId, int streamCount) {
+        this.host = host;
+        this.port = port;
+        this.protocolId = protocolId;
+        this.streamCount = Math.max(1, streamCount);
+        this.metrics = new AssociationMetrics();
+    }
+
+    @Override
+    public void start() throws Exception {
+        if (this.channel != null) throw new RuntimeException("start was already called");
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.channel.configureBlocking(false);
+        this.readSelector = Selector.open();
+        this.channel.register(readSelector, SelectionKey.OP_READ);
+        this.writeSelector = Selector.open();
+        this.channel.register(writeSelector, SelectionKey.OP_WRITE);
+        this.sendHeader = TCPFraming.allocateHeader();
+        this.frameReader = new TCPFraming.FrameReader(readSelector);
+        this.metrics.ensureStreams(streamCount);
+        this.metrics.event("CONNECTED");
+    }
+
+    @Override
+    public synchronized void send(int streamNumber, byte[] data) throws Exception {
+        long sendStart = System.nanoTime();
+        TCPFraming.write(channel, sendHeader, streamNumber, protocolId, ByteBuffer.wrap(data), writeSelector);
+        metrics.messageSent(streamNumber, data.length, System.nanoTime() - sendStart);
+    }
+
+    @Override
+    public void receiverLoop(ISCTPBufferHandler handler) throws Exception {
+        receiving = true;
+
+        TCPFraming.FrameHandler frameHandler = (streamNumber, payloadProtocolId, payload) -> {
+            metrics.messageReceived(streamNumber, payload.remaining());
+            var messageInfo = MessageInfo.createOutgoing(null, streamNumber);
+            messageInfo.payloadProtocolID(payloadProtocolId);
+            handler.handleSCTPMessage(payload.asReadOnlyBuffer(), messageInfo, null);
+        };
+
+        BooleanSupplier isReceiving = () -> receiving;
+        try {
+            while (receiving && channel.isOpen()) {
+                if (!frameReader.read(channel, frameHandler, isReceiving)) {
+                    metrics.event("PEER_CLOSED");
+                    break;
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // closed meanwhile
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+            readSelector.close();
+            writeSelector.close();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void abortReceiver() {
+        receiving = false;
+        if (readSelector != null) {
+            readSelector.wakeup();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel != null && channel.isOpen();
+    }
+
+    @Override
+    public int getOutboundStreams() {
+        return streamCount;
+    }
+
+    @Override
+    public int getInboundStreams() {
+        return streamCount;
+    }
+
+    @Override
+    public AssociationStats getStats() {
+        return metrics.snapshot(null, null);
+    }
+}
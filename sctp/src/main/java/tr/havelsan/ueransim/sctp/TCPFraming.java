@@ -0,0 +1,144 @@
+package tr.havelsan.ueransim.sctp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Message framing of the TCP transport. Every message is preceded by a 10 octet header holding the payload
+ * length (4 octets), the stream number (2 octets) and the PPID (4 octets), all in network byte order.
+ */
+class TCPFraming {
+    static final int HEADER_SIZE = 10;
+    private static final int MIN_READ_BUFFER_SIZE = 65536;
+
+    /**
+     * Writes the header and the payload with gathering writes. The header buffer is reused by the caller.
+     */
+    static void write(SocketChannel channel, ByteBuffer header, int streamNumber, int payloadProtocolId,
+                      ByteBuffer payload) throws IOException {
+        write(channel, header, streamNumber, payloadProtocolId, payload, null);
+    }
+
+    /**
+     * Same as {@link #write(SocketChannel, ByteBuffer, int, int, ByteBuffer)}, for a non-blocking channel
+     * registered to the selector for writing. The selector is waited on while the channel cannot be written.
+     */
+    static void write(SocketChannel channel, ByteBuffer header, int streamNumber, int payloadProtocolId,
+                      ByteBuffer payload, Selector writeSelector) throws IOException {
+        header.clear();
+        header.putInt(payload.remaining());
+        header.putShort((short) streamNumber);
+        header.putInt(payloadProtocolId);
+        header.flip();
+
+        var buffers = new ByteBuffer[]{header, payload};
+        while (header.hasRemaining() || payload.hasRemaining()) {
+            if (channel.write(buffers) == 0 && writeSelector != null) {
+                writeSelector.select();
+                writeSelector.selectedKeys().clear();
+            }
+        }
+    }
+
+    static ByteBuffer allocateHeader() {
+        return ByteBuffer.allocateDirect(HEADER_SIZE);
+    }
+
+    interface FrameHandler {
+        void handleFrame(int streamNumber, int payloadProtocolId, ByteBuffer payload) throws Exception;
+    }
+
+    /**
+     * Reads frames from a blocking channel into a reused direct buffer. Payloads are passed to the handler as
+     * views of the buffer, which are only valid during the call.
+     */
+    static class FrameReader {
+        private final Selector readSelector;
+        private ByteBuffer buffer;
+
+        FrameReader() {
+            this(null);
+        }
+
+        /**
+         * @param readSelector selector which a non-blocking channel is registered to for reading, or
+         *                     <code>null</code> for a blocking channel.
+         */
+        FrameReader(Selector readSelector) {
+            this.readSelector = readSelector;
+            this.buffer = ByteBuffer.allocateDirect(MIN_READ_BUFFER_SIZE);
+        }
+
+        /**
+         * Reads once from the channel and passes every complete frame to the handler. Returns false at the end
+         * of the stream.
+         */
+        boolean read(SocketChannel channel, FrameHandler handler) throws Exception {
+            return read(channel, handler, () -> true);
+        }
+
+        /**
+         * Same as {@link #read(SocketChannel, FrameHandler)}, but the frames are only passed while
+         * <code>receiving</code> holds. Frames left in the buffer are passed by the next call before reading from
+         * the channel, which may have nothing more to send. For a non-blocking channel, the call returns without
+         * passing frames if there was nothing to read and the selector is woken up.
+         */
+        boolean read(SocketChannel channel, FrameHandler handler, BooleanSupplier receiving) throws Exception {
+            dispatch(handler, receiving);
+            if (!receiving.getAsBoolean())
+                return true;
+
+            int count = channel.read(buffer);
+            if (count < 0)
+                return false;
+            if (count == 0 && readSelector != null) {
+                readSelector.select();
+                readSelector.selectedKeys().clear();
+                return true;
+            }
+            dispatch(handler, receiving);
+            return true;
+        }
+
+        /**
+         * Passes the complete frames in the buffer to the handler, until the receiver is aborted.
+         */
+        private void dispatch(FrameHandler handler, BooleanSupplier receiving) throws Exception {
+            buffer.flip();
+            while (buffer.remaining() >= HEADER_SIZE) {
+                int start = buffer.position();
+                int length = buffer.getInt(start);
+                if (length < 0)
+                    throw new IOException("invalid frame length: " + length);
+                if (buffer.remaining() < HEADER_SIZE + length) {
+                    if (HEADER_SIZE + length > buffer.capacity()) {
+                        grow(HEADER_SIZE + length);
+                        return;
+                    }
+                    break;
+                }
+                if (!receiving.getAsBoolean())
+                    break;
+
+                int streamNumber = buffer.getShort(start + 4) & 0xFFFF;
+                int payloadProtocolId = buffer.getInt(start + 6);
+
+                var payload = buffer.duplicate();
+                payload.position(start + HEADER_SIZE).limit(start + HEADER_SIZE + length);
+                buffer.position(start + HEADER_SIZE + length);
+
+                handler.handleFrame(streamNumber, payloadProtocolId, payload.slice());
+            }
+            buffer.compact();
+        }
+
+        private void grow(int required) {
+            var grown = ByteBuffer.allocateDirect(Math.max(required, buffer.capacity() * 2));
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package tr.havelsan.ueransim.sctp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Accepts {@link TCPClient} connections, so that a peer in the same process or on the same host can stand in for
+ * the AMF. Every connection is served by its own thread.
+ */
+public class TCPServer implements AutoCloseable {
+    private final ServerSocketChannel serverChannel;
+    private final IMessageHandler handler;
+    private final Thread acceptThread;
+
+    public TCPServer(InetSocketAddress address, IMessageHandler handler) throws IOException {
+        this.serverChannel = ServerSocketChannel.open().bind(address);
+        this.handler = handler;
+        this.acceptThread = new Thread(this::acceptLoop, "tcp-server");
+        this.acceptThread.setDaemon(true);
+        this.acceptThread.start();
+    }
+
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverChannel.close();
+    }
+
+    private void acceptLoop() {
+        while (serverChannel.isOpen()) {
+            try {
+                var channel = serverChannel.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                var connection = new Connection(channel);
+                var thread = new Thread(connection::receiveLoop, "tcp-server-connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (serverChannel.isOpen()) throw new RuntimeException(e);
+            }
+        }
+    }
+
+    public class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer sendHeader;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.sendHeader = TCPFraming.allocateHeader();
+        }
+
+        public synchronized void send(int streamNumber, int payloadProtocolId, byte[] data) throws IOException {
+            TCPFraming.write(channel, sendHeader, streamNumber, payloadProtocolId, ByteBuffer.wrap(data));
+        }
+
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private void receiveLoop() {
+            var reader = new TCPFraming.FrameReader();
+            TCPFraming.FrameHandler frameHandler = (streamNumber, payloadProtocolId, payload) ->
+                    handler.handleMessage(streamNumber, payloadProtocolId, payload, this);
+            try (channel) {
+                while (reader.read(channel, frameHandler)) {
+                    // frames are dispatched by the reader
+                }
+            } catch (Exception e) {
+                if (channel.isOpen()) throw new RuntimeException(e);
+            }
+        }
+    }
+
+    public interface IMessageHandler {
+        /**
+         * Handles one received message. The payload is only valid during the call.
+         */
+        void handleMessage(int streamNumber, int payloadProtocolId, ByteBuffer payload, Connection connection)
+                throws Exception;
+    }
+}
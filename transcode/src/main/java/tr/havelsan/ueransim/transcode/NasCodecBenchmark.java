@@ -0,0 +1,526 @@
+package tr.havelsan.ueransim.transcode;
+
+import tr.havelsan.ueransim.core.Constants;
+import tr.havelsan.ueransim.core.exceptions.EncodingException;
+import tr.havelsan.ueransim.core.exceptions.IncorrectImplementationException;
+import tr.havelsan.ueransim.nas.NasEncoder;
+import tr.havelsan.ueransim.nas.core.IMessageBuilder;
+import tr.havelsan.ueransim.nas.core.ies.*;
+import tr.havelsan.ueransim.nas.core.messages.NasMessage;
+import tr.havelsan.ueransim.nas.core.messages.PlainMmMessage;
+import tr.havelsan.ueransim.nas.core.messages.PlainSmMessage;
+import tr.havelsan.ueransim.nas.impl.ies.IEEapMessage;
+import tr.havelsan.ueransim.utils.ClassIndex;
+import tr.havelsan.ueransim.utils.OctetInputStream;
+import tr.havelsan.ueransim.utils.OctetOutputStream;
+import tr.havelsan.ueransim.utils.Utils;
+import tr.havelsan.ueransim.utils.bits.Bit4;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ * Compares the cached codec plans of the NAS messages with the reflective codec they replaced, which rebuilt the
+ * message layout and looked up every field and constructor on each call. For every message in the NAS type index,
+ * a sample having all of its information elements which can be sampled is encoded and decoded by both codecs. The
+ * codecs must produce the same octets, after which both are timed.
+ * <p>
+ * Usage: [-n iterations] [-w warmupIterations]
+ */
+public class NasCodecBenchmark {
+    private static final String MESSAGES_PACKAGE = "tr.havelsan.ueransim.nas.impl.messages.";
+
+    // encoded samples of the information elements which cannot be found by decoding repeated octets
+    private static final Map<Class<?>, String> KNOWN_SAMPLES = Map.of(
+            IEEapMessage.class, "00080101000832010000" // EAP-AKA' challenge without attributes
+    );
+
+    public static void main(String[] args) throws Exception {
+        int iterations = Integer.parseInt(option(args, "-n", "20000"));
+        int warmup = Integer.parseInt(option(args, "-w", "20000"));
+
+        var samples = new ArrayList<NasMessage>();
+        for (var fields : ClassIndex.read(Constants.NAS_TYPE_INDEX)) {
+            if (fields[0].startsWith(MESSAGES_PACKAGE) && fields[0].indexOf('$') == -1) {
+                var type = ClassIndex.loadClass(fields[0]);
+                samples.add(createSample(type.asSubclass(NasMessage.class)));
+            }
+        }
+        if (samples.isEmpty()) {
+            System.err.println("No NAS messages found in " + Constants.NAS_TYPE_INDEX);
+            System.exit(1);
+        }
+
+        for (var sample : samples) {
+            verify(sample);
+        }
+        System.out.println(samples.size() + " messages encoded and decoded identically by both codecs");
+
+        for (var sample : samples) {
+            benchmark(sample, warmup);
+        }
+
+        System.out.printf("%-40s %6s %12s %12s %12s %12s %8s%n", "Message", "Octets", "Enc Old ns",
+                "Enc New ns", "Dec Old ns", "Dec New ns", "Speedup");
+        double totalOld = 0, totalNew = 0;
+        for (var sample : samples) {
+            var result = benchmark(sample, iterations);
+            totalOld += result[0] + result[2];
+            totalNew += result[1] + result[3];
+            System.out.printf("%-40s %6d %12.0f %12.0f %12.0f %12.0f %7.1fx%n", sample.getClass().getSimpleName(),
+                    NasEncoder.nasPdu(sample).length, result[0], result[1], result[2], result[3],
+                    (result[0] + result[2]) / (result[1] + result[3]));
+        }
+        System.out.printf("Total encode+decode of all messages: old %.1f us, new %.1f us, %.1fx%n",
+                totalOld / 1000, totalNew / 1000, totalOld / totalNew);
+    }
+
+    /**
+     * Returns the average nanoseconds of old encoding, new encoding, old decoding and new decoding of the message.
+     */
+    private static double[] benchmark(NasMessage message, int iterations) {
+        var encoded = NasEncoder.nasPdu(message);
+        var body = Arrays.copyOfRange(encoded, headerLength(message), encoded.length);
+        var prototype = LegacyCodec.newInstance(message.getClass());
+
+        var result = new double[4];
+        long check = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            var stream = new OctetOutputStream();
+            LegacyCodec.encodeMessage(message, stream);
+            check += stream.length();
+        }
+        result[0] = (double) (System.nanoTime() - start) / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            var stream = new OctetOutputStream();
+            message.encodeMessage(stream);
+            check += stream.length();
+        }
+        result[1] = (double) (System.nanoTime() - start) / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            check += LegacyCodec.decode(prototype, new OctetInputStream(body)).hashCode();
+        }
+        result[2] = (double) (System.nanoTime() - start) / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            check += decode(prototype, new OctetInputStream(body)).hashCode();
+        }
+        result[3] = (double) (System.nanoTime() - start) / iterations;
+
+        if (check == 42)
+            System.out.print("");
+        return result;
+    }
+
+    private static void verify(NasMessage message) {
+        var name = message.getClass().getSimpleName();
+        var encoded = NasEncoder.nasPdu(message);
+
+        var stream = new OctetOutputStream();
+        LegacyCodec.encodeMessage(message, stream);
+        if (!Arrays.equals(encoded, stream.toByteArray()))
+            throw new RuntimeException(name + " is encoded differently");
+
+        var body = Arrays.copyOfRange(encoded, headerLength(message), encoded.length);
+        var prototype = LegacyCodec.newInstance(message.getClass());
+        if (!Arrays.equals(encoded, NasEncoder.nasPdu(decode(prototype, new OctetInputStream(body)))))
+            throw new RuntimeException(name + " is not decoded to the same message");
+        if (!Arrays.equals(encoded, NasEncoder.nasPdu(LegacyCodec.decode(prototype, new OctetInputStream(body)))))
+            throw new RuntimeException(name + " is not decoded to the same message by the old codec");
+    }
+
+    private static NasMessage decode(NasMessage prototype, OctetInputStream body) {
+        if (prototype instanceof PlainMmMessage)
+            return ((PlainMmMessage) prototype).decodeMessage(body);
+        return ((PlainSmMessage) prototype).decodeMessage(body);
+    }
+
+    private static int headerLength(NasMessage message) {
+        return message instanceof PlainMmMessage ? 3 : 4;
+    }
+
+    //======================================================================================================
+    //                                           SAMPLES
+    //======================================================================================================
+
+    /**
+     * Creates a message with every information element which a sample could be found for. Mandatory ones must
+     * have a sample, optional ones are left out if the message does not survive a round trip with them.
+     */
+    private static NasMessage createSample(Class<? extends NasMessage> type) throws Exception {
+        var message = LegacyCodec.newInstance(type);
+        var layout = new LegacyCodec.Layout();
+        message.build(layout);
+
+        for (var entry : layout.mandatory) {
+            for (var name : new String[]{entry.field0, entry.field1}) {
+                if (name == null)
+                    continue;
+                var field = type.getField(name);
+                var sample = sampleIE(field.getType());
+                if (sample == null)
+                    throw new RuntimeException("no sample for " + type.getSimpleName() + "." + name);
+                field.set(message, sample);
+            }
+        }
+
+        for (var entry : layout.optional) {
+            var field = type.getField(entry.field0);
+            var sample = sampleIE(field.getType());
+            if (sample == null)
+                continue;
+            field.set(message, sample);
+            try {
+                verify(message);
+            } catch (Exception e) {
+                field.set(message, null);
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Finds a value of the information element type by decoding candidate octets, and returns the first one which
+     * is encoded and decoded back to the same octets, or <code>null</code> if there is none.
+     */
+    private static InformationElement sampleIE(Class<?> type) {
+        if (InformationElement1.class.isAssignableFrom(type)) {
+            for (int value : new int[]{1, 0, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15}) {
+                try {
+                    var ie = ((InformationElement1) LegacyCodec.newInstance(type)).decodeIE1(new Bit4(value));
+                    if (ie.encodeIE1() == value)
+                        return ie;
+                } catch (Exception ignored) {
+                }
+            }
+            return null;
+        }
+
+        // types 2 and 3 consume a fixed number of octets, so a single long candidate is enough for them
+        boolean fixedLength = InformationElement2.class.isAssignableFrom(type)
+                || InformationElement3.class.isAssignableFrom(type);
+
+        var known = KNOWN_SAMPLES.get(type);
+        if (known != null)
+            return sampleIE(type, Utils.hexStringToByteArray(known));
+
+        for (int pattern : new int[]{0x01, 0x11, 0x00, 0x21, 0xF1, 0x10}) {
+            for (int length = fixedLength ? 16 : 1; length <= 16; length++) {
+                var octets = new OctetOutputStream();
+                if (InformationElement4.class.isAssignableFrom(type)) {
+                    octets.writeOctet(length);
+                } else if (InformationElement6.class.isAssignableFrom(type)) {
+                    octets.writeOctet2(length);
+                }
+                for (int i = 0; i < length; i++) {
+                    octets.writeOctet(pattern);
+                }
+
+                var ie = sampleIE(type, octets.toByteArray());
+                if (ie != null)
+                    return ie;
+            }
+        }
+        return null;
+    }
+
+    private static InformationElement sampleIE(Class<?> type, byte[] candidate) {
+        try {
+            var ie = ((InformationElement) LegacyCodec.newInstance(type)).decodeIE(new OctetInputStream(candidate));
+            var encoded = new OctetOutputStream();
+            NasEncoder.ie2346(encoded, ie);
+
+            var decoded = ((InformationElement) LegacyCodec.newInstance(type))
+                    .decodeIE(new OctetInputStream(encoded.toByteArray()));
+            var reencoded = new OctetOutputStream();
+            NasEncoder.ie2346(reencoded, decoded);
+
+            return Arrays.equals(encoded.toByteArray(), reencoded.toByteArray()) ? ie : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String option(String[] args, String flag, String defaultValue) {
+        String value = Utils.getCommandLineOption(args, flag);
+        return value != null ? value : defaultValue;
+    }
+
+    //======================================================================================================
+    //                                           OLD CODEC
+    //======================================================================================================
+
+    /**
+     * The reflective codec which the codec plans replaced, kept as it was for comparison.
+     */
+    private static class LegacyCodec {
+
+        static <T> T newInstance(Class<T> type) {
+            try {
+                return type.getConstructor().newInstance();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        static void encodeMessage(NasMessage message, OctetOutputStream stream) {
+            stream.writeOctet(message.extendedProtocolDiscriminator.intValue());
+            if (message instanceof PlainMmMessage) {
+                var mm = (PlainMmMessage) message;
+                stream.writeOctet(mm.securityHeaderType.intValue());
+                stream.writeOctet(mm.messageType.intValue());
+            } else {
+                var sm = (PlainSmMessage) message;
+                stream.writeOctet(sm.pduSessionId.intValue());
+                stream.writeOctet(sm.pti.intValue());
+                stream.writeOctet(sm.messageType.intValue());
+            }
+            encode(message, stream);
+        }
+
+        static NasMessage decode(NasMessage message, OctetInputStream stream) {
+            var layout = new Layout();
+            message.build(layout);
+
+            var instance = newInstance(message.getClass());
+
+            for (var ie : layout.mandatory) {
+                if (ie.isType1) {
+                    if (ie.field0 == null && ie.field1 == null)
+                        throw new EncodingException("both fields cannot be null");
+                    if (ie.field0 != null && ie.field1 != null) {
+                        var fieldInfo0 = findField(message, ie.field0);
+                        var fieldInfo1 = findField(message, ie.field1);
+
+                        int octet = stream.readOctetI();
+
+                        var value0 = ie1(octet & 0xF, fieldInfo0.getType());
+                        var value1 = ie1((octet >> 4) & 0xF, fieldInfo1.getType());
+
+                        setFieldValue(fieldInfo0, instance, value0);
+                        setFieldValue(fieldInfo1, instance, value1);
+                    } else {
+                        var fieldName = ie.field0 != null ? ie.field0 : ie.field1;
+                        var field = findField(message, fieldName);
+
+                        int octet = stream.readOctetI();
+                        int halfOctet = ie.field0 != null ? (octet & 0xF) : ((octet >> 4) & 0xF);
+
+                        setFieldValue(field, instance, ie1(halfOctet, field.getType()));
+                    }
+                } else {
+                    var field = findField(message, ie.field0);
+
+                    if (!InformationElement.class.isAssignableFrom(field.getType()))
+                        throw new IncorrectImplementationException("bad type for field: " + ie.field0);
+                    if (InformationElement1.class.isAssignableFrom(field.getType()))
+                        throw new IncorrectImplementationException("bad type for field: " + ie.field0);
+
+                    setFieldValue(field, instance, ie2346(stream, field.getType()));
+                }
+            }
+
+            while (stream.hasNext()) {
+                int iei = stream.readOctetI();
+                int msb = iei >> 4 & 0xF;
+                int lsb = iei & 0xF;
+
+                if (layout.optionalIE1.containsKey(msb)) {
+                    var entry = layout.optionalIE1.get(msb);
+                    var fieldInfo = findField(message, entry.field0);
+                    if (!InformationElement1.class.isAssignableFrom(fieldInfo.getType()))
+                        throw new IncorrectImplementationException("bad type for field: " + entry.field0);
+
+                    setFieldValue(fieldInfo, instance, ie1(lsb, fieldInfo.getType()));
+                } else {
+                    if (!layout.optionalIE.containsKey(iei))
+                        throw new IncorrectImplementationException("iei is invalid: " + iei);
+
+                    var entry = layout.optionalIE.get(iei);
+                    var fieldInfo = findField(message, entry.field0);
+                    if (InformationElement1.class.isAssignableFrom(fieldInfo.getType()))
+                        throw new IncorrectImplementationException("bad type for field: " + entry.field0);
+                    if (!InformationElement.class.isAssignableFrom(fieldInfo.getType()))
+                        throw new IncorrectImplementationException("bad type for field: " + entry.field0);
+
+                    setFieldValue(fieldInfo, instance, ie2346(stream, fieldInfo.getType()));
+                }
+            }
+
+            return instance;
+        }
+
+        static void encode(NasMessage message, OctetOutputStream stream) {
+            var layout = new Layout();
+            message.build(layout);
+
+            for (var ie : layout.mandatory) {
+                if (ie.isType1) {
+                    if (ie.field0 == null && ie.field1 == null)
+                        throw new EncodingException("both fields cannot be null");
+
+                    var fieldInfo0 = findField(message, ie.field0);
+                    var fieldInfo1 = findField(message, ie.field1);
+
+                    if (fieldInfo0 != null && !InformationElement1.class.isAssignableFrom(fieldInfo0.getType()))
+                        throw new IncorrectImplementationException("bad type for field: " + ie.field0);
+                    if (fieldInfo1 != null && !InformationElement1.class.isAssignableFrom(fieldInfo1.getType()))
+                        throw new IncorrectImplementationException("bad type for field: " + ie.field1);
+
+                    var value0 = getFieldValue(message, fieldInfo0);
+                    var value1 = getFieldValue(message, fieldInfo1);
+
+                    if (ie.field0 != null && value0 == null)
+                        throw new EncodingException("mandatory information element is null: " + ie.field0);
+                    if (ie.field1 != null && value1 == null)
+                        throw new EncodingException("mandatory information element is null: " + ie.field1);
+
+                    if (value0 == null) {
+                        if (value1 == null) {
+                            stream.writeOctet(0);
+                        } else {
+                            NasEncoder.ie1(stream, (InformationElement1) value1, new Bit4(0));
+                        }
+                    } else {
+                        if (value1 == null) {
+                            NasEncoder.ie1(stream, new Bit4(0), (InformationElement1) value0);
+                        } else {
+                            NasEncoder.ie1(stream, (InformationElement1) value1, (InformationElement1) value0);
+                        }
+                    }
+                } else {
+                    var field = findField(message, ie.field0);
+                    if (InformationElement1.class.isAssignableFrom(field.getType()))
+                        throw new IncorrectImplementationException("explicitly specify that this IE is type 1");
+
+                    Object value = getFieldValue(message, field);
+                    if (value == null)
+                        throw new EncodingException("mandatory information element is null: " + ie.field0);
+                    if (!(value instanceof InformationElement))
+                        throw new IncorrectImplementationException("bad type for field: " + ie.field0);
+
+                    NasEncoder.ie2346(stream, (InformationElement) value);
+                }
+            }
+
+            for (var ie : layout.optional) {
+                var field = findField(message, ie.field0);
+                if (ie.isType1) {
+                    if (!InformationElement1.class.isAssignableFrom(field.getType()))
+                        throw new IncorrectImplementationException("bad type for field");
+
+                    Object value = getFieldValue(message, field);
+                    if (value == null)
+                        continue;
+                    NasEncoder.ie1(stream, new Bit4(ie.iei), (InformationElement1) value);
+                } else {
+                    if (InformationElement1.class.isAssignableFrom(field.getType()))
+                        throw new IncorrectImplementationException("explicitly specify that this IE is type 1");
+
+                    Object value = getFieldValue(message, field);
+                    if (value == null)
+                        continue;
+                    if (!(value instanceof InformationElement))
+                        throw new IncorrectImplementationException("bad type for field: " + ie.field0);
+
+                    NasEncoder.ie2346(stream, ie.iei, (InformationElement) value);
+                }
+            }
+        }
+
+        static InformationElement1 ie1(int halfOctet, Class<?> type) {
+            var instance = (InformationElement1) newInstance(type);
+            return instance.decodeIE1(new Bit4(halfOctet & 0xF));
+        }
+
+        static InformationElement ie2346(OctetInputStream stream, Class<?> type) {
+            var instance = (InformationElement) newInstance(type);
+            return instance.decodeIE(stream);
+        }
+
+        static Field findField(NasMessage message, String name) {
+            if (name == null)
+                return null;
+            try {
+                return message.getClass().getField(name);
+            } catch (NoSuchFieldException e) {
+                throw new IncorrectImplementationException("public field could not found: " + name);
+            }
+        }
+
+        static Object getFieldValue(NasMessage message, Field field) {
+            if (field == null)
+                return null;
+            try {
+                return field.get(message);
+            } catch (IllegalAccessException e) {
+                throw new IncorrectImplementationException("could not access to field: " + field.getName());
+            }
+        }
+
+        static void setFieldValue(Field field, Object instance, Object value) {
+            try {
+                field.set(instance, value);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        static class Layout implements IMessageBuilder {
+            final List<Entry> mandatory = new ArrayList<>();
+            final List<Entry> optional = new ArrayList<>();
+            final Map<Integer, Entry> optionalIE1 = new HashMap<>();
+            final Map<Integer, Entry> optionalIE = new HashMap<>();
+
+            @Override
+            public void mandatoryIE(String field) {
+                mandatory.add(new Entry(false, -1, field, null));
+            }
+
+            @Override
+            public void mandatoryIE1(String field1, String field0) {
+                mandatory.add(new Entry(true, -1, field0, field1));
+            }
+
+            @Override
+            public void mandatoryIE1(String field0) {
+                mandatoryIE1(null, field0);
+            }
+
+            @Override
+            public void optionalIE(int iei, String field) {
+                var entry = new Entry(false, iei, field, null);
+                optional.add(entry);
+                optionalIE.put(iei, entry);
+            }
+
+            @Override
+            public void optionalIE1(int iei, String field) {
+                var entry = new Entry(true, iei, field, null);
+                optional.add(entry);
+                optionalIE1.put(iei, entry);
+            }
+        }
+
+        static class Entry {
+            final boolean isType1;
+            final int iei;
+            final String field0;
+            final String field1;
+
+            Entry(boolean isType1, int iei, String field0, String field1) {
+                this.isType1 = isType1;
+                this.iei = iei;
+                this.field0 = field0;
+                this.field1 = field1;
+            }
+        }
+    }
+}
@@ -3,7 +3,9 @@ package tr.havelsan.ueransim;
 import com.sun.nio.sctp.MessageInfo;
 import com.sun.nio.sctp.SctpChannel;
 import tr.havelsan.ueransim.contexts.SimulationContext;
+import tr.havelsan.ueransim.core.Constants;
 import tr.havelsan.ueransim.nas.core.messages.NasMessage;
+import tr.havelsan.ueransim.nas.core.messages.NasMessageView;
 import tr.havelsan.ueransim.ngap.ngap_ies.AMF_UE_NGAP_ID;
 import tr.havelsan.ueransim.ngap.ngap_pdu_descriptions.NGAP_PDU;
 import tr.havelsan.ueransim.ngap2.NgapBuilder;
@@ -12,12 +14,33 @@ import tr.havelsan.ueransim.ngap2.NgapInternal;
 import tr.havelsan.ueransim.utils.Color;
 import tr.havelsan.ueransim.utils.Console;
 import tr.havelsan.ueransim.utils.Json;
+import tr.havelsan.ueransim.utils.TimingWheel;
 import tr.havelsan.ueransim.utils.Utils;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 public abstract class BaseFlow {
+    private static final TimingWheel TIMING_WHEEL = createTimingWheel();
+
     private final SimulationContext simContext;
     private boolean started;
     private State currentState;
+    private long startNanos;
+    private volatile Class<?> lastSentType;
+    private volatile long lastSentNanos;
+    private final ArrayList<FlowTimer> timers;
+    private final Object receiveLock;
+    private final MessageLog.Level messageLogLevel;
+    private volatile String failureCause;
+    private volatile boolean finished;
+    private FlowEngine engine;
+    private Executor executor;
 
     //======================================================================================================
     //                                          CONSTRUCTORS
@@ -25,6 +48,9 @@ public abstract class BaseFlow {
 
     public BaseFlow(SimulationContext simContext) {
         this.simContext = simContext;
+        this.timers = new ArrayList<>();
+        this.receiveLock = new Object();
+        this.messageLogLevel = MessageLog.messageLevel(getClass(), simContext.getUeIndex());
     }
 
     //======================================================================================================
@@ -32,33 +58,54 @@ public abstract class BaseFlow {
     //======================================================================================================
 
     private void logReceivedMessage(IncomingMessage incomingMessage) {
-        Console.printDiv();
-        Console.println(Color.BLUE, "Received NGAP: %s", incomingMessage.ngapMessage.getClass().getSimpleName());
-        Console.println(Color.WHITE_BRIGHT, Utils.xmlToJson(Ngap.xerEncode(incomingMessage.ngapPdu)));
-        if (incomingMessage.nasMessage != null) {
-            Console.println(Color.BLUE, "Received NAS: %s", incomingMessage.nasMessage.getClass().getSimpleName());
-            Console.println(Color.WHITE_BRIGHT, Json.toJson(incomingMessage.nasMessage));
-        }
+        if (messageLogLevel == MessageLog.Level.OFF)
+            return;
+        var full = messageLogLevel == MessageLog.Level.FULL;
+        MessageLog.log(messageLogLevel, () -> {
+            Console.printDiv();
+            Console.println(Color.BLUE, "Received NGAP: %s", incomingMessage.ngapMessage.getClass().getSimpleName());
+            if (full) {
+                Console.println(Color.WHITE_BRIGHT, Utils.xmlToJson(Ngap.xerEncode(incomingMessage.ngapPdu)));
+            }
+            var nasView = incomingMessage.nasView;
+            if (nasView != null) {
+                Console.println(Color.BLUE, "Received NAS: %s", nasView.getMessageClass().getSimpleName());
+                if (full) {
+                    Console.println(Color.WHITE_BRIGHT, Json.toJson(nasView.decode()));
+                }
+            }
+        });
     }
 
     private void logSentMessage(OutgoingMessage message) {
-        Console.printDiv();
-        Console.println(Color.BLUE, "Sent NGAP: %s", NgapInternal.extractNgapMessage(message.ngapPdu).getClass().getSimpleName());
-        Console.println(Color.WHITE_BRIGHT, Utils.xmlToJson(Ngap.xerEncode(message.ngapPdu)));
+        if (messageLogLevel == MessageLog.Level.OFF)
+            return;
+        var full = messageLogLevel == MessageLog.Level.FULL;
+        MessageLog.log(messageLogLevel, () -> {
+            Console.printDiv();
+            Console.println(Color.BLUE, "Sent NGAP: %s", NgapInternal.extractNgapMessage(message.ngapPdu).getClass().getSimpleName());
+            if (full) {
+                Console.println(Color.WHITE_BRIGHT, Utils.xmlToJson(Ngap.xerEncode(message.ngapPdu)));
+            }
 
-        if (message.plainNas != null) {
-            Console.println(Color.BLUE, "Sent Plain NAS: %s", message.plainNas.getClass().getSimpleName());
-            Console.println(Color.WHITE_BRIGHT, Json.toJson(message.plainNas));
-        }
-        if (message.securedNas != null && message.plainNas != message.securedNas) {
-            Console.println(Color.BLUE, "Sent Secured NAS: %s", message.securedNas.getClass().getSimpleName());
-            Console.println(Color.WHITE_BRIGHT, Json.toJson(message.securedNas));
-        }
+            if (message.plainNas != null) {
+                Console.println(Color.BLUE, "Sent Plain NAS: %s", message.plainNas.getClass().getSimpleName());
+                if (full) {
+                    Console.println(Color.WHITE_BRIGHT, Json.toJson(message.plainNas));
+                }
+            }
+            if (message.securedNas != null && message.plainNas != message.securedNas) {
+                Console.println(Color.BLUE, "Sent Secured NAS: %s", message.securedNas.getClass().getSimpleName());
+                if (full) {
+                    Console.println(Color.WHITE_BRIGHT, Json.toJson(message.securedNas));
+                }
+            }
+        });
     }
 
     protected void logUnhandledMessage(String receivedMessageName, Class<?>... expectedType) {
         if (expectedType == null || expectedType.length == 0) {
-            Console.println(Color.YELLOW, "Unhandled message received: %s", receivedMessageName);
+            MessageLog.log(MessageLog.Level.SUMMARY, Color.YELLOW, "Unhandled message received: %s", receivedMessageName);
         } else {
             var sb = new StringBuilder();
             for (int i = 0; i < expectedType.length; i++) {
@@ -69,14 +116,19 @@ public abstract class BaseFlow {
             }
 
             var expectedMessages = sb.toString();
-            Console.println(Color.YELLOW, "Unhandled message received: %s, expected messages were: %s", receivedMessageName, expectedMessages);
+            MessageLog.log(MessageLog.Level.SUMMARY, Color.YELLOW, "Unhandled message received: %s, expected messages were: %s",
+                    receivedMessageName, expectedMessages);
         }
     }
 
     protected void logUnhandledMessage(IncomingMessage message, Class<?>... expectedType) {
+        if (message.expiredTimer != null) {
+            logUnhandledMessage("expiry of timer " + message.expiredTimer.getName(), expectedType);
+            return;
+        }
         var incomingMessage = message.ngapMessage.getClass().getSimpleName();
-        if (message.nasMessage != null) {
-            incomingMessage += "/" + message.nasMessage.getClass().getSimpleName();
+        if (message.nasView != null) {
+            incomingMessage += "/" + message.nasView.getMessageClass().getSimpleName();
         }
         logUnhandledMessage(incomingMessage, expectedType);
     }
@@ -86,14 +138,15 @@ public abstract class BaseFlow {
     }
 
     protected void logFlowComplete() {
-        Console.println(Color.GREEN_BOLD, "%s completed", getClass().getSimpleName());
+        MessageLog.log(MessageLog.Level.SUMMARY, Color.GREEN_BOLD, "%s completed in %.3f ms", getClass().getSimpleName(),
+                (System.nanoTime() - startNanos) / 1e6);
     }
 
     protected void logFlowFailed(String errorMessage) {
         if (errorMessage != null && errorMessage.length() > 0) {
-            Console.println(Color.RED_BOLD, "%s failed: %s", getClass().getSimpleName(), errorMessage);
+            MessageLog.log(MessageLog.Level.SUMMARY, Color.RED_BOLD, "%s failed: %s", getClass().getSimpleName(), errorMessage);
         } else {
-            Console.println(Color.RED_BOLD, "%s failed", getClass().getSimpleName());
+            MessageLog.log(MessageLog.Level.SUMMARY, Color.RED_BOLD, "%s failed", getClass().getSimpleName());
         }
     }
 
@@ -125,20 +178,34 @@ public abstract class BaseFlow {
         }
 
         var ngapPdu = ngapBuilder.build();
-        sendSctpData(Ngap.perEncode(ngapPdu));
+        if (engine != null) {
+            engine.routeOutgoing(this, ngapBuilder.getRanUeNgapId());
+        }
+        lastSentType = nasMessage != null ? nasMessage.getClass() : NgapInternal.extractNgapMessage(ngapPdu).getClass();
+        lastSentNanos = System.nanoTime();
+        sendSctpData(Ngap.perEncode(ngapPdu), simContext.getStreamNumber(ngapBuilder.getRanUeNgapId()));
 
         var outgoing = new OutgoingMessage(ngapPdu, nasMessage, securedNas);
         logSentMessage(outgoing);
     }
 
-    private void receive(NGAP_PDU ngapPdu) {
+    private void receive(NGAP_PDU ngapPdu, int streamNumber) {
+        long receivedNanos = System.nanoTime();
         var ngapMessage = NgapInternal.extractNgapMessage(ngapPdu);
-        var nasMessage = NgapInternal.extractNasMessage(ngapPdu);
-        var decryptedNasMessage = decryptNasMessage(nasMessage);
-        var incomingMessage = new IncomingMessage(ngapPdu, ngapMessage, decryptedNasMessage);
+        var nasView = NgapInternal.extractNasView(ngapPdu);
+        var decryptedNasView = decryptNasMessage(nasView);
+
+        // only the first message after a sent one is a response to it
+        var sentType = lastSentType;
+        if (sentType != null) {
+            lastSentType = null;
+            var receivedType = decryptedNasView != null ? decryptedNasView.getMessageClass() : ngapMessage.getClass();
+            FlowMetrics.leg(getClass(), sentType, receivedType).record(receivedNanos - lastSentNanos);
+        }
+        var incomingMessage = new IncomingMessage(ngapPdu, ngapMessage, decryptedNasView, streamNumber);
 
-        // check for AMF-UE-NGAP-ID
-        {
+        // check for AMF-UE-NGAP-ID, the engine records it before delivering the message to a flow attached to it
+        if (engine == null) {
             var ieAmfUeNgapId = NgapInternal.extractProtocolIe(ngapMessage, AMF_UE_NGAP_ID.class);
             if (ieAmfUeNgapId.size() > 0) {
                 var ie = ieAmfUeNgapId.get(ieAmfUeNgapId.size() - 1);
@@ -147,7 +214,10 @@ public abstract class BaseFlow {
         }
 
         logReceivedMessage(incomingMessage);
+        dispatch(incomingMessage);
+    }
 
+    void dispatch(IncomingMessage incomingMessage) {
         try {
             this.currentState = this.currentState.accept(incomingMessage);
         } catch (FlowFailedException exception) {
@@ -168,13 +238,13 @@ public abstract class BaseFlow {
         return nasMessage;
     }
 
-    private NasMessage decryptNasMessage(NasMessage nasMessage) {
-        if (nasMessage == null) {
+    private NasMessageView decryptNasMessage(NasMessageView nasView) {
+        if (nasView == null) {
             return null;
         }
 
-        // todo: decrypt nasMessage if needed
-        return nasMessage;
+        // todo: decrypt nasView if needed
+        return nasView;
     }
 
     //======================================================================================================
@@ -182,35 +252,158 @@ public abstract class BaseFlow {
     //======================================================================================================
 
     public final void start() throws Exception {
+        if (engine != null) throw new RuntimeException("flow is attached to an engine");
+        startStandalone();
+    }
+
+    void startStandalone() throws Exception {
+        // the receiver thread is blocked in receiving, so timer expirations are handed over to a thread of the flow
+        var timerExecutor = newStandaloneTimerExecutor();
+        this.executor = timerExecutor;
+        try {
+            if (runMain()) {
+                runReceiverLoop();
+            }
+        } finally {
+            timerExecutor.shutdown();
+        }
+        // the caller continues on the console after a standalone flow
+        MessageLog.flush(5, TimeUnit.SECONDS);
+    }
+
+    final void runReceiverLoop() throws Exception {
+        this.simContext.getSctpClient().receiverLoop(this::receiveSctpData);
+    }
+
+    /**
+     * Returns <code>false</code> if the main step failed.
+     */
+    private boolean runMain() throws Exception {
         if (started) throw new RuntimeException("already started");
         this.started = true;
+        this.startNanos = System.nanoTime();
 
-        boolean mainStepFailed = false;
         try {
             this.currentState = main(null);
         } catch (FlowFailedException exception) {
             this.currentState = flowFailed(exception.getMessage());
-            mainStepFailed = true;
+            return false;
+        }
+        return true;
+    }
+
+    final void attach(FlowEngine engine, Executor executor) {
+        if (this.engine != null) throw new RuntimeException("already attached");
+        this.engine = engine;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the error message of a failed flow, or <code>null</code> if the flow did not fail.
+     */
+    final String getFailureCause() {
+        return failureCause;
+    }
+
+    final SimulationContext getSimContext() {
+        return simContext;
+    }
+
+    final Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Runs the main step of a flow attached to an engine. Incoming messages are then delivered by the engine.
+     */
+    final void startAttached() {
+        try {
+            runMain();
+        } catch (Exception e) {
+            Console.println(Color.RED, "%s", e);
+            this.currentState = flowFailed(e.getMessage());
         }
+    }
 
-        if (!mainStepFailed) {
-            this.simContext.getSctpClient().receiverLoop(this::receiveSctpData);
+    /**
+     * Delivers a message routed by the engine. Messages queued before the flow finished are dropped.
+     */
+    final void deliver(NGAP_PDU ngapPdu, int streamNumber) {
+        if (finished)
+            return;
+        try {
+            receive(ngapPdu, streamNumber);
+        } catch (Exception e) {
+            Console.println(Color.RED, "%s", e);
+            this.currentState = flowFailed(e.getMessage());
         }
     }
 
-    private void receiveSctpData(byte[] receivedBytes, MessageInfo messageInfo, SctpChannel channel) {
-        var ngapPdu = Ngap.perDecode(NGAP_PDU.class, receivedBytes);
-        receive(ngapPdu);
+    private void receiveSctpData(ByteBuffer receivedBuffer, MessageInfo messageInfo, SctpChannel channel) {
+        var ngapPdu = Ngap.perDecode(NGAP_PDU.class, receivedBuffer);
+        synchronized (receiveLock) {
+            receive(ngapPdu, messageInfo != null ? messageInfo.streamNumber() : Constants.NON_UE_ASSOCIATED_STREAM_NUMBER);
+        }
     }
 
-    private void sendSctpData(byte[] data) {
+    private void sendSctpData(byte[] data, int streamNumber) {
         try {
-            simContext.getSctpClient().send(simContext.getStreamNumber(), data);
+            simContext.getSctpClient().send(streamNumber, data);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    //======================================================================================================
+    //                                             TIMERS
+    //======================================================================================================
+
+    private static TimingWheel createTimingWheel() {
+        var wheel = new TimingWheel("flow-timers", 10, TimeUnit.MILLISECONDS, 4096);
+        wheel.start();
+        return wheel;
+    }
+
+    /**
+     * Starts a timer whose expiration is delivered to the current state of this flow, see
+     * {@link IncomingMessage#isExpired(FlowTimer)}. Timers still running when the flow ends are cancelled.
+     */
+    protected final FlowTimer startTimer(String name, long delay, TimeUnit unit) {
+        timers.removeIf(timer -> timer.isCancelled() || timer.isExpired());
+
+        var timer = new FlowTimer(name);
+        timer.setTimeout(TIMING_WHEEL.schedule(() -> timerExpired(timer), delay, unit));
+        timers.add(timer);
+        return timer;
+    }
+
+    private static ExecutorService newStandaloneTimerExecutor() {
+        // expirations after the flow ended are discarded instead of failing on the wheel thread
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            var thread = new Thread(r, "flow-timer-expiry");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    private void timerExpired(FlowTimer timer) {
+        // runs on the wheel thread, so the expiration is only handed over; a standalone BlockingFlow has no executor,
+        // its deliverTimer only queues the expiration to its mailbox
+        if (executor != null) {
+            executor.execute(() -> deliverTimer(timer));
+        } else {
+            deliverTimer(timer);
+        }
+    }
+
+    void deliverTimer(FlowTimer timer) {
+        if (timer.isCancelled() || finished)
+            return;
+        synchronized (receiveLock) {
+            dispatch(new IncomingMessage(timer));
+        }
+    }
+
     //======================================================================================================
     //                                             STATES
     //======================================================================================================
@@ -225,24 +418,47 @@ public abstract class BaseFlow {
     }
 
     public final State abortReceiver() {
-        simContext.getSctpClient().abortReceiver();
-        return this::sinkState;
+        return finish(true);
     }
 
     public final State flowComplete() {
         logFlowComplete();
-        return abortReceiver();
+        return finish(true);
     }
 
     public final State flowFailed(String errorMessage) {
         logFlowFailed(errorMessage);
-        return abortReceiver();
+        this.failureCause = errorMessage != null && errorMessage.length() > 0 ? errorMessage : "unspecified";
+        return finish(false);
     }
 
     public final State flowFailed() {
         return flowFailed(null);
     }
 
+    /**
+     * Ends the flow. A standalone flow stops its receiver loop, a flow attached to an engine is removed from the
+     * engine's routing tables instead, so that the association keeps serving the other flows.
+     */
+    private State finish(boolean success) {
+        finished = true;
+        for (var timer : timers) {
+            timer.cancel();
+        }
+        timers.clear();
+
+        if (success && startNanos != 0) {
+            FlowMetrics.flow(getClass()).record(System.nanoTime() - startNanos);
+            startNanos = 0;
+        }
+        if (engine != null) {
+            engine.flowFinished(this, success);
+        } else {
+            simContext.getSctpClient().abortReceiver();
+        }
+        return this::sinkState;
+    }
+
     public abstract State main(IncomingMessage message) throws Exception;
 
     //======================================================================================================
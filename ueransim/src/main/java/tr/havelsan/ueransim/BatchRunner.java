@@ -0,0 +1,182 @@
+package tr.havelsan.ueransim;
+
+import tr.havelsan.ueransim.mocked.MockedRemote;
+import tr.havelsan.ueransim.mocked.MockedTCPServer;
+import tr.havelsan.ueransim.mts.MtsInitializer;
+import tr.havelsan.ueransim.scenario.ScenarioPlan;
+import tr.havelsan.ueransim.scenario.ScenarioRunner;
+import tr.havelsan.ueransim.sctp.ISCTPClient;
+import tr.havelsan.ueransim.utils.Color;
+import tr.havelsan.ueransim.utils.Console;
+import tr.havelsan.ueransim.utils.Json;
+import tr.havelsan.ueransim.utils.Utils;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs scenario files without any interaction, for CI and soak tests. Scenarios are run in parallel by the given
+ * number of workers, each scenario run over its own association to the AMF in config.yaml. A summary is printed and
+ * written as JSON, and the exit code is 0 only if every scenario run passed.
+ * <p>
+ * Usage: -s scenario1.yaml[,scenario2.yaml...] [-w workers] [-r repeat] [-n uesPerScenario] [-i ueStartIntervalMs]
+ * [-t scenarioTimeoutSec] [-o summary.json]
+ */
+public class BatchRunner {
+
+    public static void main(String[] args) throws Exception {
+        MtsInitializer.initMts();
+
+        String scenarioFiles = Utils.getCommandLineOption(args, "-s");
+        if (scenarioFiles == null) {
+            Console.println(Color.RED, "Scenario files must be given with -s");
+            System.exit(1);
+        }
+        int workerCount = Integer.parseInt(option(args, "-w", "1"));
+        int repeat = Integer.parseInt(option(args, "-r", "1"));
+        int ueCount = Integer.parseInt(option(args, "-n", "1"));
+        long ueStartInterval = Long.parseLong(option(args, "-i", "0"));
+        long scenarioTimeout = Long.parseLong(option(args, "-t", "600"));
+        String summaryFile = Utils.getCommandLineOption(args, "-o");
+
+        var config = FlowTesting.readConfig();
+        MessageLog.configure(config);
+
+        // all plans are loaded before the first run, so that an invalid file fails the batch at once
+        var plans = new LinkedHashMap<String, ScenarioPlan>();
+        for (var file : scenarioFiles.split(",")) {
+            plans.put(file, ScenarioPlan.load(file));
+        }
+
+        // each run gets its own range of UE indexes, so that parallel and repeated runs use distinct UE identities
+        var jobs = new ConcurrentLinkedQueue<Job>();
+        for (int i = 0; i < repeat; i++) {
+            for (var file : plans.keySet()) {
+                jobs.add(new Job(file, jobs.size() * ueCount));
+            }
+        }
+
+        startMockedAmf(config);
+
+        var summary = new BatchSummary();
+        int engineThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / workerCount);
+        long startNanos = System.nanoTime();
+
+        var workers = new ArrayList<Thread>();
+        for (int i = 0; i < workerCount; i++) {
+            int worker = i;
+            var thread = new Thread(() -> {
+                Job job;
+                while ((job = jobs.poll()) != null) {
+                    summary.scenarioFinished(runScenario(config, job.file, plans.get(job.file), worker, ueCount,
+                            job.firstUeIndex, ueStartInterval, scenarioTimeout, engineThreads, summary));
+                }
+            }, "batch-worker-" + i);
+            workers.add(thread);
+            thread.start();
+        }
+        for (var thread : workers) {
+            thread.join();
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        MessageLog.flush(5, TimeUnit.SECONDS);
+        summary.print(elapsedNanos);
+
+        var json = Json.toJson(summary.toMap(elapsedNanos));
+        if (summaryFile != null) {
+            Files.write(Paths.get(summaryFile), json.getBytes(StandardCharsets.UTF_8));
+            Console.println(Color.BLUE, "Summary written to %s", summaryFile);
+        } else {
+            Console.println(json);
+        }
+        System.exit(summary.isPassed() ? 0 : 1);
+    }
+
+    private static BatchSummary.ScenarioResult runScenario(Map<String, String> config, String file, ScenarioPlan plan,
+                                                           int worker, int ueCount, int firstUeIndex,
+                                                           long ueStartInterval, long timeout, int engineThreads,
+                                                           BatchSummary summary) {
+        long startNanos = System.nanoTime();
+        ISCTPClient sctpClient = null;
+        FlowEngine engine = null;
+        try {
+            sctpClient = FlowTesting.createSctpClient(config);
+            sctpClient.start();
+
+            engine = new FlowEngine(sctpClient, engineThreads, message ->
+                    Console.println(Color.YELLOW, "Unhandled non UE associated message received: %s",
+                            message.ngapMessage.getClass().getSimpleName()));
+            engine.setFlowListener(summary);
+            engine.start();
+
+            var runner = new ScenarioRunner(engine, plan);
+            boolean passed = runner.run(ueCount, firstUeIndex, ueStartInterval, TimeUnit.SECONDS.toMillis(timeout),
+                    TimeUnit.MILLISECONDS);
+
+            int completed = runner.getCompletedUeCount();
+            int failed = runner.getFailedUeCount();
+            int unfinished = ueCount - completed - failed;
+
+            String failureCause = null;
+            if (!passed) {
+                if (runner.hasGnbStepsFailed()) {
+                    failureCause = "gNB steps failed";
+                } else if (failed > 0) {
+                    failureCause = failed + " UEs failed";
+                } else {
+                    failureCause = unfinished + " UEs did not finish in " + timeout + " s";
+                }
+            }
+            return new BatchSummary.ScenarioResult(file, worker, passed, completed, failed, unfinished,
+                    System.nanoTime() - startNanos, failureCause);
+        } catch (Exception e) {
+            Console.println(Color.RED, "%s could not be run: %s", file, e);
+            return new BatchSummary.ScenarioResult(file, worker, false, 0, 0, ueCount,
+                    System.nanoTime() - startNanos, e.toString());
+        } finally {
+            if (engine != null) {
+                engine.stop();
+            }
+            if (sctpClient != null) {
+                sctpClient.close();
+            }
+        }
+    }
+
+    /**
+     * Starts the mocked AMF once for all workers, instead of once per association.
+     */
+    private static void startMockedAmf(Map<String, String> config) throws Exception {
+        boolean tcp = config.getOrDefault("sctp.transport", "sctp").equals("tcp");
+        if (!tcp || !Boolean.parseBoolean(config.get("amf.mocked")))
+            return;
+        String amfHost = config.get("amf.host");
+        int amfPort = Integer.parseInt(config.get("amf.port"));
+        MockedTCPServer.start(new InetSocketAddress(amfHost, amfPort), new MockedRemote());
+        Console.println(Color.BLUE, "Mocked AMF listening on TCP %s:%s", amfHost, amfPort);
+        config.put("amf.mocked", "false");
+    }
+
+    private static String option(String[] args, String flag, String defaultValue) {
+        String value = Utils.getCommandLineOption(args, flag);
+        return value != null ? value : defaultValue;
+    }
+
+    private static class Job {
+        final String file;
+        final int firstUeIndex;
+
+        Job(String file, int firstUeIndex) {
+            this.file = file;
+            this.firstUeIndex = firstUeIndex;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package tr.havelsan.ueransim;
+
+import tr.havelsan.ueransim.utils.Color;
+import tr.havelsan.ueransim.utils.Console;
+import tr.havelsan.ueransim.utils.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of a {@link BatchRunner} run: the outcome of every scenario run, and the counts, failure causes and
+ * durations of the flows of all scenarios per flow type.
+ */
+class BatchSummary implements FlowEngine.IFlowListener {
+    private final ConcurrentHashMap<Class<?>, FlowStats> flows;
+    private final List<ScenarioResult> scenarios;
+
+    BatchSummary() {
+        this.flows = new ConcurrentHashMap<>();
+        this.scenarios = new ArrayList<>();
+    }
+
+    @Override
+    public void flowFinished(BaseFlow flow, boolean success, long durationNanos) {
+        var stats = flows.get(flow.getClass());
+        if (stats == null) {
+            stats = flows.computeIfAbsent(flow.getClass(), type -> new FlowStats());
+        }
+        if (success) {
+            stats.passed.incrementAndGet();
+            stats.duration.record(durationNanos);
+        } else {
+            stats.failed.incrementAndGet();
+            var cause = flow.getFailureCause();
+            stats.failureCauses.computeIfAbsent(cause != null ? cause : "unspecified", c -> new AtomicLong())
+                    .incrementAndGet();
+        }
+    }
+
+    synchronized void scenarioFinished(ScenarioResult result) {
+        scenarios.add(result);
+    }
+
+    synchronized boolean isPassed() {
+        for (var scenario : scenarios) {
+            if (!scenario.passed)
+                return false;
+        }
+        return !scenarios.isEmpty();
+    }
+
+    /**
+     * Returns the summary as nested maps and lists, ready to be written as JSON. Durations are in milliseconds.
+     */
+    synchronized Map<String, Object> toMap(long elapsedNanos) {
+        double elapsedSeconds = elapsedNanos / 1e9;
+
+        var scenarioList = new ArrayList<Map<String, Object>>();
+        long scenariosPassed = 0;
+        for (var scenario : scenarios) {
+            var map = new LinkedHashMap<String, Object>();
+            map.put("file", scenario.file);
+            map.put("worker", scenario.worker);
+            map.put("passed", scenario.passed);
+            map.put("uesCompleted", scenario.uesCompleted);
+            map.put("uesFailed", scenario.uesFailed);
+            map.put("uesUnfinished", scenario.uesUnfinished);
+            map.put("durationMs", scenario.durationNanos / 1e6);
+            if (scenario.failureCause != null) {
+                map.put("failureCause", scenario.failureCause);
+            }
+            scenarioList.add(map);
+            if (scenario.passed) {
+                scenariosPassed++;
+            }
+        }
+
+        var entries = new ArrayList<>(flows.entrySet());
+        entries.sort(Comparator.comparing(entry -> entry.getKey().getSimpleName()));
+
+        var flowMap = new LinkedHashMap<String, Object>();
+        long flowsPassed = 0;
+        long flowsFailed = 0;
+        for (var entry : entries) {
+            var stats = entry.getValue();
+            var duration = stats.duration;
+
+            var map = new LinkedHashMap<String, Object>();
+            map.put("passed", stats.passed.get());
+            map.put("failed", stats.failed.get());
+            map.put("throughputPerSec", elapsedSeconds > 0 ? stats.passed.get() / elapsedSeconds : 0);
+
+            var latency = new LinkedHashMap<String, Object>();
+            latency.put("mean", duration.getMean() / 1e6);
+            latency.put("p50", duration.getValueAtPercentile(50) / 1e6);
+            latency.put("p90", duration.getValueAtPercentile(90) / 1e6);
+            latency.put("p99", duration.getValueAtPercentile(99) / 1e6);
+            latency.put("p99.9", duration.getValueAtPercentile(99.9) / 1e6);
+            latency.put("max", duration.getMax() / 1e6);
+            map.put("durationMs", latency);
+
+            var causes = new LinkedHashMap<String, Object>();
+            for (var cause : stats.failureCauses.entrySet()) {
+                causes.put(cause.getKey(), cause.getValue().get());
+            }
+            map.put("failureCauses", causes);
+
+            flowMap.put(entry.getKey().getSimpleName(), map);
+            flowsPassed += stats.passed.get();
+            flowsFailed += stats.failed.get();
+        }
+
+        var summary = new LinkedHashMap<String, Object>();
+        summary.put("passed", isPassed());
+        summary.put("elapsedSec", elapsedSeconds);
+        summary.put("scenariosPassed", scenariosPassed);
+        summary.put("scenariosFailed", scenarios.size() - scenariosPassed);
+        summary.put("flowsPassed", flowsPassed);
+        summary.put("flowsFailed", flowsFailed);
+        summary.put("throughputPerSec", elapsedSeconds > 0 ? flowsPassed / elapsedSeconds : 0);
+        summary.put("flows", flowMap);
+        summary.put("scenarios", scenarioList);
+        return summary;
+    }
+
+    synchronized void print(long elapsedNanos) {
+        var entries = new ArrayList<>(flows.entrySet());
+        entries.sort(Comparator.comparing(entry -> entry.getKey().getSimpleName()));
+
+        Console.printDiv();
+        for (var scenario : scenarios) {
+            Console.println(scenario.passed ? Color.GREEN : Color.RED,
+                    "%s (worker %d): %s, %d UEs completed, %d failed, %d unfinished%s", scenario.file,
+                    scenario.worker, scenario.passed ? "passed" : "FAILED", scenario.uesCompleted, scenario.uesFailed,
+                    scenario.uesUnfinished,
+                    scenario.failureCause != null ? " (" + scenario.failureCause + ")" : "");
+        }
+        for (var entry : entries) {
+            var stats = entry.getValue();
+            Console.println(stats.failed.get() == 0 ? Color.WHITE_BRIGHT : Color.YELLOW,
+                    "%s: %d passed, %d failed, %.1f/s, duration (ms) %s", entry.getKey().getSimpleName(),
+                    stats.passed.get(), stats.failed.get(), stats.passed.get() / (elapsedNanos / 1e9),
+                    stats.duration.toString(1e6));
+            for (var cause : stats.failureCauses.entrySet()) {
+                Console.println(Color.YELLOW, "    %d x %s", cause.getValue().get(), cause.getKey());
+            }
+        }
+        Console.println(isPassed() ? Color.GREEN_BOLD : Color.RED_BOLD, "Batch %s in %.1f s",
+                isPassed() ? "passed" : "failed", elapsedNanos / 1e9);
+    }
+
+    private static class FlowStats {
+        final AtomicLong passed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final LatencyHistogram duration = new LatencyHistogram();
+        final ConcurrentHashMap<String, AtomicLong> failureCauses = new ConcurrentHashMap<>();
+    }
+
+    static class ScenarioResult {
+        final String file;
+        final int worker;
+        final boolean passed;
+        final int uesCompleted;
+        final int uesFailed;
+        final int uesUnfinished;
+        final long durationNanos;
+        final String failureCause;
+
+        ScenarioResult(String file, int worker, boolean passed, int uesCompleted, int uesFailed, int uesUnfinished,
+                       long durationNanos, String failureCause) {
+            this.file = file;
+            this.worker = worker;
+            this.passed = passed;
+            this.uesCompleted = uesCompleted;
+            this.uesFailed = uesFailed;
+            this.uesUnfinished = uesUnfinished;
+            this.durationNanos = durationNanos;
+            this.failureCause = failureCause;
+        }
+    }
+}
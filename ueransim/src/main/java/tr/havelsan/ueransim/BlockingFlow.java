@@ -0,0 +1,132 @@
+package tr.havelsan.ueransim;
+
+import tr.havelsan.ueransim.contexts.SimulationContext;
+
+import java.time.Duration;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A flow written as straight-line blocking code instead of a state machine. Each flow runs on its own thread, which
+ * is a virtual thread when the runtime supports them, so waiting for a message does not hold an OS thread.
+ * <p>
+ * Returning from {@link #run()} completes the flow, throwing from it fails the flow.
+ */
+public abstract class BlockingFlow extends BaseFlow {
+    private final LinkedBlockingQueue<IncomingMessage> mailbox;
+
+    // Only used when the flow is started without an engine, see startStandalone()
+    private Semaphore handoff;
+    private volatile boolean done;
+
+    //======================================================================================================
+    //                                          CONSTRUCTORS
+    //======================================================================================================
+
+    public BlockingFlow(SimulationContext simContext) {
+        super(simContext);
+        this.mailbox = new LinkedBlockingQueue<>();
+    }
+
+    //======================================================================================================
+    //                                           MESSAGING
+    //======================================================================================================
+
+    /**
+     * Blocks until a message of the given type is received and returns it. The type can either be a NAS message or
+     * an NGAP message type. Other messages received in the meantime are logged as unhandled and dropped.
+     *
+     * @throws FlowFailedException if no such message is received within the timeout, or a timer started with
+     *                             {@link #startTimer} expires first
+     */
+    protected final <T> T awaitMessage(Class<T> messageType, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            IncomingMessage message;
+            try {
+                if (handoff != null) {
+                    handoff.release();
+                }
+                message = mailbox.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FlowFailedException("interrupted while waiting for " + messageType.getSimpleName());
+            }
+
+            if (message == null) {
+                throw new FlowFailedException("timeout while waiting for " + messageType.getSimpleName());
+            }
+            if (message.expiredTimer != null) {
+                throw new FlowFailedException(message.expiredTimer.getName() + " expired while waiting for "
+                        + messageType.getSimpleName());
+            }
+
+            if (message.nasView != null && messageType.isAssignableFrom(message.nasView.getMessageClass())) {
+                return messageType.cast(message.nasView.decode());
+            }
+            if (messageType.isInstance(message.ngapMessage)) {
+                return messageType.cast(message.ngapMessage);
+            }
+            logUnhandledMessage(message, messageType);
+        }
+    }
+
+    @Override
+    void deliverTimer(FlowTimer timer) {
+        if (!timer.isCancelled()) {
+            mailbox.add(new IncomingMessage(timer));
+        }
+    }
+
+    @Override
+    void dispatch(IncomingMessage incomingMessage) {
+        if (handoff == null) {
+            mailbox.add(incomingMessage);
+            return;
+        }
+
+        // Without an engine this is called on the receiver thread. The receiver is held until the flow waits
+        // for its next message or ends, so that it sees the abort of a completed flow before receiving again.
+        handoff.drainPermits();
+        if (done) {
+            logUnhandledMessage(incomingMessage);
+            return;
+        }
+        mailbox.add(incomingMessage);
+        handoff.acquireUninterruptibly();
+    }
+
+    //======================================================================================================
+    //                                            GENERAL
+    //======================================================================================================
+
+    @Override
+    void startStandalone() throws Exception {
+        this.handoff = new Semaphore(0);
+
+        var executor = FlowExecutors.newThreadPerFlowExecutor();
+        executor.execute(() -> {
+            try {
+                startAttached();
+            } finally {
+                done = true;
+                handoff.release();
+            }
+        });
+        executor.shutdown();
+
+        if (!done) {
+            runReceiverLoop();
+        }
+        MessageLog.flush(5, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public final State main(IncomingMessage message) throws Exception {
+        run();
+        return flowComplete();
+    }
+
+    protected abstract void run() throws Exception;
+}
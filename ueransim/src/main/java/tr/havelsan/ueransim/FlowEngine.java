@@ -0,0 +1,325 @@
+package tr.havelsan.ueransim;
+
+import com.sun.nio.sctp.MessageInfo;
+import com.sun.nio.sctp.SctpChannel;
+import tr.havelsan.ueransim.contexts.SimulationContext;
+import tr.havelsan.ueransim.contexts.UeContextStore;
+import tr.havelsan.ueransim.core.Constants;
+import tr.havelsan.ueransim.ngap.ngap_ies.AMF_UE_NGAP_ID;
+import tr.havelsan.ueransim.ngap.ngap_ies.RAN_UE_NGAP_ID;
+import tr.havelsan.ueransim.ngap.ngap_pdu_descriptions.NGAP_PDU;
+import tr.havelsan.ueransim.ngap2.NgapInternal;
+import tr.havelsan.ueransim.sctp.ISCTPBufferHandler;
+import tr.havelsan.ueransim.sctp.ISCTPClient;
+import tr.havelsan.ueransim.utils.Color;
+import tr.havelsan.ueransim.utils.Console;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs many flows at the same time over a single SCTP association.
+ * <p>
+ * A single receiver thread decodes every incoming NGAP PDU once, looks up the UE by its RAN-UE-NGAP-ID or
+ * AMF-UE-NGAP-ID in the {@link UeContextStore}, and routes it to the flow currently running for that UE. Messages
+ * without a UE identity go to the flow that sent the last non UE associated message (e.g. NG Setup), or to the gNB
+ * handler if there is no such flow. Each flow is pinned to one of the worker threads, so the callbacks of a flow
+ * never run concurrently. {@link BlockingFlow}s additionally get a thread of their own to run on, see
+ * {@link FlowExecutors}.
+ */
+public class FlowEngine {
+    private final ISCTPClient sctpClient;
+    private final ExecutorService[] workers;
+    private final ExecutorService blockingFlowExecutor;
+    private final Consumer<IncomingMessage> gnbHandler;
+    private final UeContextStore ueContextStore;
+
+    private final ConcurrentHashMap<BaseFlow, ActiveFlow> activeFlows;
+    private volatile BaseFlow gnbFlow;
+    private volatile IFlowListener flowListener;
+
+    private final AtomicInteger nextWorker;
+    private final AtomicInteger completedFlows;
+    private final AtomicInteger failedFlows;
+    private final Object idleLock;
+
+    private Thread receiverThread;
+
+    public FlowEngine(ISCTPClient sctpClient, int workerThreads, Consumer<IncomingMessage> gnbHandler) {
+        if (workerThreads < 1)
+            throw new IllegalArgumentException("workerThreads must be positive");
+
+        this.sctpClient = sctpClient;
+        this.gnbHandler = gnbHandler;
+        this.ueContextStore = new UeContextStore(1024);
+        this.activeFlows = new ConcurrentHashMap<>();
+        this.nextWorker = new AtomicInteger();
+        this.completedFlows = new AtomicInteger();
+        this.failedFlows = new AtomicInteger();
+        this.idleLock = new Object();
+
+        this.blockingFlowExecutor = FlowExecutors.newThreadPerFlowExecutor();
+        this.workers = new ExecutorService[workerThreads];
+        for (int i = 0; i < workerThreads; i++) {
+            int index = i;
+            workers[i] = Executors.newSingleThreadExecutor(r -> {
+                var thread = new Thread(r, "flow-worker-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Creates a new simulation context for a UE whose flows will run on this engine. The UE state is kept in the
+     * engine's {@link UeContextStore}, and it is released when the last flow of the context ends, unless the caller
+     * holds a reference to the context with {@link SimulationContext#retain()}.
+     */
+    public SimulationContext createUeContext() {
+        return new SimulationContext(sctpClient, ueContextStore);
+    }
+
+    public UeContextStore getUeContextStore() {
+        return ueContextStore;
+    }
+
+    public void start() {
+        if (receiverThread != null) throw new RuntimeException("already started");
+
+        ISCTPBufferHandler handler = this::receiveSctpData;
+        receiverThread = new Thread(() -> {
+            try {
+                sctpClient.receiverLoop(handler);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }, "flow-engine-receiver");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+    }
+
+    /**
+     * Starts the given flow on one of the worker threads. The flow's simulation context must be created by
+     * {@link #createUeContext()}.
+     */
+    public void startFlow(BaseFlow flow) {
+        startFlow(flow, System.nanoTime());
+    }
+
+    /**
+     * Starts the given flow, measuring its duration from the given {@link System#nanoTime()} value instead of from
+     * now. Load generators pass the time the flow was scheduled for, so that a late start counts as latency.
+     */
+    public void startFlow(BaseFlow flow, long startNanos) {
+        startFlow(flow, startNanos, null);
+    }
+
+    /**
+     * Starts the given flow, and notifies the given listener (in addition to the engine's listener) when it ends.
+     */
+    public void startFlow(BaseFlow flow, long startNanos, IFlowListener listener) {
+        var simContext = flow.getSimContext();
+        if (simContext.getUeContextStore() != ueContextStore)
+            throw new IllegalArgumentException("the flow's simulation context must be created by createUeContext()");
+
+        simContext.retain();
+        var executor = workers[Math.floorMod(nextWorker.getAndIncrement(), workers.length)];
+        activeFlows.put(flow, new ActiveFlow(startNanos, listener));
+        flow.attach(this, executor);
+        if (flow instanceof BlockingFlow) {
+            blockingFlowExecutor.execute(flow::startAttached);
+        } else {
+            executor.execute(flow::startAttached);
+        }
+    }
+
+    /**
+     * Runs the task on one of the worker threads. Used to move work such as creating and starting flows off timer
+     * threads.
+     */
+    public void execute(Runnable task) {
+        workers[Math.floorMod(nextWorker.getAndIncrement(), workers.length)].execute(task);
+    }
+
+    /**
+     * Waits until all started flows are completed or failed.
+     *
+     * @return <code>false</code> if the timeout elapsed before all flows were finished
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (idleLock) {
+            while (!activeFlows.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return false;
+                TimeUnit.NANOSECONDS.timedWait(idleLock, remaining);
+            }
+        }
+        return true;
+    }
+
+    public void stop() {
+        sctpClient.abortReceiver();
+        blockingFlowExecutor.shutdownNow();
+        for (var worker : workers) {
+            worker.shutdownNow();
+        }
+    }
+
+    /**
+     * Sets the listener notified whenever a flow is completed or failed.
+     */
+    public void setFlowListener(IFlowListener flowListener) {
+        this.flowListener = flowListener;
+    }
+
+    public int getActiveFlowCount() {
+        return activeFlows.size();
+    }
+
+    public int getCompletedFlowCount() {
+        return completedFlows.get();
+    }
+
+    public int getFailedFlowCount() {
+        return failedFlows.get();
+    }
+
+    //======================================================================================================
+    //                                            ROUTING
+    //======================================================================================================
+
+    void routeOutgoing(BaseFlow flow, Long ranUeNgapId) {
+        if (ranUeNgapId == null) {
+            gnbFlow = flow;
+            return;
+        }
+
+        if (activeFlows.containsKey(flow)) {
+            int ue = flow.getSimContext().getUeIndex();
+            if (ueContextStore.getRanUeNgapId(ue) != ranUeNgapId) {
+                ueContextStore.setRanUeNgapId(ue, ranUeNgapId);
+            }
+            if (ueContextStore.getOwner(ue) != flow) {
+                ueContextStore.setOwner(ue, flow);
+            }
+        }
+    }
+
+    void flowFinished(BaseFlow flow, boolean success) {
+        long endNanos = System.nanoTime();
+
+        var activeFlow = activeFlows.remove(flow);
+        if (activeFlow == null)
+            return;
+
+        var simContext = flow.getSimContext();
+        ueContextStore.clearOwner(simContext.getUeIndex(), flow);
+        simContext.release();
+        if (gnbFlow == flow) {
+            gnbFlow = null;
+        }
+
+        if (success) {
+            completedFlows.incrementAndGet();
+        } else {
+            failedFlows.incrementAndGet();
+        }
+
+        var listener = flowListener;
+        if (listener != null) {
+            listener.flowFinished(flow, success, endNanos - activeFlow.startNanos);
+        }
+        if (activeFlow.listener != null) {
+            activeFlow.listener.flowFinished(flow, success, endNanos - activeFlow.startNanos);
+        }
+
+        if (activeFlows.isEmpty()) {
+            synchronized (idleLock) {
+                idleLock.notifyAll();
+            }
+        }
+    }
+
+    private void receiveSctpData(ByteBuffer receivedBuffer, MessageInfo messageInfo, SctpChannel channel) {
+        int streamNumber = messageInfo != null ? messageInfo.streamNumber() : Constants.NON_UE_ASSOCIATED_STREAM_NUMBER;
+
+        NGAP_PDU ngapPdu;
+        try {
+            ngapPdu = Ngap.perDecode(NGAP_PDU.class, receivedBuffer);
+        } catch (Exception e) {
+            Console.println(Color.RED, "NGAP PDU could not be decoded: %s", e.getMessage());
+            return;
+        }
+
+        var ngapMessage = NgapInternal.extractNgapMessage(ngapPdu);
+        var ranUeNgapIds = NgapInternal.extractProtocolIe(ngapMessage, RAN_UE_NGAP_ID.class);
+        var amfUeNgapIds = NgapInternal.extractProtocolIe(ngapMessage, AMF_UE_NGAP_ID.class);
+        Long ranUeNgapId = ranUeNgapIds.isEmpty() ? null : ranUeNgapIds.get(ranUeNgapIds.size() - 1).value;
+        Long amfUeNgapId = amfUeNgapIds.isEmpty() ? null : amfUeNgapIds.get(amfUeNgapIds.size() - 1).value;
+
+        int ue = UeContextStore.NOT_FOUND;
+        BaseFlow flow = null;
+        if (ranUeNgapId != null) {
+            ue = ueContextStore.findByRanUeNgapId(ranUeNgapId);
+            if (ue != UeContextStore.NOT_FOUND) {
+                flow = (BaseFlow) ueContextStore.getOwner(ue);
+                // the flow may have ended and the UE may have been released since the lookup
+                if (amfUeNgapId != null && !ueContextStore.setAmfUeNgapIdIf(ue, ranUeNgapId, flow, amfUeNgapId)) {
+                    Console.println(Color.YELLOW, "Dropped NGAP for a released UE: %s (RAN-UE-NGAP-ID: %s)",
+                            ngapMessage.getClass().getSimpleName(), ranUeNgapId);
+                    return;
+                }
+            }
+        }
+        if (ue == UeContextStore.NOT_FOUND && amfUeNgapId != null) {
+            ue = ueContextStore.findByAmfUeNgapId(amfUeNgapId);
+            if (ue != UeContextStore.NOT_FOUND) {
+                flow = (BaseFlow) ueContextStore.getOwner(ue);
+            }
+        }
+        if (ue == UeContextStore.NOT_FOUND && ranUeNgapId == null && amfUeNgapId == null) {
+            flow = gnbFlow;
+        }
+
+        if (flow != null) {
+            var target = flow;
+            flow.getExecutor().execute(() -> target.deliver(ngapPdu, streamNumber));
+        } else if (gnbHandler != null) {
+            gnbHandler.accept(new IncomingMessage(ngapPdu, ngapMessage, NgapInternal.extractNasView(ngapPdu), streamNumber));
+        } else {
+            Console.println(Color.YELLOW, "No flow found for received NGAP: %s (RAN-UE-NGAP-ID: %s, AMF-UE-NGAP-ID: %s)",
+                    ngapMessage.getClass().getSimpleName(), ranUeNgapId, amfUeNgapId);
+        }
+    }
+
+    //======================================================================================================
+    //                                             OTHERS
+    //======================================================================================================
+
+    @FunctionalInterface
+    public interface IFlowListener {
+        /**
+         * Called on the thread that ended the flow.
+         *
+         * @param durationNanos time between the start given to {@link #startFlow(BaseFlow, long)} and the end
+         */
+        void flowFinished(BaseFlow flow, boolean success, long durationNanos);
+    }
+
+    private static class ActiveFlow {
+        final long startNanos;
+        final IFlowListener listener;
+
+        ActiveFlow(long startNanos, IFlowListener listener) {
+            this.startNanos = startNanos;
+            this.listener = listener;
+        }
+    }
+}
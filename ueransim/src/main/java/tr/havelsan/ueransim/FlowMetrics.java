@@ -0,0 +1,113 @@
+package tr.havelsan.ueransim;
+
+import tr.havelsan.ueransim.utils.Color;
+import tr.havelsan.ueransim.utils.Console;
+import tr.havelsan.ueransim.utils.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histograms of all flows, recorded by {@link BaseFlow}: one for the duration of each flow type, and one
+ * for each request/response leg of a flow type, i.e. the time between sending a message and receiving the next one.
+ * Lookups of existing histograms don't allocate.
+ */
+public class FlowMetrics {
+    private static final ConcurrentHashMap<Class<?>, Entry> flows = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Class<?>, ConcurrentHashMap<Class<?>, Entry>>> legs
+            = new ConcurrentHashMap<>();
+
+    private static ScheduledExecutorService periodicDumper;
+
+    static Entry flow(Class<?> flowType) {
+        var entry = flows.get(flowType);
+        if (entry == null) {
+            entry = flows.computeIfAbsent(flowType, type -> new Entry(type.getSimpleName()));
+        }
+        return entry;
+    }
+
+    static Entry leg(Class<?> flowType, Class<?> sentType, Class<?> receivedType) {
+        var bySent = legs.get(flowType);
+        if (bySent == null) {
+            bySent = legs.computeIfAbsent(flowType, type -> new ConcurrentHashMap<>());
+        }
+        var byReceived = bySent.get(sentType);
+        if (byReceived == null) {
+            byReceived = bySent.computeIfAbsent(sentType, type -> new ConcurrentHashMap<>());
+        }
+        var entry = byReceived.get(receivedType);
+        if (entry == null) {
+            entry = byReceived.computeIfAbsent(receivedType, type -> new Entry(String.format("%s: %s -> %s",
+                    flowType.getSimpleName(), sentType.getSimpleName(), receivedType.getSimpleName())));
+        }
+        return entry;
+    }
+
+    /**
+     * Prints the histograms of the values recorded since the previous periodic dump, in the given period.
+     */
+    public static synchronized void startPeriodicDump(long period, TimeUnit unit) {
+        if (periodicDumper != null) throw new RuntimeException("already started");
+        periodicDumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "flow-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        periodicDumper.scheduleAtFixedRate(() -> dump(true), period, period, unit);
+    }
+
+    public static synchronized void stopPeriodicDump() {
+        if (periodicDumper != null) {
+            periodicDumper.shutdownNow();
+            periodicDumper = null;
+        }
+    }
+
+    /**
+     * Prints the histograms of all values recorded since the start.
+     */
+    public static void printSummary() {
+        dump(false);
+    }
+
+    private static void dump(boolean interval) {
+        var entries = new ArrayList<>(flows.values());
+        for (var bySent : legs.values()) {
+            for (var byReceived : bySent.values()) {
+                entries.addAll(byReceived.values());
+            }
+        }
+        entries.sort(Comparator.comparing(entry -> entry.name));
+
+        Console.printDiv();
+        Console.println(Color.BLUE, "%s latencies (ms):", interval ? "Interval" : "Total");
+        for (var entry : entries) {
+            var histogram = interval ? entry.interval.copyAndReset() : entry.total;
+            if (histogram.getTotalCount() > 0) {
+                Console.println(Color.WHITE_BRIGHT, "%s  %s", entry.name, histogram.toString(1e6));
+            }
+        }
+    }
+
+    static class Entry {
+        final String name;
+        final LatencyHistogram total;
+        final LatencyHistogram interval;
+
+        Entry(String name) {
+            this.name = name;
+            this.total = new LatencyHistogram();
+            this.interval = new LatencyHistogram();
+        }
+
+        void record(long nanos) {
+            total.record(nanos);
+            interval.record(nanos);
+        }
+    }
+}
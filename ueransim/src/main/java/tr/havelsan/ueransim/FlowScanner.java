@@ -1,50 +1,73 @@
 package tr.havelsan.ueransim;
 
-import io.github.classgraph.ClassGraph;
-import io.github.classgraph.ScanResult;
 import tr.havelsan.ueransim.core.Constants;
+import tr.havelsan.ueransim.utils.ClassIndex;
 
-import java.lang.reflect.Modifier;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Set;
 
+/**
+ * Finds the flows listed in the flow index generated at compile time. A flow class is loaded when its type is
+ * first requested.
+ */
 public class FlowScanner {
 
-    private static HashMap<String, Class<? extends BaseFlow>> flowTypes;
-    private static HashMap<String, Class<? extends BaseFlow>> flowTypesLower;
-
-    private static void findFlowTypes() {
-        flowTypes = new HashMap<>();
-        flowTypesLower = new HashMap<>();
-        try (ScanResult scanResult = new ClassGraph().enableClassInfo().ignoreClassVisibility().whitelistPackages(Constants.FLOWS_PREFIX).scan()) {
-            var classInfoList = scanResult.getAllClasses();
-            for (var classInfo : classInfoList) {
-                Class clazz;
-                try {
-                    clazz = Class.forName(classInfo.getName());
-                } catch (ClassNotFoundException e) {
-                    throw new RuntimeException(e);
-                }
-                if (!BaseFlow.class.isAssignableFrom(clazz)) continue;
-                if (Modifier.isAbstract(clazz.getModifiers()) || clazz.isInterface()) continue;
-                flowTypes.put(clazz.getSimpleName(), clazz);
-                flowTypesLower.put(clazz.getSimpleName().toLowerCase(Locale.ENGLISH), clazz);
-            }
+    private static LinkedHashMap<String, FlowEntry> flowEntries;
+    private static HashMap<String, FlowEntry> flowEntriesLower;
+
+    private static synchronized void findFlowTypes() {
+        if (flowEntries != null)
+            return;
+        var entries = new LinkedHashMap<String, FlowEntry>();
+        var entriesLower = new HashMap<String, FlowEntry>();
+        for (var fields : ClassIndex.read(Constants.FLOW_INDEX)) {
+            var entry = new FlowEntry(fields[0], fields.length > 1 ? fields[1] : null);
+            var simpleName = fields[0].substring(Math.max(fields[0].lastIndexOf('.'), fields[0].lastIndexOf('$')) + 1);
+            entries.put(simpleName, entry);
+            entriesLower.put(simpleName.toLowerCase(Locale.ENGLISH), entry);
         }
+        flowEntriesLower = entriesLower;
+        flowEntries = entries;
     }
 
     public static Set<String> getFlowNames() {
-        if (flowTypes == null) {
-            findFlowTypes();
-        }
-        return flowTypes.keySet();
+        findFlowTypes();
+        return flowEntries.keySet();
     }
 
     public static Class<? extends BaseFlow> getFlowType(String flowName) {
-        if (flowTypes == null) {
-            findFlowTypes();
+        findFlowTypes();
+        var entry = flowEntriesLower.get(flowName.toLowerCase(Locale.ENGLISH));
+        return entry != null ? entry.getType() : null;
+    }
+
+    /**
+     * Returns the binary name of the input type of the flow, or <code>null</code> if the flow does not exist or
+     * takes no input. The flow class is not loaded.
+     */
+    public static String getFlowInputTypeName(String flowName) {
+        findFlowTypes();
+        var entry = flowEntriesLower.get(flowName.toLowerCase(Locale.ENGLISH));
+        return entry != null ? entry.inputTypeName : null;
+    }
+
+    private static class FlowEntry {
+        final String className;
+        final String inputTypeName;
+        private volatile Class<? extends BaseFlow> type;
+
+        FlowEntry(String className, String inputTypeName) {
+            this.className = className;
+            this.inputTypeName = inputTypeName;
+        }
+
+        Class<? extends BaseFlow> getType() {
+            if (type == null) {
+                type = ClassIndex.loadClass(className).asSubclass(BaseFlow.class);
+            }
+            return type;
         }
-        return flowTypesLower.get(flowName.toLowerCase(Locale.ENGLISH));
     }
 }
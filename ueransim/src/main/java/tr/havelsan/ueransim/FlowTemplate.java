@@ -0,0 +1,78 @@
+package tr.havelsan.ueransim;
+
+import tr.havelsan.ueransim.contexts.SimulationContext;
+import tr.havelsan.ueransim.mts.MtsConstruct;
+
+import java.lang.reflect.Constructor;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A flow type together with its resolved input, from which the flow of any UE can be created without reading or
+ * decoding the input file again. The inputs of the UEs are made from the input by an {@link InputGenerator}.
+ * <p>
+ * Unless a per-UE value is given for it, the RAN-UE-NGAP-ID in the input (if any) is used for the UE with index 0,
+ * and incremented by one for each following UE.
+ */
+public class FlowTemplate {
+    private final Class<? extends BaseFlow> flowType;
+    private final Constructor<BaseFlow> ctor;
+    private final Class<?> inputType;
+    private final InputGenerator<Object> inputGenerator;
+
+    /**
+     * @param inputParameters decoded input of the flow, or <code>null</code> if the flow takes no input
+     */
+    public FlowTemplate(Class<? extends BaseFlow> flowType, Map<String, Object> inputParameters) {
+        this(flowType, inputParameters, Map.of());
+    }
+
+    /**
+     * @param inputParameters decoded input of the flow, or <code>null</code> if the flow takes no input
+     * @param perUeValues     fields of the input which differ for each UE
+     */
+    public FlowTemplate(Class<? extends BaseFlow> flowType, Map<String, Object> inputParameters,
+                        Map<String, InputGenerator.ValueSpec> perUeValues) {
+        this.flowType = flowType;
+        this.ctor = FlowTesting.findConstructor(flowType);
+        this.inputType = ctor.getParameterCount() > 1 ? ctor.getParameterTypes()[1] : null;
+
+        if (inputType == null) {
+            if (!perUeValues.isEmpty())
+                throw new RuntimeException(flowType.getSimpleName() + " takes no input for per-UE values");
+            this.inputGenerator = null;
+            return;
+        }
+        if (inputParameters == null)
+            throw new RuntimeException("please specify flow input for " + flowType.getSimpleName());
+
+        var specs = new LinkedHashMap<>(perUeValues);
+        var id = inputParameters.get("ranUeNgapId");
+        if (id instanceof Number && !specs.containsKey("ranUeNgapId")) {
+            specs.put("ranUeNgapId", new InputGenerator.ValueSpec(((Number) id).longValue(), 1, 0, null));
+        }
+
+        // constructed once, every UE's input is a patched copy of it
+        Object input = MtsConstruct.construct(inputType, inputParameters, true);
+        this.inputGenerator = new InputGenerator<>(input, specs);
+    }
+
+    public Class<? extends BaseFlow> getFlowType() {
+        return flowType;
+    }
+
+    public Class<?> getInputType() {
+        return inputType;
+    }
+
+    public BaseFlow create(SimulationContext simContext, int ueIndex) {
+        try {
+            if (inputType == null) {
+                return ctor.newInstance(simContext);
+            }
+            return ctor.newInstance(simContext, inputGenerator.create(ueIndex));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
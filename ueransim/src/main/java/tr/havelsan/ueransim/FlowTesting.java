@@ -8,18 +8,35 @@ import tr.havelsan.ueransim.mts.ImplicitTypedObject;
 import tr.havelsan.ueransim.mts.MtsConstruct;
 import tr.havelsan.ueransim.mts.MtsDecoder;
 import tr.havelsan.ueransim.mts.MtsInitializer;
+import tr.havelsan.ueransim.mocked.LatencyDistribution;
+import tr.havelsan.ueransim.mocked.MockedRemote;
+import tr.havelsan.ueransim.mocked.MockedSCTPClient;
+import tr.havelsan.ueransim.mocked.MockedTCPServer;
+import tr.havelsan.ueransim.scenario.ScenarioPlan;
+import tr.havelsan.ueransim.scenario.ScenarioRunner;
+import tr.havelsan.ueransim.sctp.CapturingSCTPClient;
 import tr.havelsan.ueransim.sctp.ISCTPClient;
+import tr.havelsan.ueransim.sctp.NioSCTPClient;
+import tr.havelsan.ueransim.sctp.PcapWriter;
 import tr.havelsan.ueransim.sctp.SCTPClient;
+import tr.havelsan.ueransim.sctp.SCTPEventLoop;
+import tr.havelsan.ueransim.sctp.TCPClient;
 import tr.havelsan.ueransim.utils.Color;
 import tr.havelsan.ueransim.utils.Console;
 import tr.havelsan.ueransim.utils.Utils;
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
 
 public class FlowTesting {
 
@@ -28,14 +45,8 @@ public class FlowTesting {
 
         var scanner = new Scanner(System.in);
 
-        var config = new LinkedHashMap<String, String>();
-        var configYaml = (ImplicitTypedObject) MtsDecoder.decode("config.yaml");
-        for (var e : configYaml.getParameters().entrySet()) {
-            config.put(e.getKey(), String.valueOf(e.getValue()));
-        }
-
-        String amfHost = config.get("amf.host");
-        int amfPort = Integer.parseInt(config.get("amf.port"));
+        var config = readConfig();
+        MessageLog.configure(config);
 
         var types = new LinkedHashMap<String, Class<? extends BaseFlow>>();
         var typeNames = new ArrayList<String>();
@@ -62,20 +73,28 @@ public class FlowTesting {
             return i1.compareTo(i2);
         });
 
-        Console.println(Color.BLUE, "Trying to establish SCTP connection... (%s:%s)", amfHost, amfPort);
-        ISCTPClient sctpClient = new SCTPClient(amfHost, amfPort, Constants.NGAP_PROTOCOL_ID);
-
-        var simContext = new SimulationContext(sctpClient, Constants.DEFAULT_STREAM_NUMBER);
+        var sctpClient = createSctpClient(config);
+        var simContext = new SimulationContext(sctpClient);
 
         sctpClient.start();
 
         catchINTSignal(sctpClient);
 
-        Console.println(Color.BLUE, "SCTP connection established.");
+        Console.println(Color.BLUE, "SCTP connection established. (%d outbound, %d inbound streams)",
+                sctpClient.getOutboundStreams(), sctpClient.getInboundStreams());
 
         String flowName = Utils.getCommandLineOption(args, "-f");
         String yamlFile = Utils.getCommandLineOption(args, "-y");
 
+        String scenarioFile = Utils.getCommandLineOption(args, "-s");
+        if (scenarioFile != null) {
+            String ueCount = Utils.getCommandLineOption(args, "-n");
+            String ueStartInterval = Utils.getCommandLineOption(args, "-i");
+            runScenario(sctpClient, scenarioFile, ueCount != null ? Integer.parseInt(ueCount) : 1,
+                    ueStartInterval != null ? Long.parseLong(ueStartInterval) : 0);
+            return;
+        }
+
         if (flowName != null && yamlFile != null) {
             var type = FlowScanner.getFlowType(flowName);
             if (type == null) {
@@ -84,6 +103,13 @@ public class FlowTesting {
             var ctor = findConstructor(type);
             var inputType = ctor.getParameterCount() > 1 ? ctor.getParameterTypes()[1] : null;
 
+            String ueCount = Utils.getCommandLineOption(args, "-n");
+            if (ueCount != null) {
+                runConcurrently(sctpClient, ctor, inputType, yamlFile, Utils.getCommandLineOption(args, "-u"),
+                        Integer.parseInt(ueCount));
+                return;
+            }
+
             if (inputType != null) {
                 ctor.newInstance(simContext, readInputFile("", yamlFile, inputType))
                         .start();
@@ -144,13 +170,138 @@ public class FlowTesting {
         }
     }
 
-    private static void catchINTSignal(ISCTPClient sctpClient) {
+    /**
+     * Runs the same flow for the given number of UEs at the same time.
+     */
+    private static void runConcurrently(ISCTPClient sctpClient, Constructor<BaseFlow> ctor, Class<?> inputType,
+                                        String yamlFile, String perUeFile, int ueCount) throws Exception {
+        var engine = createFlowEngine(sctpClient, ctor);
+        var flowFactory = createFlowFactory(engine, ctor, inputType, yamlFile, perUeFile);
+
+        for (int i = 0; i < ueCount; i++) {
+            engine.startFlow(flowFactory.apply(i));
+        }
+
+        while (!engine.awaitIdle(5, TimeUnit.SECONDS)) {
+            Console.println(Color.BLUE, "%d flows active, %d completed, %d failed", engine.getActiveFlowCount(),
+                    engine.getCompletedFlowCount(), engine.getFailedFlowCount());
+        }
+        Console.println(Color.BLUE, "%d flows completed, %d failed", engine.getCompletedFlowCount(),
+                engine.getFailedFlowCount());
+        MessageLog.flush(5, TimeUnit.SECONDS);
+        FlowMetrics.printSummary();
+        engine.stop();
+    }
+
+    /**
+     * Runs the scenario for the given number of UEs, starting one UE every <code>ueStartInterval</code> ms.
+     */
+    private static void runScenario(ISCTPClient sctpClient, String scenarioFile, int ueCount, long ueStartInterval)
+            throws Exception {
+        var plan = ScenarioPlan.load(scenarioFile);
+        var engine = new FlowEngine(sctpClient, Runtime.getRuntime().availableProcessors(), message ->
+                Console.println(Color.YELLOW, "Unhandled non UE associated message received: %s",
+                        message.ngapMessage.getClass().getSimpleName()));
+        engine.start();
+
+        new ScenarioRunner(engine, plan).run(ueCount, ueStartInterval, TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+        MessageLog.flush(5, TimeUnit.SECONDS);
+        FlowMetrics.printSummary();
+        engine.stop();
+    }
+
+    static FlowEngine createFlowEngine(ISCTPClient sctpClient, Constructor<BaseFlow> ctor) {
+        var engine = new FlowEngine(sctpClient, Runtime.getRuntime().availableProcessors(), message ->
+                Console.println(Color.YELLOW, "Unhandled non UE associated message received: %s",
+                        message.ngapMessage.getClass().getSimpleName()));
+        engine.start();
+
+        if (BlockingFlow.class.isAssignableFrom(ctor.getDeclaringClass())) {
+            Console.println(Color.BLUE, "Running flows on %s threads", FlowExecutors.isVirtual() ? "virtual" : "platform");
+        }
+        return engine;
+    }
+
+    /**
+     * Returns a factory creating the flow of the UE with the given index, each UE in its own simulation context.
+     *
+     * @param perUeFile file of the per-UE values of the input (see {@link InputGenerator}), or <code>null</code>
+     */
+    static IntFunction<BaseFlow> createFlowFactory(FlowEngine engine, Constructor<BaseFlow> ctor, Class<?> inputType,
+                                                   String yamlFile, String perUeFile) {
+        var template = new FlowTemplate(ctor.getDeclaringClass(),
+                inputType != null ? readInputParameters("", yamlFile) : null,
+                perUeFile != null ? InputGenerator.parseSpecs(readInputParameters("", perUeFile)) : Map.of());
+        return ueIndex -> template.create(engine.createUeContext(), ueIndex);
+    }
+
+    static LinkedHashMap<String, String> readConfig() {
+        var config = new LinkedHashMap<String, String>();
+        var configYaml = (ImplicitTypedObject) MtsDecoder.decode("config.yaml");
+        for (var e : configYaml.getParameters().entrySet()) {
+            config.put(e.getKey(), String.valueOf(e.getValue()));
+        }
+        return config;
+    }
+
+    static ISCTPClient createSctpClient(Map<String, String> config) throws IOException {
+        String amfHost = config.get("amf.host");
+        int amfPort = Integer.parseInt(config.get("amf.port"));
+        int sctpStreams = config.containsKey("sctp.streams") ? Integer.parseInt(config.get("sctp.streams")) : 0;
+        int sctpIoThreads = config.containsKey("sctp.ioThreads") ? Integer.parseInt(config.get("sctp.ioThreads")) : 0;
+        int sctpSendQueueLimit = config.containsKey("sctp.sendQueueHighWaterMark")
+                ? Integer.parseInt(config.get("sctp.sendQueueHighWaterMark")) : 4096;
+
+        String transport = config.getOrDefault("sctp.transport", "sctp");
+
+        ISCTPClient sctpClient;
+        if (transport.equals("tcp")) {
+            if (Boolean.parseBoolean(config.get("amf.mocked"))) {
+                MockedTCPServer.start(new InetSocketAddress(amfHost, amfPort), new MockedRemote());
+                Console.println(Color.BLUE, "Mocked AMF listening on TCP %s:%s", amfHost, amfPort);
+            }
+            Console.println(Color.BLUE, "Trying to establish TCP connection... (%s:%s)", amfHost, amfPort);
+            sctpClient = new TCPClient(amfHost, amfPort, Constants.NGAP_PROTOCOL_ID, sctpStreams);
+        } else if (transport.equals("mocked")) {
+            var latency = LatencyDistribution.parse(config.getOrDefault("mocked.latency", "none"));
+            Console.println(Color.BLUE, "Using in-process mocked AMF, latency: %s",
+                    config.getOrDefault("mocked.latency", "none"));
+            sctpClient = new MockedSCTPClient(new MockedRemote(), latency);
+        } else {
+            Console.println(Color.BLUE, "Trying to establish SCTP connection... (%s:%s)", amfHost, amfPort);
+            sctpClient = sctpIoThreads > 0
+                    ? new NioSCTPClient(new SCTPEventLoop(sctpIoThreads), amfHost, amfPort, Constants.NGAP_PROTOCOL_ID,
+                    sctpStreams, sctpSendQueueLimit)
+                    : new SCTPClient(amfHost, amfPort, Constants.NGAP_PROTOCOL_ID, sctpStreams);
+        }
+
+        if (config.containsKey("capture.dir")) {
+            int segmentSize = config.containsKey("capture.segmentSize")
+                    ? Integer.parseInt(config.get("capture.segmentSize")) : 64 * 1024 * 1024;
+            int maxSegments = config.containsKey("capture.maxSegments")
+                    ? Integer.parseInt(config.get("capture.maxSegments")) : 0;
+            var pcapWriter = new PcapWriter(Paths.get(config.get("capture.dir")), "ngap", segmentSize, maxSegments,
+                    Constants.NGAP_PROTOCOL_ID, new InetSocketAddress(0), new InetSocketAddress(amfHost, amfPort));
+            sctpClient = new CapturingSCTPClient(sctpClient, pcapWriter);
+            Console.println(Color.BLUE, "Capturing NGAP messages to %s", config.get("capture.dir"));
+        }
+        return sctpClient;
+    }
+
+    static void catchINTSignal(ISCTPClient sctpClient) {
         Signal.handle(new Signal("INT"), new SignalHandler() {
             private final AtomicBoolean inShutdown = new AtomicBoolean();
 
             public void handle(Signal sig) {
                 if (inShutdown.compareAndSet(false, true)) {
                     Console.println(Color.BLUE, "ueransim is shutting down gracefully");
+                    try {
+                        MessageLog.flush(1, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    FlowMetrics.printSummary();
+                    Console.println(Color.BLUE, "SCTP association stats: %s", sctpClient.getStats());
                     sctpClient.close();
                     Console.println(Color.BLUE, "SCTP connection closed");
                     System.exit(1);
@@ -159,16 +310,20 @@ public class FlowTesting {
         });
     }
 
-    private static Constructor<BaseFlow> findConstructor(Class<? extends BaseFlow> selectedType) {
+    static Constructor<BaseFlow> findConstructor(Class<? extends BaseFlow> selectedType) {
         if (selectedType.getDeclaredConstructors().length != 1)
             throw new RuntimeException("zero or multiple constructor found for selected flow");
         return (Constructor<BaseFlow>) selectedType.getDeclaredConstructors()[0];
     }
 
     private static <T> T readInputFile(String key, String path, Class<T> type) {
+        return MtsConstruct.construct(type, readInputParameters(key, path), true);
+    }
+
+    static LinkedHashMap<String, Object> readInputParameters(String key, String path) {
         if (path == null || path.length() == 0)
             throw new RuntimeException("please specify flow input file (" + key + ")");
         var inp = MtsDecoder.decode(path);
-        return MtsConstruct.construct(type, ((ImplicitTypedObject) inp).getParameters(), true);
+        return ((ImplicitTypedObject) inp).getParameters();
     }
 }
@@ -0,0 +1,46 @@
+package tr.havelsan.ueransim;
+
+import tr.havelsan.ueransim.utils.TimingWheel;
+
+/**
+ * A timer started by a flow, e.g. a NAS guard timer like T3510. When it expires, the flow's current state receives
+ * an {@link IncomingMessage} for which {@link IncomingMessage#isExpired(FlowTimer)} returns <code>true</code>.
+ */
+public class FlowTimer {
+    private final String name;
+    private TimingWheel.Timeout timeout;
+    private volatile boolean cancelled;
+
+    FlowTimer(String name) {
+        this.name = name;
+    }
+
+    void setTimeout(TimingWheel.Timeout timeout) {
+        this.timeout = timeout;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Stops the timer. Its expiration is not delivered to the flow after this, even if it was already pending.
+     */
+    public void cancel() {
+        cancelled = true;
+        timeout.cancel();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isExpired() {
+        return timeout.isExpired();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
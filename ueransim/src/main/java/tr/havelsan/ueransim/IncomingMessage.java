@@ -3,25 +3,49 @@ package tr.havelsan.ueransim;
 import fr.marben.asnsdk.japi.spe.ExtSequenceValue;
 import fr.marben.asnsdk.japi.spe.SequenceValue;
 import tr.havelsan.ueransim.nas.core.messages.NasMessage;
+import tr.havelsan.ueransim.nas.core.messages.NasMessageView;
 import tr.havelsan.ueransim.ngap.ngap_pdu_descriptions.NGAP_PDU;
 
 public class IncomingMessage {
     public final NGAP_PDU ngapPdu;
     public final SequenceValue ngapMessage;
-    public final NasMessage nasMessage;
+    // the NAS message is decoded when it is asked for, routing and logging only read its header
+    public final NasMessageView nasView;
+    public final int streamNumber;
+    public final FlowTimer expiredTimer;
 
-    public IncomingMessage(NGAP_PDU ngapPdu, SequenceValue ngapMessage, NasMessage nasMessage) {
+    public IncomingMessage(NGAP_PDU ngapPdu, SequenceValue ngapMessage, NasMessageView nasView, int streamNumber) {
         this.ngapPdu = ngapPdu;
         this.ngapMessage = ngapMessage;
-        this.nasMessage = nasMessage;
+        this.nasView = nasView;
+        this.streamNumber = streamNumber;
+        this.expiredTimer = null;
     }
 
+    /**
+     * Creates the synthetic message delivered to a flow when one of its timers expires.
+     */
+    public IncomingMessage(FlowTimer expiredTimer) {
+        this.ngapPdu = null;
+        this.ngapMessage = null;
+        this.nasView = null;
+        this.streamNumber = -1;
+        this.expiredTimer = expiredTimer;
+    }
+
+    public boolean isExpired(FlowTimer timer) {
+        return expiredTimer != null && expiredTimer == timer;
+    }
+
+    /**
+     * Returns the decoded NAS message if it is of the given type, otherwise <code>null</code> without decoding it.
+     */
     public <T extends NasMessage> T getNasMessage(Class<T> messageType) {
-        if (nasMessage == null) {
+        if (nasView == null) {
             return null;
         }
-        if (messageType.isAssignableFrom(nasMessage.getClass())) {
-            return (T) nasMessage;
+        if (messageType.isAssignableFrom(nasView.getMessageClass())) {
+            return (T) nasView.decode();
         }
         return null;
     }
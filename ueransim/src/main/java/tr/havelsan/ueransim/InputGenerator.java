@@ -0,0 +1,390 @@
+package tr.havelsan.ueransim;
+
+import tr.havelsan.ueransim.mts.ImplicitTypedObject;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates the inputs of many UEs from one template input by copy-and-patch. For each UE only the objects on the
+ * paths of the patched fields are copied, everything else is shared with the template, and no MTS decoding or
+ * constructor matching is done per UE.
+ * <p>
+ * A field is given by its dotted path in the input, e.g. <code>mobileIdentity.schemeOutput</code> or
+ * <code>userLocationInformationNr.tai.tac</code>, and its value for the UE with index <code>i</code> is
+ * <code>start + (i % count) * step</code> (or <code>start + i * step</code> without a count), optionally formatted
+ * with a pattern:
+ * <pre>
+ * ranUeNgapId: { start: 1000 }
+ * mobileIdentity.schemeOutput: { start: 1, pattern: '%09d' }
+ * imei: { start: 0, pattern: '35693803%07d' }
+ * eapAkaInput.KEY: { start: 0, pattern: '465b5ce8b199b49faa5f0a2e%08x' }
+ * userLocationInformationNr.nrCgi.nrCellIdentity: { start: 0, count: 16, pattern: '01b2c3d4%02x' }
+ * </pre>
+ * Numeric fields take the value itself. Other fields take the formatted value if there is a pattern and the value
+ * otherwise, through a constructor of the field type taking a <code>String</code> or a <code>long</code> (e.g.
+ * hex strings for octet types).
+ */
+public class InputGenerator<T> {
+    private final T template;
+    private final Node root;
+
+    public InputGenerator(T template, Map<String, ValueSpec> specs) {
+        this.template = template;
+        this.root = new Node(template.getClass());
+        for (var entry : specs.entrySet()) {
+            root.add(entry.getKey().split("\\."), 0, entry.getValue(), template);
+        }
+        root.prepare();
+    }
+
+    /**
+     * Parses specs decoded by MTS, given as <code>{ start, step, count, pattern }</code> objects with all keys
+     * being optional.
+     */
+    public static Map<String, ValueSpec> parseSpecs(Map<String, Object> specs) {
+        var parsed = new LinkedHashMap<String, ValueSpec>();
+        for (var entry : specs.entrySet()) {
+            if (!(entry.getValue() instanceof ImplicitTypedObject))
+                throw new RuntimeException("invalid per-UE value: " + entry.getKey());
+            var spec = ((ImplicitTypedObject) entry.getValue()).getParameters();
+            for (var key : spec.keySet()) {
+                if (!key.equals("start") && !key.equals("step") && !key.equals("count") && !key.equals("pattern"))
+                    throw new RuntimeException("unrecognized per-UE value key: " + entry.getKey() + "." + key);
+            }
+            parsed.put(entry.getKey(), new ValueSpec(longValue(spec, "start", 0), longValue(spec, "step", 1),
+                    longValue(spec, "count", 0), spec.containsKey("pattern") ? String.valueOf(spec.get("pattern")) : null));
+        }
+        return parsed;
+    }
+
+    private static long longValue(Map<String, Object> spec, String key, long defaultValue) {
+        var value = spec.get(key);
+        if (value == null)
+            return defaultValue;
+        if (!(value instanceof Number))
+            throw new RuntimeException("per-UE value " + key + " must be a number: " + value);
+        return ((Number) value).longValue();
+    }
+
+    public T getTemplate() {
+        return template;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T create(int ueIndex) {
+        if (root.children.isEmpty())
+            return template;
+        try {
+            return (T) root.patch(template, ueIndex);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //======================================================================================================
+    //                                             VALUES
+    //======================================================================================================
+
+    public static class ValueSpec {
+        public final long start;
+        public final long step;
+        public final long count;
+        public final String pattern;
+
+        public ValueSpec(long start, long step, long count, String pattern) {
+            if (count < 0) throw new IllegalArgumentException("count must not be negative");
+            this.start = start;
+            this.step = step;
+            this.count = count;
+            this.pattern = pattern;
+        }
+
+        public long valueAt(int ueIndex) {
+            return start + (count > 0 ? ueIndex % count : ueIndex) * step;
+        }
+    }
+
+    //======================================================================================================
+    //                                            PATCHING
+    //======================================================================================================
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    /**
+     * A field on the path of a patched field, or the input itself for the root.
+     */
+    private static class Node {
+        final Class<?> type;
+        final LinkedHashMap<String, Node> children;
+        MethodHandle getter;
+        ValueSpec spec;
+        MethodHandle converter;
+        Copier copier;
+        int[] slots;
+
+        Node(Class<?> type) {
+            this.type = type;
+            this.children = new LinkedHashMap<>();
+        }
+
+        /**
+         * Adds the given path below this node. The nodes take the classes of the template's values, as a field may
+         * be declared with a base type (e.g. <code>mobileIdentity</code>).
+         */
+        void add(String[] path, int depth, ValueSpec spec, Object value) {
+            if (this.spec != null)
+                throw new RuntimeException("per-UE value given for a field and its sub fields: " + String.join(".", path));
+
+            Field field;
+            try {
+                field = type.getField(path[depth]);
+            } catch (NoSuchFieldException e) {
+                throw new RuntimeException("no public field " + path[depth] + " in " + type.getSimpleName());
+            }
+            if (Modifier.isStatic(field.getModifiers()))
+                throw new RuntimeException("static field cannot be patched: " + String.join(".", path));
+
+            Object fieldValue;
+            try {
+                fieldValue = value != null ? field.get(value) : null;
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+
+            var child = children.get(field.getName());
+            if (child == null) {
+                child = new Node(fieldValue != null ? fieldValue.getClass() : field.getType());
+                child.getter = getter(field);
+                children.put(field.getName(), child);
+            }
+
+            if (depth == path.length - 1) {
+                if (child.spec != null || !child.children.isEmpty())
+                    throw new RuntimeException("per-UE value given more than once: " + String.join(".", path));
+                child.spec = spec;
+                child.converter = converter(field.getType(), spec.pattern != null);
+            } else {
+                child.add(path, depth + 1, spec, fieldValue);
+            }
+        }
+
+        void prepare() {
+            if (children.isEmpty())
+                return;
+            copier = Copier.of(type);
+            slots = new int[children.size()];
+            int i = 0;
+            for (var entry : children.entrySet()) {
+                slots[i++] = copier.slotOf(entry.getKey());
+                entry.getValue().prepare();
+            }
+        }
+
+        Object patch(Object original, int ueIndex) throws Throwable {
+            if (original == null)
+                throw new RuntimeException("template has no value to patch in " + type.getSimpleName());
+
+            var values = new Object[slots.length];
+            int i = 0;
+            for (var child : children.values()) {
+                if (child.spec != null) {
+                    long value = child.spec.valueAt(ueIndex);
+                    values[i++] = child.spec.pattern != null
+                            ? (Object) child.converter.invoke(String.format(child.spec.pattern, value))
+                            : (Object) child.converter.invoke(value);
+                } else {
+                    values[i++] = child.patch(child.getter.invoke(original), ueIndex);
+                }
+            }
+            return copier.copy(original, slots, values);
+        }
+
+        private static MethodHandle getter(Field field) {
+            try {
+                return LOOKUP.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Returns a handle converting a formatted <code>String</code> or a <code>long</code> value to the given
+         * type, as an <code>Object</code>.
+         */
+        private static MethodHandle converter(Class<?> type, boolean formatted) {
+            var from = formatted ? String.class : long.class;
+            var to = MethodType.methodType(Object.class, from);
+
+            var boxed = Primitives.BOXES.getOrDefault(type, type);
+            if (!formatted && Number.class.isAssignableFrom(boxed) && Primitives.NARROWERS.containsKey(boxed))
+                return Primitives.NARROWERS.get(boxed).asType(to);
+            if (type == String.class) {
+                return formatted ? MethodHandles.identity(String.class).asType(to)
+                        : Primitives.LONG_TO_STRING.asType(to);
+            }
+            if (formatted && Number.class.isAssignableFrom(boxed))
+                throw new RuntimeException("numeric field " + type.getSimpleName() + " cannot have a pattern");
+
+            try {
+                return LOOKUP.findConstructor(type, MethodType.methodType(void.class, from)).asType(to);
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                if (!formatted) {
+                    try {
+                        return MethodHandles.filterArguments(
+                                LOOKUP.findConstructor(type, MethodType.methodType(void.class, int.class)),
+                                0, Primitives.LONG_TO_INT).asType(to);
+                    } catch (NoSuchMethodException | IllegalAccessException ignored) {
+                    }
+                }
+                throw new RuntimeException("per-UE values of type " + type.getSimpleName() + " need a "
+                        + (formatted ? "String" : "long or int") + " constructor");
+            }
+        }
+    }
+
+    /**
+     * Makes a shallow copy of an object with some of its fields replaced.
+     */
+    private static class Copier {
+        private final List<String> slotNames;
+        private final MethodHandle[] getters;
+        private final MethodHandle constructor; // (Object[])Object, taking the values of all slots
+        private final MethodHandle[] setters; // only if the object is copied by setting its fields
+
+        private Copier(List<String> slotNames, MethodHandle[] getters, MethodHandle constructor, MethodHandle[] setters) {
+            this.slotNames = slotNames;
+            this.getters = getters;
+            this.constructor = constructor;
+            this.setters = setters;
+        }
+
+        /**
+         * Copies an object with only public mutable fields by assigning them to a new instance, or an immutable
+         * object through the public constructor taking exactly its fields (matched by parameter name, as MTS does).
+         */
+        static Copier of(Class<?> type) {
+            var fields = instanceFields(type);
+            var names = new ArrayList<String>();
+            var getters = new MethodHandle[fields.size()];
+            try {
+                boolean mutable = true;
+                for (int i = 0; i < fields.size(); i++) {
+                    var field = fields.get(i);
+                    mutable &= Modifier.isPublic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers());
+                    names.add(field.getName());
+                }
+
+                if (mutable) {
+                    var setters = new MethodHandle[fields.size()];
+                    for (int i = 0; i < fields.size(); i++) {
+                        getters[i] = Node.getter(fields.get(i));
+                        setters[i] = LOOKUP.unreflectSetter(fields.get(i))
+                                .asType(MethodType.methodType(void.class, Object.class, Object.class));
+                    }
+                    var constructor = LOOKUP.findConstructor(type, MethodType.methodType(void.class))
+                            .asType(MethodType.methodType(Object.class));
+                    return new Copier(names, getters, constructor, setters);
+                }
+
+                var byName = new HashMap<String, Field>();
+                for (var field : fields) {
+                    byName.put(field.getName(), field);
+                }
+                for (var constructor : type.getConstructors()) {
+                    var params = constructor.getParameters();
+                    if (params.length != fields.size())
+                        continue;
+
+                    var slotNames = new ArrayList<String>();
+                    for (var param : params) {
+                        var field = byName.get(param.getName());
+                        if (field == null || field.getType() != param.getType() || !Modifier.isPublic(field.getModifiers()))
+                            break;
+                        getters[slotNames.size()] = Node.getter(field);
+                        slotNames.add(param.getName());
+                    }
+                    if (slotNames.size() == params.length) {
+                        var handle = LOOKUP.unreflectConstructor(constructor)
+                                .asSpreader(Object[].class, params.length)
+                                .asType(MethodType.methodType(Object.class, Object[].class));
+                        return new Copier(slotNames, getters, handle, null);
+                    }
+                }
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+            throw new RuntimeException(type.getSimpleName() + " cannot be copied, it needs public fields and either"
+                    + " a public no-arg constructor or a public constructor taking all fields");
+        }
+
+        private static List<Field> instanceFields(Class<?> type) {
+            var fields = new ArrayList<Field>();
+            for (var t = type; t != null && t != Object.class; t = t.getSuperclass()) {
+                for (var field : t.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        fields.add(field);
+                    }
+                }
+            }
+            return fields;
+        }
+
+        int slotOf(String fieldName) {
+            return slotNames.indexOf(fieldName);
+        }
+
+        Object copy(Object original, int[] slots, Object[] values) throws Throwable {
+            var all = new Object[getters.length];
+            for (int i = 0; i < getters.length; i++) {
+                all[i] = (Object) getters[i].invokeExact(original);
+            }
+            for (int i = 0; i < slots.length; i++) {
+                all[slots[i]] = values[i];
+            }
+
+            if (setters == null)
+                return (Object) constructor.invokeExact(all);
+
+            var copy = (Object) constructor.invokeExact();
+            for (int i = 0; i < setters.length; i++) {
+                setters[i].invokeExact(copy, all[i]);
+            }
+            return copy;
+        }
+    }
+
+    private static class Primitives {
+        static final Map<Class<?>, Class<?>> BOXES = Map.of(long.class, Long.class, int.class, Integer.class,
+                short.class, Short.class, byte.class, Byte.class);
+        static final Map<Class<?>, MethodHandle> NARROWERS = new HashMap<>();
+        static final MethodHandle LONG_TO_STRING;
+        static final MethodHandle LONG_TO_INT;
+
+        static {
+            try {
+                var lookup = MethodHandles.lookup();
+                LONG_TO_STRING = lookup.findStatic(Long.class, "toString", MethodType.methodType(String.class, long.class));
+                LONG_TO_INT = lookup.findStatic(Math.class, "toIntExact", MethodType.methodType(int.class, long.class));
+                NARROWERS.put(Long.class, MethodHandles.identity(long.class));
+                NARROWERS.put(Integer.class, LONG_TO_INT);
+                NARROWERS.put(Short.class, MethodHandles.explicitCastArguments(MethodHandles.identity(short.class),
+                        MethodType.methodType(short.class, long.class)));
+                NARROWERS.put(Byte.class, MethodHandles.explicitCastArguments(MethodHandles.identity(byte.class),
+                        MethodType.methodType(byte.class, long.class)));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package tr.havelsan.ueransim;
+
+import tr.havelsan.ueransim.load.ArrivalSchedule;
+import tr.havelsan.ueransim.load.LoadGenerator;
+import tr.havelsan.ueransim.mts.MtsInitializer;
+import tr.havelsan.ueransim.utils.Color;
+import tr.havelsan.ueransim.utils.Console;
+import tr.havelsan.ueransim.utils.Utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts a flow at a target arrival rate against the AMF in config.yaml.
+ * <p>
+ * Usage: -f flowName [-y input.yaml [-u perUe.yaml]] -r ratePerSec -d durationSec [-a constant|poisson]
+ * [-i rateIncrement -p stepSec [-m maxRate]] [-w drainTimeoutSec] [-h histogramIntervalSec]
+ */
+public class LoadTesting {
+
+    public static void main(String[] args) throws Exception {
+        MtsInitializer.initMts();
+
+        String flowName = Utils.getCommandLineOption(args, "-f");
+        String rate = Utils.getCommandLineOption(args, "-r");
+        String duration = Utils.getCommandLineOption(args, "-d");
+        if (flowName == null || rate == null || duration == null) {
+            Console.println(Color.RED, "Flow, rate and duration must be given with -f, -r and -d");
+            System.exit(1);
+        }
+
+        var type = FlowScanner.getFlowType(flowName);
+        if (type == null) {
+            throw new RuntimeException("Flow not found: " + flowName);
+        }
+        var ctor = FlowTesting.findConstructor(type);
+        var inputType = ctor.getParameterCount() > 1 ? ctor.getParameterTypes()[1] : null;
+
+        var schedule = createSchedule(args, Double.parseDouble(rate));
+        int drainTimeout = Integer.parseInt(option(args, "-w", "60"));
+
+        var config = FlowTesting.readConfig();
+        MessageLog.configure(config);
+
+        var sctpClient = FlowTesting.createSctpClient(config);
+        sctpClient.start();
+        FlowTesting.catchINTSignal(sctpClient);
+
+        var engine = FlowTesting.createFlowEngine(sctpClient, ctor);
+        var generator = new LoadGenerator(engine, schedule,
+                FlowTesting.createFlowFactory(engine, ctor, inputType, Utils.getCommandLineOption(args, "-y"),
+                        Utils.getCommandLineOption(args, "-u")));
+
+        String histogramInterval = Utils.getCommandLineOption(args, "-h");
+        if (histogramInterval != null) {
+            FlowMetrics.startPeriodicDump(Long.parseLong(histogramInterval), TimeUnit.SECONDS);
+        }
+
+        boolean drained = generator.run(Long.parseLong(duration), drainTimeout, TimeUnit.SECONDS);
+
+        FlowMetrics.stopPeriodicDump();
+        MessageLog.flush(5, TimeUnit.SECONDS);
+        FlowMetrics.printSummary();
+
+        engine.stop();
+        Console.println(Color.BLUE, "SCTP association stats: %s", sctpClient.getStats());
+        sctpClient.close();
+        System.exit(drained ? 0 : 1);
+    }
+
+    private static ArrivalSchedule createSchedule(String[] args, double rate) {
+        String increment = Utils.getCommandLineOption(args, "-i");
+
+        ArrivalSchedule schedule;
+        if (increment != null) {
+            long step = TimeUnit.SECONDS.toNanos(Long.parseLong(option(args, "-p", "1")));
+            schedule = ArrivalSchedule.stepped(rate, Double.parseDouble(increment), step,
+                    Double.parseDouble(option(args, "-m", "0")));
+        } else {
+            schedule = ArrivalSchedule.constant(rate);
+        }
+
+        String arrivals = option(args, "-a", "constant");
+        if (arrivals.equals("poisson")) {
+            schedule = ArrivalSchedule.poisson(schedule);
+        } else if (!arrivals.equals("constant")) {
+            throw new RuntimeException("Unknown arrival type: " + arrivals);
+        }
+        return schedule;
+    }
+
+    private static String option(String[] args, String flag, String defaultValue) {
+        String value = Utils.getCommandLineOption(args, flag);
+        return value != null ? value : defaultValue;
+    }
+}
@@ -0,0 +1,172 @@
+package tr.havelsan.ueransim;
+
+import tr.havelsan.ueransim.utils.Color;
+import tr.havelsan.ueransim.utils.Console;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Console log of the flows, written by a background thread. A log record is a task which formats its message when
+ * it is written, so the XER and JSON rendering of PDUs is done neither on the flow's thread nor for records which
+ * are never written. If the writer falls behind, new records are dropped and counted instead of blocking the flows.
+ * <p>
+ * Configured from config.yaml:
+ * <pre>
+ * log.level: full                  # off, summary (message names only) or full (message contents)
+ * log.sampleRate: 1                # messages of 1 in n UEs are logged
+ * log.sampleRate.RegistrationFlow: 1000
+ * log.queueSize: 65536
+ * </pre>
+ * A UE is sampled by its index, so all procedures of a sampled UE are logged. Flow results are logged for all UEs
+ * unless the level is off.
+ */
+public class MessageLog {
+    public enum Level {
+        OFF,
+        SUMMARY,
+        FULL,
+    }
+
+    private static volatile Level level = Level.FULL;
+    private static volatile int defaultSampleRate = 1;
+    private static final ConcurrentHashMap<String, Integer> sampleRates = new ConcurrentHashMap<>();
+
+    // flows without a UE index are sampled by their order of creation
+    private static final ConcurrentHashMap<Class<?>, AtomicLong> flowCounters = new ConcurrentHashMap<>();
+
+    private static volatile BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(65536);
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile Thread writer;
+
+    public static synchronized void configure(Map<String, String> config) {
+        if (config.containsKey("log.level")) {
+            level = Level.valueOf(config.get("log.level").toUpperCase());
+        }
+        if (config.containsKey("log.sampleRate")) {
+            defaultSampleRate = parseSampleRate(config.get("log.sampleRate"));
+        }
+        for (var entry : config.entrySet()) {
+            if (entry.getKey().startsWith("log.sampleRate.")) {
+                sampleRates.put(entry.getKey().substring("log.sampleRate.".length()), parseSampleRate(entry.getValue()));
+            }
+        }
+        if (config.containsKey("log.queueSize")) {
+            if (writer != null) throw new RuntimeException("log queue size must be set before logging");
+            queue = new ArrayBlockingQueue<>(Integer.parseInt(config.get("log.queueSize")));
+        }
+    }
+
+    private static int parseSampleRate(String value) {
+        int rate = Integer.parseInt(value);
+        if (rate < 1) throw new RuntimeException("log sample rate must be positive: " + value);
+        return rate;
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static void setLevel(Level level) {
+        MessageLog.level = level;
+    }
+
+    /**
+     * Returns the level at which the messages of the given flow are logged.
+     *
+     * @param ueIndex index of the flow's UE, or a negative value if the UE has none
+     */
+    static Level messageLevel(Class<?> flowType, int ueIndex) {
+        var level = MessageLog.level;
+        if (level == Level.OFF)
+            return level;
+
+        int rate = sampleRates.getOrDefault(flowType.getSimpleName(), defaultSampleRate);
+        if (rate == 1)
+            return level;
+
+        long key = ueIndex;
+        if (key < 0) {
+            key = flowCounters.computeIfAbsent(flowType, type -> new AtomicLong()).getAndIncrement();
+        }
+        return key % rate == 0 ? level : Level.OFF;
+    }
+
+    /**
+     * Queues a record if the given level is enabled.
+     */
+    static void log(Level recordLevel, Runnable record) {
+        if (recordLevel.compareTo(level) > 0 || level == Level.OFF)
+            return;
+        ensureWriter();
+        if (!queue.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    static void log(Level recordLevel, Color color, String format, Object... args) {
+        log(recordLevel, () -> Console.println(color, format, args));
+    }
+
+    /**
+     * Waits until the records queued so far are written.
+     *
+     * @return <code>false</code> if the timeout elapsed first
+     */
+    public static boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        if (writer == null)
+            return true;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        var written = new CountDownLatch(1);
+        if (!queue.offer(written::countDown, timeout, unit))
+            return false;
+        return written.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    public static long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private static void ensureWriter() {
+        if (writer != null)
+            return;
+        synchronized (MessageLog.class) {
+            if (writer != null)
+                return;
+            var thread = new Thread(MessageLog::writeLoop, "message-log");
+            thread.setDaemon(true);
+            thread.start();
+            writer = thread;
+        }
+    }
+
+    private static void writeLoop() {
+        long reportedDrops = 0;
+        while (true) {
+            Runnable record;
+            try {
+                record = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            long drops = dropped.get();
+            if (drops != reportedDrops) {
+                Console.println(Color.YELLOW, "%d log records dropped, the log writer is behind",
+                        drops - reportedDrops);
+                reportedDrops = drops;
+            }
+
+            try {
+                record.run();
+            } catch (Exception e) {
+                Console.println(Color.RED, "log record could not be written: %s", e);
+            }
+        }
+    }
+}
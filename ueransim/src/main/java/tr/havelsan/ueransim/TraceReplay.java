@@ -0,0 +1,59 @@
+package tr.havelsan.ueransim;
+
+import tr.havelsan.ueransim.core.Constants;
+import tr.havelsan.ueransim.mts.MtsInitializer;
+import tr.havelsan.ueransim.replay.TraceReplayer;
+import tr.havelsan.ueransim.sctp.PcapReader;
+import tr.havelsan.ueransim.utils.Color;
+import tr.havelsan.ueransim.utils.Console;
+import tr.havelsan.ueransim.utils.Utils;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a captured NGAP session against the AMF in config.yaml.
+ * <p>
+ * Usage: -t trace.pcap [-n ueCount] [-s speed|max] [-i ueStartIntervalMs] [-r firstRanUeNgapId] [-w timeoutSec]
+ */
+public class TraceReplay {
+
+    public static void main(String[] args) throws Exception {
+        MtsInitializer.initMts();
+
+        String tracePath = Utils.getCommandLineOption(args, "-t");
+        if (tracePath == null) {
+            Console.println(Color.RED, "Trace file must be given with -t");
+            System.exit(1);
+        }
+
+        int ueCount = intOption(args, "-n", 1);
+        String speedOption = Utils.getCommandLineOption(args, "-s");
+        double speed = speedOption == null ? 1 : speedOption.equals("max") ? 0 : Double.parseDouble(speedOption);
+        int ueStartInterval = intOption(args, "-i", 0);
+        int firstRanUeNgapId = intOption(args, "-r", 1);
+        int timeout = intOption(args, "-w", 600);
+
+        var trace = PcapReader.read(Paths.get(tracePath), Constants.NGAP_PROTOCOL_ID);
+
+        var sctpClient = FlowTesting.createSctpClient(FlowTesting.readConfig());
+        var replayer = new TraceReplayer(sctpClient, trace, speed);
+        Console.println(Color.BLUE, "%d NGAP messages of %d UEs loaded from %s", trace.size(),
+                replayer.getRecordedUeCount(), tracePath);
+
+        sctpClient.start();
+        FlowTesting.catchINTSignal(sctpClient);
+
+        boolean completed = replayer.replay(ueCount, ueStartInterval, TimeUnit.MILLISECONDS, firstRanUeNgapId,
+                timeout, TimeUnit.SECONDS);
+
+        Console.println(Color.BLUE, "SCTP association stats: %s", sctpClient.getStats());
+        sctpClient.close();
+        System.exit(completed ? 0 : 1);
+    }
+
+    private static int intOption(String[] args, String flag, int defaultValue) {
+        String value = Utils.getCommandLineOption(args, flag);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+}
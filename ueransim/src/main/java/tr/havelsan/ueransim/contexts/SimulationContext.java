@@ -1,38 +1,101 @@
 package tr.havelsan.ueransim.contexts;
 
+import tr.havelsan.ueransim.core.Constants;
 import tr.havelsan.ueransim.nas.NasSecurityContext;
 import tr.havelsan.ueransim.sctp.ISCTPClient;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class SimulationContext {
     private final ISCTPClient sctpClient;
-    private final int streamNumber;
+    private final UeContextStore ueContextStore;
+    private final int ueIndex;
+    private final AtomicInteger references;
     private NasSecurityContext nasSecurityContext;
     private long amfUeNgapId;
 
-    public SimulationContext(ISCTPClient sctpClient, int streamNumber) {
+    public SimulationContext(ISCTPClient sctpClient) {
         this.sctpClient = sctpClient;
+        this.ueContextStore = null;
+        this.ueIndex = UeContextStore.NOT_FOUND;
+        this.references = null;
         this.nasSecurityContext = null;
         this.amfUeNgapId = 0;
-        this.streamNumber = streamNumber;
+    }
+
+    /**
+     * Creates a context whose UE state is kept in a newly allocated entry of the given store. The entry is released
+     * when the last reference taken with {@link #retain()} is released.
+     */
+    public SimulationContext(ISCTPClient sctpClient, UeContextStore ueContextStore) {
+        this.sctpClient = sctpClient;
+        this.ueContextStore = ueContextStore;
+        this.ueIndex = ueContextStore.allocate();
+        this.references = new AtomicInteger();
+    }
+
+    /**
+     * Keeps the store entry of the UE until a matching {@link #release()}. The flow engine holds a reference while
+     * a flow of this context is running; callers running several flows in sequence on the context hold one
+     * in between.
+     */
+    public void retain() {
+        if (ueContextStore != null) {
+            references.incrementAndGet();
+        }
+    }
+
+    public void release() {
+        if (ueContextStore != null && references.decrementAndGet() == 0) {
+            ueContextStore.release(ueIndex);
+        }
     }
 
     public ISCTPClient getSctpClient() {
         return sctpClient;
     }
 
+    /**
+     * Returns the store keeping the UE state of this context, or <code>null</code> if it is kept in this object.
+     */
+    public UeContextStore getUeContextStore() {
+        return ueContextStore;
+    }
+
+    public int getUeIndex() {
+        return ueIndex;
+    }
+
     public NasSecurityContext getNasSecurityContext() {
+        if (ueContextStore != null)
+            return ueContextStore.getSecurityContext(ueIndex);
         return nasSecurityContext;
     }
 
     public long getAmfUeNgapId() {
+        if (ueContextStore != null)
+            return ueContextStore.getAmfUeNgapId(ueIndex);
         return amfUeNgapId;
     }
 
     public void setAmfUeNgapId(long amfUeNgapId) {
-        this.amfUeNgapId = amfUeNgapId;
+        if (ueContextStore != null) {
+            ueContextStore.setAmfUeNgapId(ueIndex, amfUeNgapId);
+        } else {
+            this.amfUeNgapId = amfUeNgapId;
+        }
     }
 
-    public int getStreamNumber() {
-        return streamNumber;
+    /**
+     * Returns the SCTP stream for an outgoing message. Non UE associated signalling is sent on stream 0,
+     * and UE associated signalling of a UE is always sent on the same one of the remaining streams.
+     *
+     * @param ranUeNgapId RAN-UE-NGAP-ID of the message, or <code>null</code> for non UE associated signalling
+     */
+    public int getStreamNumber(Long ranUeNgapId) {
+        int streams = sctpClient.getOutboundStreams();
+        if (ranUeNgapId == null || streams <= 1)
+            return Constants.NON_UE_ASSOCIATED_STREAM_NUMBER;
+        return 1 + (int) Long.remainderUnsigned(ranUeNgapId, streams - 1);
     }
 }
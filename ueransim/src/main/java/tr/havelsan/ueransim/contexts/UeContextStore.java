@@ -0,0 +1,414 @@
+package tr.havelsan.ueransim.contexts;
+
+import tr.havelsan.ueransim.nas.NasSecurityContext;
+import tr.havelsan.ueransim.utils.LongIntHashMap;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Registry of UE contexts, kept as parallel arrays indexed by a UE index instead of one object per UE. UEs can be
+ * looked up in O(1) by RAN-UE-NGAP-ID, AMF-UE-NGAP-ID and 5G-S-TMSI through primitive open addressing maps.
+ * <p>
+ * Identities are indexed only while they are set, and 0 means "not set" for all of them. Identities, owners and
+ * lookups are safe from any thread; the other fields of a UE are meant to be accessed by the flow owning the UE,
+ * while other UEs are added or looked up concurrently.
+ */
+public class UeContextStore {
+    public static final int NOT_FOUND = LongIntHashMap.NO_VALUE;
+
+    public static final byte STATE_FREE = 0;
+    public static final byte STATE_DEREGISTERED = 1;
+    public static final byte STATE_REGISTERED = 2;
+
+    // Growing the arrays takes the write lock, reading or writing a UE's fields takes the read lock.
+    private final StampedLock lock;
+
+    private final LongIntHashMap byRanUeNgapId;
+    private final LongIntHashMap byAmfUeNgapId;
+    private final LongIntHashMap by5gSTmsi;
+
+    private long[] ranUeNgapIds;
+    private long[] amfUeNgapIds;
+    private long[] fiveGSTmsis;
+    private byte[] states;
+    private int[] uplinkNasCounts;
+    private int[] downlinkNasCounts;
+    private NasSecurityContext[] securityContexts;
+    private Object[] owners;
+
+    private int[] freeIndexes;
+    private int freeCount;
+    private int highWaterMark;
+    private int size;
+
+    public UeContextStore(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        this.lock = new StampedLock();
+        this.byRanUeNgapId = new LongIntHashMap(capacity);
+        this.byAmfUeNgapId = new LongIntHashMap(capacity);
+        this.by5gSTmsi = new LongIntHashMap(capacity);
+        this.ranUeNgapIds = new long[capacity];
+        this.amfUeNgapIds = new long[capacity];
+        this.fiveGSTmsis = new long[capacity];
+        this.states = new byte[capacity];
+        this.uplinkNasCounts = new int[capacity];
+        this.downlinkNasCounts = new int[capacity];
+        this.securityContexts = new NasSecurityContext[capacity];
+        this.owners = new Object[capacity];
+        this.freeIndexes = new int[16];
+    }
+
+    //======================================================================================================
+    //                                           LIFECYCLE
+    //======================================================================================================
+
+    /**
+     * Adds a deregistered UE without any identities and returns its index.
+     */
+    public int allocate() {
+        long stamp = lock.writeLock();
+        try {
+            int ue;
+            if (freeCount > 0) {
+                ue = freeIndexes[--freeCount];
+            } else {
+                if (highWaterMark == states.length) {
+                    grow(states.length << 1);
+                }
+                ue = highWaterMark++;
+            }
+            states[ue] = STATE_DEREGISTERED;
+            size++;
+            return ue;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the UE and its identities. The index may be returned by a later {@link #allocate()}.
+     */
+    public void release(int ue) {
+        long stamp = lock.writeLock();
+        try {
+            checkAllocated(ue);
+            unindex(byRanUeNgapId, ranUeNgapIds[ue], ue);
+            unindex(byAmfUeNgapId, amfUeNgapIds[ue], ue);
+            unindex(by5gSTmsi, fiveGSTmsis[ue], ue);
+
+            ranUeNgapIds[ue] = 0;
+            amfUeNgapIds[ue] = 0;
+            fiveGSTmsis[ue] = 0;
+            states[ue] = STATE_FREE;
+            uplinkNasCounts[ue] = 0;
+            downlinkNasCounts[ue] = 0;
+            securityContexts[ue] = null;
+            owners[ue] = null;
+
+            if (freeCount == freeIndexes.length) {
+                freeIndexes = Arrays.copyOf(freeIndexes, freeCount << 1);
+            }
+            freeIndexes[freeCount++] = ue;
+            size--;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //======================================================================================================
+    //                                            LOOKUP
+    //======================================================================================================
+
+    public int findByRanUeNgapId(long ranUeNgapId) {
+        return find(byRanUeNgapId, ranUeNgapId);
+    }
+
+    public int findByAmfUeNgapId(long amfUeNgapId) {
+        return find(byAmfUeNgapId, amfUeNgapId);
+    }
+
+    public int findBy5gSTmsi(long fiveGSTmsi) {
+        return find(by5gSTmsi, fiveGSTmsi);
+    }
+
+    private int find(LongIntHashMap index, long id) {
+        if (id == 0)
+            return NOT_FOUND;
+        // the maps are modified under the write lock only
+        long stamp = lock.readLock();
+        try {
+            return index.get(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //======================================================================================================
+    //                                          IDENTITIES
+    //======================================================================================================
+
+    public long getRanUeNgapId(int ue) {
+        long stamp = lock.readLock();
+        try {
+            return ranUeNgapIds[ue];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void setRanUeNgapId(int ue, long ranUeNgapId) {
+        long stamp = lock.writeLock();
+        try {
+            checkAllocated(ue);
+            reindex(byRanUeNgapId, ranUeNgapIds[ue], ranUeNgapId, ue);
+            ranUeNgapIds[ue] = ranUeNgapId;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public long getAmfUeNgapId(int ue) {
+        long stamp = lock.readLock();
+        try {
+            return amfUeNgapIds[ue];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void setAmfUeNgapId(int ue, long amfUeNgapId) {
+        long stamp = lock.readLock();
+        try {
+            // the usual case of every inbound PDU repeating the known id does not need the write lock
+            if (amfUeNgapIds[ue] == amfUeNgapId)
+                return;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        stamp = lock.writeLock();
+        try {
+            checkAllocated(ue);
+            reindex(byAmfUeNgapId, amfUeNgapIds[ue], amfUeNgapId, ue);
+            amfUeNgapIds[ue] = amfUeNgapId;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Sets the AMF-UE-NGAP-ID of the UE only if the index is still allocated to the UE having the RAN-UE-NGAP-ID and
+     * the owner, i.e. it has not been released or reused since it was looked up.
+     *
+     * @return <code>false</code> if the UE is gone and the id was not set
+     */
+    public boolean setAmfUeNgapIdIf(int ue, long ranUeNgapId, Object owner, long amfUeNgapId) {
+        long stamp = lock.readLock();
+        try {
+            if (!isCurrent(ue, ranUeNgapId, owner))
+                return false;
+            if (amfUeNgapIds[ue] == amfUeNgapId)
+                return true;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        stamp = lock.writeLock();
+        try {
+            if (!isCurrent(ue, ranUeNgapId, owner))
+                return false;
+            reindex(byAmfUeNgapId, amfUeNgapIds[ue], amfUeNgapId, ue);
+            amfUeNgapIds[ue] = amfUeNgapId;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public long get5gSTmsi(int ue) {
+        long stamp = lock.readLock();
+        try {
+            return fiveGSTmsis[ue];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void set5gSTmsi(int ue, long fiveGSTmsi) {
+        long stamp = lock.writeLock();
+        try {
+            checkAllocated(ue);
+            reindex(by5gSTmsi, fiveGSTmsis[ue], fiveGSTmsi, ue);
+            fiveGSTmsis[ue] = fiveGSTmsi;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //======================================================================================================
+    //                                             OWNER
+    //======================================================================================================
+
+    /**
+     * Returns the object handling the inbound messages of the UE (e.g. its running flow), or <code>null</code>.
+     */
+    public Object getOwner(int ue) {
+        // the owner is read by the receiver thread and written by the flows, so it is written under the write lock
+        long stamp = lock.readLock();
+        try {
+            return owners[ue];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void setOwner(int ue, Object owner) {
+        long stamp = lock.writeLock();
+        try {
+            checkAllocated(ue);
+            owners[ue] = owner;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Clears the owner of the UE if it is still the given object.
+     */
+    public void clearOwner(int ue, Object owner) {
+        long stamp = lock.writeLock();
+        try {
+            if (owners[ue] == owner) {
+                owners[ue] = null;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //======================================================================================================
+    //                                             STATE
+    //======================================================================================================
+
+    public byte getState(int ue) {
+        long stamp = lock.readLock();
+        try {
+            return states[ue];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void setState(int ue, byte state) {
+        if (state == STATE_FREE) throw new IllegalArgumentException("use release() to free a UE");
+        long stamp = lock.readLock();
+        try {
+            checkAllocated(ue);
+            states[ue] = state;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int getUplinkNasCount(int ue) {
+        long stamp = lock.readLock();
+        try {
+            return uplinkNasCounts[ue];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void setUplinkNasCount(int ue, int count) {
+        long stamp = lock.readLock();
+        try {
+            uplinkNasCounts[ue] = count;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int getDownlinkNasCount(int ue) {
+        long stamp = lock.readLock();
+        try {
+            return downlinkNasCounts[ue];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void setDownlinkNasCount(int ue, int count) {
+        long stamp = lock.readLock();
+        try {
+            downlinkNasCounts[ue] = count;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public NasSecurityContext getSecurityContext(int ue) {
+        long stamp = lock.readLock();
+        try {
+            return securityContexts[ue];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void setSecurityContext(int ue, NasSecurityContext securityContext) {
+        long stamp = lock.readLock();
+        try {
+            securityContexts[ue] = securityContext;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //======================================================================================================
+    //                                           INTERNAL
+    //======================================================================================================
+
+    private void checkAllocated(int ue) {
+        if (ue < 0 || ue >= highWaterMark || states[ue] == STATE_FREE)
+            throw new IllegalArgumentException("UE index is not allocated: " + ue);
+    }
+
+    private boolean isCurrent(int ue, long ranUeNgapId, Object owner) {
+        return ue >= 0 && ue < highWaterMark && states[ue] != STATE_FREE
+                && ranUeNgapIds[ue] == ranUeNgapId && owners[ue] == owner;
+    }
+
+    private static void unindex(LongIntHashMap index, long id, int ue) {
+        if (id != 0 && index.get(id) == ue) {
+            index.remove(id);
+        }
+    }
+
+    private static void reindex(LongIntHashMap index, long oldId, long newId, int ue) {
+        unindex(index, oldId, ue);
+        if (newId != 0) {
+            index.put(newId, ue);
+        }
+    }
+
+    private void grow(int capacity) {
+        ranUeNgapIds = Arrays.copyOf(ranUeNgapIds, capacity);
+        amfUeNgapIds = Arrays.copyOf(amfUeNgapIds, capacity);
+        fiveGSTmsis = Arrays.copyOf(fiveGSTmsis, capacity);
+        states = Arrays.copyOf(states, capacity);
+        uplinkNasCounts = Arrays.copyOf(uplinkNasCounts, capacity);
+        downlinkNasCounts = Arrays.copyOf(downlinkNasCounts, capacity);
+        securityContexts = Arrays.copyOf(securityContexts, capacity);
+        owners = Arrays.copyOf(owners, capacity);
+    }
+}
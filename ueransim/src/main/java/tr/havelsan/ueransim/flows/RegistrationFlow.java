@@ -1,6 +1,7 @@
 package tr.havelsan.ueransim.flows;
 
 import tr.havelsan.ueransim.BaseFlow;
+import tr.havelsan.ueransim.FlowTimer;
 import tr.havelsan.ueransim.IncomingMessage;
 import tr.havelsan.ueransim.contexts.SimulationContext;
 import tr.havelsan.ueransim.crypto.Milenage;
@@ -22,10 +23,12 @@ import tr.havelsan.ueransim.utils.Console;
 import tr.havelsan.ueransim.utils.octets.OctetString;
 
 import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class RegistrationFlow extends BaseFlow {
 
     private final RegistrationInput input;
+    private FlowTimer t3510;
 
     public RegistrationFlow(SimulationContext simContext, RegistrationInput input) {
         super(simContext);
@@ -47,10 +50,18 @@ public class RegistrationFlow extends BaseFlow {
                 .addUserLocationInformationNR(input.userLocationInformationNr, NgapCriticality.REJECT)
                 .addProtocolIE(new RRCEstablishmentCause(input.rrcEstablishmentCause), NgapCriticality.IGNORE), registrationRequest);
 
+        // TS 24.501: T3510 guards the registration procedure, it is stopped when RegistrationAccept or
+        // RegistrationReject is received.
+        t3510 = startTimer("T3510", 15, TimeUnit.SECONDS);
+
         return this::waitAmfMessages;
     }
 
     private State waitAmfMessages(IncomingMessage message) {
+        if (message.isExpired(t3510)) {
+            return flowFailed("T3510 expired");
+        }
+
         var initialContextSetupRequest = message.getNgapMessage(InitialContextSetupRequest.class);
         if (initialContextSetupRequest != null) {
             return handleInitialContextSetup();
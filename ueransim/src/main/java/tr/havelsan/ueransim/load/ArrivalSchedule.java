@@ -0,0 +1,78 @@
+package tr.havelsan.ueransim.load;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Planned start times of the flows launched by {@link LoadGenerator}. Times are in nanoseconds relative to the
+ * start of the run, and the first flow is started at 0.
+ */
+public interface ArrivalSchedule {
+
+    /**
+     * Arrivals at a fixed interval.
+     */
+    static ArrivalSchedule constant(double ratePerSecond) {
+        if (ratePerSecond <= 0) throw new IllegalArgumentException("rate must be positive");
+        return new ArrivalSchedule() {
+            @Override
+            public long nextArrival(long previousNanos) {
+                return previousNanos + (long) (1e9 / ratePerSecond);
+            }
+
+            @Override
+            public double rateAt(long elapsedNanos) {
+                return ratePerSecond;
+            }
+        };
+    }
+
+    /**
+     * Arrivals at a fixed interval, where the rate starts at <code>initialRate</code> and is increased by
+     * <code>rateIncrement</code> after every <code>stepNanos</code> until it reaches <code>maxRate</code>.
+     */
+    static ArrivalSchedule stepped(double initialRate, double rateIncrement, long stepNanos, double maxRate) {
+        if (initialRate <= 0) throw new IllegalArgumentException("initial rate must be positive");
+        if (stepNanos <= 0) throw new IllegalArgumentException("step duration must be positive");
+        return new ArrivalSchedule() {
+            @Override
+            public long nextArrival(long previousNanos) {
+                return previousNanos + (long) (1e9 / rateAt(previousNanos));
+            }
+
+            @Override
+            public double rateAt(long elapsedNanos) {
+                double rate = initialRate + (elapsedNanos / stepNanos) * rateIncrement;
+                return maxRate > 0 ? Math.min(rate, maxRate) : rate;
+            }
+        };
+    }
+
+    /**
+     * Poisson arrivals following the rate of the given schedule, i.e. exponentially distributed intervals whose
+     * mean is the interval of the given schedule at that time.
+     */
+    static ArrivalSchedule poisson(ArrivalSchedule schedule) {
+        return new ArrivalSchedule() {
+            @Override
+            public long nextArrival(long previousNanos) {
+                double meanNanos = 1e9 / schedule.rateAt(previousNanos);
+                return previousNanos + (long) (-meanNanos * Math.log(1.0 - ThreadLocalRandom.current().nextDouble()));
+            }
+
+            @Override
+            public double rateAt(long elapsedNanos) {
+                return schedule.rateAt(elapsedNanos);
+            }
+        };
+    }
+
+    /**
+     * Returns the planned start of the arrival following the one planned at <code>previousNanos</code>.
+     */
+    long nextArrival(long previousNanos);
+
+    /**
+     * Returns the target arrival rate (per second) at the given time.
+     */
+    double rateAt(long elapsedNanos);
+}
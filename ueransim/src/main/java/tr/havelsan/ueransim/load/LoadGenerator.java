@@ -0,0 +1,138 @@
+package tr.havelsan.ueransim.load;
+
+import tr.havelsan.ueransim.BaseFlow;
+import tr.havelsan.ueransim.FlowEngine;
+import tr.havelsan.ueransim.utils.Color;
+import tr.havelsan.ueransim.utils.Console;
+import tr.havelsan.ueransim.utils.LatencyHistogram;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+/**
+ * Open-loop load generator. Flows are started at the times given by an {@link ArrivalSchedule}, independently of
+ * when the previous flows complete. The latency of a flow is measured from its planned start rather than from its
+ * actual start, so a generator or engine falling behind shows up in the latencies instead of hiding them
+ * (coordinated omission).
+ */
+public class LoadGenerator {
+    private final FlowEngine engine;
+    private final ArrivalSchedule schedule;
+    private final IntFunction<BaseFlow> flowFactory;
+
+    private final AtomicLong launched;
+    private final AtomicLong maxStartLag;
+    private final LatencyHistogram intervalLatency;
+    private final LatencyHistogram totalLatency;
+
+    private long lastReportNanos;
+    private long lastLaunched;
+    private long lastCompleted;
+    private long lastFailed;
+
+    public LoadGenerator(FlowEngine engine, ArrivalSchedule schedule, IntFunction<BaseFlow> flowFactory) {
+        this.engine = engine;
+        this.schedule = schedule;
+        this.flowFactory = flowFactory;
+        this.launched = new AtomicLong();
+        this.maxStartLag = new AtomicLong();
+        this.intervalLatency = new LatencyHistogram();
+        this.totalLatency = new LatencyHistogram();
+    }
+
+    /**
+     * Starts flows for the given duration, then waits for the running flows to end. Achieved and target rates are
+     * reported every second.
+     *
+     * @return <code>false</code> if some flows were still running after the drain timeout
+     */
+    public boolean run(long duration, long drainTimeout, TimeUnit unit) throws InterruptedException {
+        engine.setFlowListener(this::flowFinished);
+
+        var reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "load-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long startNanos = System.nanoTime();
+        long durationNanos = unit.toNanos(duration);
+        lastReportNanos = startNanos;
+        reporter.scheduleAtFixedRate(() -> report(startNanos), 1, 1, TimeUnit.SECONDS);
+
+        try {
+            int ueIndex = 0;
+            for (long planned = 0; planned < durationNanos; planned = schedule.nextArrival(planned)) {
+                long plannedStart = startNanos + planned;
+                long wait;
+                while ((wait = plannedStart - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                    if (Thread.interrupted())
+                        throw new InterruptedException();
+                }
+
+                long lag = System.nanoTime() - plannedStart;
+                maxStartLag.accumulateAndGet(lag, Math::max);
+
+                engine.startFlow(flowFactory.apply(ueIndex++), plannedStart);
+                launched.incrementAndGet();
+            }
+
+            return engine.awaitIdle(drainTimeout, unit);
+        } finally {
+            reporter.shutdownNow();
+            report(startNanos);
+            printSummary(System.nanoTime() - startNanos);
+        }
+    }
+
+    private void flowFinished(BaseFlow flow, boolean success, long durationNanos) {
+        if (!success)
+            return;
+        intervalLatency.record(durationNanos);
+        totalLatency.record(durationNanos);
+    }
+
+    private synchronized void report(long startNanos) {
+        long now = System.nanoTime();
+        double seconds = (now - lastReportNanos) / 1e9;
+        if (seconds <= 0)
+            return;
+
+        long launchedNow = launched.get();
+        long completedNow = engine.getCompletedFlowCount();
+        long failedNow = engine.getFailedFlowCount();
+
+        var latency = intervalLatency.copyAndReset();
+
+        Console.println(Color.BLUE, "[%ds] target %.0f/s, launched %.0f/s, completed %.0f/s, failed %.0f/s, "
+                        + "active %d, max start lag %.3f ms, latency p50 %.3f ms p99 %.3f ms max %.3f ms",
+                (now - startNanos) / 1_000_000_000L,
+                schedule.rateAt(now - startNanos),
+                (launchedNow - lastLaunched) / seconds,
+                (completedNow - lastCompleted) / seconds,
+                (failedNow - lastFailed) / seconds,
+                engine.getActiveFlowCount(),
+                maxStartLag.getAndSet(0) / 1e6,
+                latency.getValueAtPercentile(50) / 1e6,
+                latency.getValueAtPercentile(99) / 1e6,
+                latency.getMax() / 1e6);
+
+        lastReportNanos = now;
+        lastLaunched = launchedNow;
+        lastCompleted = completedNow;
+        lastFailed = failedNow;
+    }
+
+    private void printSummary(long elapsedNanos) {
+        long completed = engine.getCompletedFlowCount();
+        Console.printDiv();
+        Console.println(Color.BLUE, "%d flows launched in %.1f s (%.1f/s), %d completed, %d failed, %d still active",
+                launched.get(), elapsedNanos / 1e9, launched.get() / (elapsedNanos / 1e9), completed,
+                engine.getFailedFlowCount(), engine.getActiveFlowCount());
+        Console.println(Color.BLUE, "latency (ms, from planned start): %s", totalLatency.toString(1e6));
+    }
+}
@@ -0,0 +1,85 @@
+package tr.havelsan.ueransim.mocked;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One-way delay injected by {@link MockedSCTPClient} between a message being sent and it being received.
+ */
+public interface LatencyDistribution {
+
+    static LatencyDistribution none() {
+        return () -> 0;
+    }
+
+    static LatencyDistribution constant(long nanos) {
+        return () -> nanos;
+    }
+
+    static LatencyDistribution uniform(long minNanos, long maxNanos) {
+        return () -> ThreadLocalRandom.current().nextLong(minNanos, maxNanos + 1);
+    }
+
+    static LatencyDistribution exponential(long meanNanos) {
+        return () -> (long) (-meanNanos * Math.log(1.0 - ThreadLocalRandom.current().nextDouble()));
+    }
+
+    static LatencyDistribution normal(long meanNanos, long stdDevNanos) {
+        return () -> Math.max(0, meanNanos + (long) (ThreadLocalRandom.current().nextGaussian() * stdDevNanos));
+    }
+
+    /**
+     * Parses a distribution given as its name followed by its parameters, such as <code>none</code>,
+     * <code>constant 2ms</code>, <code>uniform 1ms 3ms</code>, <code>exponential 2ms</code> or
+     * <code>normal 2ms 500us</code>. Durations are in <code>ns</code>, <code>us</code>, <code>ms</code> or
+     * <code>s</code>.
+     */
+    static LatencyDistribution parse(String spec) {
+        var parts = spec.trim().split("\\s+");
+        try {
+            switch (parts[0]) {
+                case "none":
+                    if (parts.length == 1) return none();
+                    break;
+                case "constant":
+                    if (parts.length == 2) return constant(parseNanos(parts[1]));
+                    break;
+                case "uniform":
+                    if (parts.length == 3) return uniform(parseNanos(parts[1]), parseNanos(parts[2]));
+                    break;
+                case "exponential":
+                    if (parts.length == 2) return exponential(parseNanos(parts[1]));
+                    break;
+                case "normal":
+                    if (parts.length == 3) return normal(parseNanos(parts[1]), parseNanos(parts[2]));
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("invalid latency distribution: " + spec, e);
+        }
+        throw new RuntimeException("invalid latency distribution: " + spec);
+    }
+
+    private static long parseNanos(String duration) {
+        TimeUnit unit;
+        int suffix;
+        if (duration.endsWith("ns")) {
+            unit = TimeUnit.NANOSECONDS;
+            suffix = 2;
+        } else if (duration.endsWith("us")) {
+            unit = TimeUnit.MICROSECONDS;
+            suffix = 2;
+        } else if (duration.endsWith("ms")) {
+            unit = TimeUnit.MILLISECONDS;
+            suffix = 2;
+        } else if (duration.endsWith("s")) {
+            unit = TimeUnit.SECONDS;
+            suffix = 1;
+        } else {
+            throw new NumberFormatException("no unit: " + duration);
+        }
+        return unit.toNanos(Long.parseLong(duration.substring(0, duration.length() - suffix)));
+    }
+
+    long nextDelayNanos();
+}
@@ -0,0 +1,126 @@
+package tr.havelsan.ueransim.mocked;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Growable FIFO ring of messages with a delivery deadline per message. Producers never block, so a consumer
+ * that also produces (e.g. a flow replying from its receive handler) cannot deadlock on a full ring.
+ */
+class MessageRing {
+    private final ReentrantLock lock;
+    private final Condition changed;
+
+    private byte[][] data;
+    private int[] streams;
+    private long[] deadlines;
+    private int head;
+    private int size;
+    private long lastDeadline;
+    private boolean stopped;
+
+    MessageRing(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, initialCapacity - 1)) << 1;
+
+        this.lock = new ReentrantLock();
+        this.changed = lock.newCondition();
+        this.data = new byte[capacity][];
+        this.streams = new int[capacity];
+        this.deadlines = new long[capacity];
+    }
+
+    void offer(int streamNumber, byte[] message, long delayNanos) {
+        lock.lock();
+        try {
+            if (size == data.length) grow();
+
+            // Delays never reorder messages, as in an SCTP stream
+            long deadline = Math.max(System.nanoTime() + delayNanos, lastDeadline);
+            lastDeadline = deadline;
+
+            int index = (head + size) & (data.length - 1);
+            data[index] = message;
+            streams[index] = streamNumber;
+            deadlines[index] = deadline;
+            size++;
+
+            if (size == 1) changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the head message is due and returns its stream number; the message itself is then removed
+     * with {@link #take()}. Returns -1 if the ring was stopped while waiting. Single consumer only.
+     */
+    int awaitHead() throws InterruptedException {
+        lock.lock();
+        try {
+            while (!stopped) {
+                if (size == 0) {
+                    changed.await();
+                    continue;
+                }
+                long due = deadlines[head] - System.nanoTime();
+                if (due <= 0) return streams[head];
+                changed.awaitNanos(due);
+            }
+            return -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    byte[] take() {
+        lock.lock();
+        try {
+            var message = data[head];
+            data[head] = null;
+            head = (head + 1) & (data.length - 1);
+            size--;
+            return message;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void start() {
+        lock.lock();
+        try {
+            stopped = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the consumer blocked in {@link #awaitHead()}. Queued messages are kept.
+     */
+    void stop() {
+        lock.lock();
+        try {
+            stopped = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void grow() {
+        int capacity = data.length;
+        var newData = new byte[capacity * 2][];
+        var newStreams = new int[capacity * 2];
+        var newDeadlines = new long[capacity * 2];
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) & (capacity - 1);
+            newData[i] = data[index];
+            newStreams[i] = streams[index];
+            newDeadlines[i] = deadlines[index];
+        }
+        data = newData;
+        streams = newStreams;
+        deadlines = newDeadlines;
+        head = 0;
+    }
+}
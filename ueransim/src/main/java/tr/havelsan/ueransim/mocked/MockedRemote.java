@@ -2,35 +2,113 @@ package tr.havelsan.ueransim.mocked;
 
 import tr.havelsan.ueransim.IncomingMessage;
 import tr.havelsan.ueransim.Ngap;
+import tr.havelsan.ueransim.nas.core.messages.NasMessage;
+import tr.havelsan.ueransim.nas.eap.Eap;
+import tr.havelsan.ueransim.nas.eap.EapAkaPrime;
+import tr.havelsan.ueransim.nas.impl.enums.ETypeOfSecurityContext;
+import tr.havelsan.ueransim.nas.impl.ies.IE5gsRegistrationResult;
+import tr.havelsan.ueransim.nas.impl.ies.IEAbba;
+import tr.havelsan.ueransim.nas.impl.ies.IEEapMessage;
+import tr.havelsan.ueransim.nas.impl.ies.IENasKeySetIdentifier;
+import tr.havelsan.ueransim.nas.impl.messages.AuthenticationRequest;
+import tr.havelsan.ueransim.nas.impl.messages.AuthenticationResponse;
+import tr.havelsan.ueransim.nas.impl.messages.RegistrationAccept;
+import tr.havelsan.ueransim.nas.impl.messages.RegistrationRequest;
+import tr.havelsan.ueransim.ngap.ngap_ies.RAN_UE_NGAP_ID;
+import tr.havelsan.ueransim.ngap.ngap_ies.RelativeAMFCapacity;
+import tr.havelsan.ueransim.ngap.ngap_pdu_contents.InitialUEMessage;
+import tr.havelsan.ueransim.ngap.ngap_pdu_contents.NGSetupRequest;
+import tr.havelsan.ueransim.ngap.ngap_pdu_contents.UplinkNASTransport;
 import tr.havelsan.ueransim.ngap.ngap_pdu_descriptions.NGAP_PDU;
+import tr.havelsan.ueransim.ngap2.NgapBuilder;
+import tr.havelsan.ueransim.ngap2.NgapCriticality;
 import tr.havelsan.ueransim.ngap2.NgapInternal;
-import tr.havelsan.ueransim.utils.Utils;
+import tr.havelsan.ueransim.ngap2.NgapProcedure;
+import tr.havelsan.ueransim.utils.bits.Bit3;
+import tr.havelsan.ueransim.utils.octets.Octet;
+import tr.havelsan.ueransim.utils.octets.OctetString;
 
 import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
 import java.util.Queue;
 
+/**
+ * Mocked AMF with canned replies, for load tests of the gNB side without a core network. It answers NG Setup, and
+ * the registration of a UE with an EAP-AKA' challenge followed by RegistrationAccept. The authentication response of
+ * the UE is not verified. Other messages are not answered.
+ * <p>
+ * The mock keeps no state, so one instance can serve any number of associations. The AMF-UE-NGAP-ID of a UE is its
+ * RAN-UE-NGAP-ID, which is unique within an association.
+ */
 public class MockedRemote implements MockedSCTPClient.IMockedRemote {
 
+    private static final OctetString RAND = new OctetString("0000" + "00112233445566778899aabbccddeeff");
+    private static final OctetString AUTN = new OctetString("0000" + "ffeeddccbbaa99887766554433221100");
+    private static final OctetString MAC = new OctetString("0000" + "00000000000000000000000000000000");
+
     @Override
-    public void onMessage(byte[] data, Queue<Byte[]> queue) {
+    public void onMessage(int streamNumber, byte[] data, MockedSCTPClient.IMockedReply reply) {
         NGAP_PDU ngapPdu = Ngap.perDecode(NGAP_PDU.class, data);
         var ngapMessage = NgapInternal.extractNgapMessage(ngapPdu);
-        var nasMessage = NgapInternal.extractNasMessage(ngapPdu);
-        var incomingMessage = new IncomingMessage(ngapPdu, ngapMessage, nasMessage);
-        Queue<String> outs = new ArrayDeque<>();
+        var nasView = NgapInternal.extractNasView(ngapPdu);
+        var incomingMessage = new IncomingMessage(ngapPdu, ngapMessage, nasView, streamNumber);
+        Queue<NGAP_PDU> outs = new ArrayDeque<>();
         onMessage(incomingMessage, outs);
         while (!outs.isEmpty()) {
-            var out = outs.remove();
-            byte[] pdu = Utils.hexStringToByteArray(out);
-            Byte[] res = new Byte[pdu.length];
-            for (int i = 0; i < res.length; i++) {
-                res[i] = pdu[i];
-            }
-            queue.add(res);
+            reply.deliver(streamNumber, Ngap.perEncode(outs.remove()));
+        }
+    }
+
+    private void onMessage(IncomingMessage message, Queue<NGAP_PDU> queue) {
+        if (message.getNgapMessage(NGSetupRequest.class) != null) {
+            queue.add(new NgapBuilder(NgapProcedure.NGSetupResponse, NgapCriticality.REJECT)
+                    .addProtocolIE(new RelativeAMFCapacity(255), NgapCriticality.IGNORE)
+                    .build());
+            return;
+        }
+
+        if (message.getNgapMessage(InitialUEMessage.class) == null
+                && message.getNgapMessage(UplinkNASTransport.class) == null) {
+            return;
+        }
+        var ranUeNgapIds = NgapInternal.extractProtocolIe(message.ngapMessage, RAN_UE_NGAP_ID.class);
+        if (ranUeNgapIds.isEmpty()) {
+            return;
+        }
+        long ranUeNgapId = ranUeNgapIds.get(ranUeNgapIds.size() - 1).value;
+
+        var nasMessage = message.getNasMessage(NasMessage.class);
+        if (nasMessage instanceof RegistrationRequest) {
+            queue.add(downlinkNas(ranUeNgapId, authenticationRequest()));
+        } else if (nasMessage instanceof AuthenticationResponse) {
+            var registrationAccept = new RegistrationAccept();
+            registrationAccept.registrationResult = new IE5gsRegistrationResult(
+                    IE5gsRegistrationResult.ESmsOverNasTransportAllowed.NOT_ALLOWED,
+                    IE5gsRegistrationResult.E5gsRegistrationResult.THREEGPP_ACCESS);
+            queue.add(downlinkNas(ranUeNgapId, registrationAccept));
         }
     }
 
-    private void onMessage(IncomingMessage message, Queue<String> queue) {
-        //
+    private static NGAP_PDU downlinkNas(long ranUeNgapId, NasMessage nasMessage) {
+        return new NgapBuilder(NgapProcedure.DownlinkNASTransport, NgapCriticality.IGNORE)
+                .addAmfUeNgapId(ranUeNgapId, NgapCriticality.REJECT)
+                .addRanUeNgapId(ranUeNgapId, NgapCriticality.REJECT)
+                .addNasPdu(nasMessage, NgapCriticality.REJECT)
+                .build();
+    }
+
+    private static AuthenticationRequest authenticationRequest() {
+        var attributes = new LinkedHashMap<EapAkaPrime.EAttributeType, OctetString>();
+        attributes.put(EapAkaPrime.EAttributeType.AT_RAND, RAND);
+        attributes.put(EapAkaPrime.EAttributeType.AT_AUTN, AUTN);
+        attributes.put(EapAkaPrime.EAttributeType.AT_MAC, MAC);
+        attributes.put(EapAkaPrime.EAttributeType.AT_KDF, new OctetString("0001"));
+
+        var request = new AuthenticationRequest();
+        request.ngKSI = new IENasKeySetIdentifier(ETypeOfSecurityContext.NATIVE_SECURITY_CONTEXT, new Bit3(0));
+        request.abba = new IEAbba(new OctetString("0000"));
+        request.eapMessage = new IEEapMessage(new EapAkaPrime(Eap.ECode.REQUEST, new Octet(1),
+                EapAkaPrime.ESubType.AKA_CHALLENGE, attributes));
+        return request;
     }
-}
\ No newline at end of file
+}
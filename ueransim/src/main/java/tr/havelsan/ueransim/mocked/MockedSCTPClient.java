@@ -1,23 +1,36 @@
 package tr.havelsan.ueransim.mocked;
 
+import com.sun.nio.sctp.MessageInfo;
+import tr.havelsan.ueransim.sctp.AssociationMetrics;
+import tr.havelsan.ueransim.sctp.AssociationStats;
+import tr.havelsan.ueransim.sctp.ISCTPBufferHandler;
 import tr.havelsan.ueransim.sctp.ISCTPClient;
-import tr.havelsan.ueransim.sctp.ISCTPHandler;
 
-import java.util.ArrayDeque;
-import java.util.Queue;
+import java.nio.ByteBuffer;
 
+/**
+ * In-process transport that loops messages through an {@link IMockedRemote} instead of an AMF. The receiver
+ * blocks until a message is due, and messages can be delayed by a {@link LatencyDistribution}.
+ */
 public class MockedSCTPClient implements ISCTPClient {
-    private final Queue<Byte[]> queue;
+    private static final int INITIAL_RING_CAPACITY = 1024;
+
     private final IMockedRemote mockedRemote;
+    private final LatencyDistribution latency;
+    private final MessageRing ring;
+    private final AssociationMetrics metrics;
 
-    private boolean receiving;
-    private boolean isOpen;
+    private volatile boolean isOpen;
 
     public MockedSCTPClient(IMockedRemote mockedRemote) {
-        this.queue = new ArrayDeque<>();
-        this.mockedRemote = mockedRemote;
+        this(mockedRemote, LatencyDistribution.none());
+    }
 
-        this.receiving = false;
+    public MockedSCTPClient(IMockedRemote mockedRemote, LatencyDistribution latency) {
+        this.mockedRemote = mockedRemote;
+        this.latency = latency;
+        this.ring = new MessageRing(INITIAL_RING_CAPACITY);
+        this.metrics = new AssociationMetrics();
         this.isOpen = false;
     }
 
@@ -28,35 +41,41 @@ public class MockedSCTPClient implements ISCTPClient {
 
     @Override
     public void send(int streamNumber, byte[] data) throws Exception {
-        mockedRemote.onMessage(data, queue);
+        metrics.messageSent(streamNumber, data.length, 0);
+        mockedRemote.onMessage(streamNumber, data, this::deliver);
+    }
+
+    /**
+     * Queues a message from the remote side, to be received after the injected latency.
+     */
+    public void deliver(int streamNumber, byte[] data) {
+        ring.offer(streamNumber, data, latency.nextDelayNanos());
     }
 
     @Override
-    public void receiverLoop(ISCTPHandler handler) throws Exception {
-        receiving = true;
-
-        while (receiving && isOpen) {
-            while (true) {
-                var entry = queue.poll();
-                if (entry == null) break;
-
-                byte[] response = new byte[entry.length];
-                for (int i = 0; i < response.length; i++) {
-                    response[i] = entry[i];
-                }
-                handler.handleSCTPMessage(response, null, null);
-            }
+    public void receiverLoop(ISCTPBufferHandler handler) throws Exception {
+        ring.start();
+
+        while (isOpen) {
+            int streamNumber = ring.awaitHead();
+            if (streamNumber < 0) break;
+
+            var data = ring.take();
+            metrics.messageReceived(streamNumber, data.length);
+            handler.handleSCTPMessage(ByteBuffer.wrap(data).asReadOnlyBuffer(),
+                    MessageInfo.createOutgoing(null, streamNumber), null);
         }
     }
 
     @Override
     public void close() {
         isOpen = false;
+        ring.stop();
     }
 
     @Override
     public void abortReceiver() {
-        receiving = false;
+        ring.stop();
     }
 
     @Override
@@ -64,7 +83,26 @@ public class MockedSCTPClient implements ISCTPClient {
         return isOpen;
     }
 
+    @Override
+    public int getOutboundStreams() {
+        return 1;
+    }
+
+    @Override
+    public int getInboundStreams() {
+        return 1;
+    }
+
+    @Override
+    public AssociationStats getStats() {
+        return metrics.snapshot(null, null);
+    }
+
     public interface IMockedRemote {
-        void onMessage(byte[] data, Queue<Byte[]> queue);
+        void onMessage(int streamNumber, byte[] data, IMockedReply reply);
+    }
+
+    public interface IMockedReply {
+        void deliver(int streamNumber, byte[] data);
     }
 }
@@ -0,0 +1,28 @@
+package tr.havelsan.ueransim.mocked;
+
+import tr.havelsan.ueransim.sctp.TCPServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Serves an {@link MockedSCTPClient.IMockedRemote} over the framing of {@link tr.havelsan.ueransim.sctp.TCPClient},
+ * so that the complete client side including the transport can be benchmarked without an AMF.
+ */
+public class MockedTCPServer {
+
+    public static TCPServer start(InetSocketAddress address, MockedSCTPClient.IMockedRemote mockedRemote)
+            throws IOException {
+        return new TCPServer(address, (streamNumber, payloadProtocolId, payload, connection) -> {
+            var data = new byte[payload.remaining()];
+            payload.get(data);
+            mockedRemote.onMessage(streamNumber, data, (replyStream, reply) -> {
+                try {
+                    connection.send(replyStream, payloadProtocolId, reply);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        });
+    }
+}
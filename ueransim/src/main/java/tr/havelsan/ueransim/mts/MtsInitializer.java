@@ -1,12 +1,11 @@
 package tr.havelsan.ueransim.mts;
 
-import io.github.classgraph.ClassGraph;
-import io.github.classgraph.ScanResult;
 import tr.havelsan.ueransim.core.Constants;
 import tr.havelsan.ueransim.nas.eap.Eap;
 import tr.havelsan.ueransim.nas.eap.EapAkaPrime;
 import tr.havelsan.ueransim.nas.eap.EapIdentity;
 import tr.havelsan.ueransim.nas.eap.EapNotification;
+import tr.havelsan.ueransim.utils.ClassIndex;
 import tr.havelsan.ueransim.utils.Utils;
 
 import java.io.IOException;
@@ -17,19 +16,8 @@ import java.nio.file.Paths;
 public class MtsInitializer {
 
     public static void initMts() {
-        try (ScanResult scanResult = new ClassGraph().enableClassInfo().ignoreClassVisibility().whitelistPackages(Constants.NAS_IMPL_PREFIX).scan()) {
-            var classInfoList = scanResult.getAllClasses();
-            for (var classInfo : classInfoList) {
-                Class<?> clazz;
-                try {
-                    clazz = Class.forName(classInfo.getName());
-                } catch (ClassNotFoundException e) {
-                    throw new RuntimeException(e);
-                }
-
-                String typeName = Utils.getTypeName(clazz);
-                TypeRegistry.registerTypeName(typeName, clazz);
-            }
+        for (var entry : ClassIndex.read(Constants.NAS_TYPE_INDEX)) {
+            TypeRegistry.registerTypeName(entry[1], entry[0]);
         }
 
         final Class<?>[] otherTypes = new Class[]{
@@ -0,0 +1,81 @@
+package tr.havelsan.ueransim.replay;
+
+import tr.havelsan.ueransim.Ngap;
+import tr.havelsan.ueransim.ngap.ngap_ies.AMF_UE_NGAP_ID;
+import tr.havelsan.ueransim.ngap.ngap_ies.RAN_UE_NGAP_ID;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the uplink messages of one recorded UE as one new UE. A message carrying an AMF-UE-NGAP-ID is held
+ * back until the AMF has assigned one to this UE.
+ */
+class ReplaySession {
+    final int ueIndex;
+    final long ranUeNgapId;
+
+    private final TraceReplayer replayer;
+    private final List<ReplayTemplate> messages;
+    private final byte[] encodedRanUeNgapId;
+    private final long startNanos;
+
+    private volatile byte[] encodedAmfUeNgapId;
+    private int next;
+    private boolean waitingForAmf;
+    private boolean completed;
+
+    ReplaySession(TraceReplayer replayer, int ueIndex, long ranUeNgapId, List<ReplayTemplate> messages,
+                  long startNanos) {
+        this.replayer = replayer;
+        this.ueIndex = ueIndex;
+        this.ranUeNgapId = ranUeNgapId;
+        this.messages = messages;
+        this.encodedRanUeNgapId = Ngap.perEncode(new RAN_UE_NGAP_ID(ranUeNgapId));
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * Sends every message that is due, and schedules the next call for the first one that is not.
+     */
+    synchronized void advance() {
+        if (completed)
+            return;
+
+        while (next < messages.size()) {
+            var message = messages.get(next);
+
+            long delay = startNanos + replayer.scale(message.offsetNanos) - System.nanoTime();
+            if (delay > 0) {
+                replayer.schedule(this::advance, delay, TimeUnit.NANOSECONDS);
+                return;
+            }
+            if (message.amfUeNgapId != null && encodedAmfUeNgapId == null) {
+                waitingForAmf = true;
+                return;
+            }
+
+            replayer.send(this, message.instantiate(ueIndex, encodedRanUeNgapId, encodedAmfUeNgapId));
+            next++;
+        }
+        completed = true;
+        replayer.sessionCompleted(this);
+    }
+
+    void amfUeNgapIdReceived(long amfUeNgapId) {
+        if (encodedAmfUeNgapId != null)
+            return;
+        encodedAmfUeNgapId = Ngap.perEncode(new AMF_UE_NGAP_ID(amfUeNgapId));
+
+        synchronized (this) {
+            if (!waitingForAmf)
+                return;
+            waitingForAmf = false;
+        }
+        replayer.schedule(this::advance, 0, TimeUnit.NANOSECONDS);
+    }
+
+    synchronized boolean isWaitingForAmf() {
+        return waitingForAmf;
+    }
+}
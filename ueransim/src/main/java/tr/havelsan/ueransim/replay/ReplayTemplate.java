@@ -0,0 +1,212 @@
+package tr.havelsan.ueransim.replay;
+
+import fr.marben.asnsdk.japi.spe.SequenceValue;
+import tr.havelsan.ueransim.Ngap;
+import tr.havelsan.ueransim.nas.NasEncoder;
+import tr.havelsan.ueransim.nas.core.messages.NasMessage;
+import tr.havelsan.ueransim.nas.impl.ies.IEImsiMobileIdentity;
+import tr.havelsan.ueransim.ngap.Values;
+import tr.havelsan.ueransim.ngap.ngap_ies.AMF_UE_NGAP_ID;
+import tr.havelsan.ueransim.ngap.ngap_ies.GTPTunnel;
+import tr.havelsan.ueransim.ngap.ngap_ies.PDUSessionResourceSetupListSURes;
+import tr.havelsan.ueransim.ngap.ngap_ies.PDUSessionResourceSetupResponseTransfer;
+import tr.havelsan.ueransim.ngap.ngap_ies.RAN_UE_NGAP_ID;
+import tr.havelsan.ueransim.ngap.ngap_pdu_descriptions.NGAP_PDU;
+import tr.havelsan.ueransim.ngap2.NgapInternal;
+import tr.havelsan.ueransim.ngap2.NgapRawPdu;
+import tr.havelsan.ueransim.utils.OctetOutputStream;
+import tr.havelsan.ueransim.utils.Utils;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * One recorded uplink PDU, together with the positions of the per-UE fields in its raw bytes. The positions are
+ * found once by decoding the PDU, after which every replayed copy is produced by patching the bytes.
+ */
+class ReplayTemplate {
+    final byte[] pdu;
+    final long offsetNanos;
+    final Long ranUeNgapId;
+    final Long amfUeNgapId;
+
+    private final int msinOffset;
+    private final String msin;
+    private final int[] teidOffsets;
+    private final int[] teids;
+
+    private ReplayTemplate(byte[] pdu, long offsetNanos, Long ranUeNgapId, Long amfUeNgapId, int msinOffset,
+                           String msin, int[] teidOffsets, int[] teids) {
+        this.pdu = pdu;
+        this.offsetNanos = offsetNanos;
+        this.ranUeNgapId = ranUeNgapId;
+        this.amfUeNgapId = amfUeNgapId;
+        this.msinOffset = msinOffset;
+        this.msin = msin;
+        this.teidOffsets = teidOffsets;
+        this.teids = teids;
+    }
+
+    static ReplayTemplate learn(byte[] pdu, long offsetNanos) {
+        var ranUeNgapId = readRanUeNgapId(pdu);
+        var amfUeNgapId = readAmfUeNgapId(pdu);
+
+        var ngapPdu = Ngap.perDecode(NGAP_PDU.class, pdu);
+
+        int msinOffset = -1;
+        String msin = null;
+        var imsi = findImsiIdentity(NgapInternal.extractNasMessage(ngapPdu));
+        if (imsi != null) {
+            int offset = indexOfUnique(pdu, bcd(imsi.schemeOutput));
+            if (offset >= 0) {
+                msinOffset = offset;
+                msin = imsi.schemeOutput;
+            }
+        }
+
+        var teidOffsets = new ArrayList<Integer>();
+        var teids = new ArrayList<Integer>();
+        for (var teid : findTeids(ngapPdu)) {
+            int offset = indexOfUnique(pdu, teid);
+            if (offset >= 0) {
+                teidOffsets.add(offset);
+                teids.add(toInt(teid));
+            }
+        }
+
+        return new ReplayTemplate(pdu, offsetNanos, ranUeNgapId, amfUeNgapId, msinOffset, msin,
+                teidOffsets.stream().mapToInt(Integer::intValue).toArray(),
+                teids.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Returns a copy of the PDU for the replayed UE with the given index. The identity and TEIDs are offset by
+     * the index, and the NGAP IDs are replaced by the given encoded values.
+     */
+    byte[] instantiate(int ueIndex, byte[] encodedRanUeNgapId, byte[] encodedAmfUeNgapId) {
+        var result = pdu.clone();
+
+        if (msin != null) {
+            var digits = offsetDigits(msin, ueIndex);
+            var encoded = bcd(digits);
+            System.arraycopy(encoded, 0, result, msinOffset, encoded.length);
+        }
+        for (int i = 0; i < teidOffsets.length; i++) {
+            int teid = teids[i] + ueIndex;
+            result[teidOffsets[i]] = (byte) (teid >>> 24);
+            result[teidOffsets[i] + 1] = (byte) (teid >>> 16);
+            result[teidOffsets[i] + 2] = (byte) (teid >>> 8);
+            result[teidOffsets[i] + 3] = (byte) teid;
+        }
+
+        if (ranUeNgapId != null) {
+            var replaced = NgapRawPdu.replaceIeValue(result, Values.NGAP_Constants__id_RAN_UE_NGAP_ID,
+                    encodedRanUeNgapId);
+            if (replaced == null) {
+                long value = Ngap.perDecode(RAN_UE_NGAP_ID.class, encodedRanUeNgapId).value;
+                replaced = reencode(result, ngapMessage -> {
+                    for (var ie : NgapInternal.extractProtocolIe(ngapMessage, RAN_UE_NGAP_ID.class))
+                        ie.value = value;
+                });
+            }
+            result = replaced;
+        }
+        if (amfUeNgapId != null && encodedAmfUeNgapId != null) {
+            var replaced = NgapRawPdu.replaceIeValue(result, Values.NGAP_Constants__id_AMF_UE_NGAP_ID,
+                    encodedAmfUeNgapId);
+            if (replaced == null) {
+                long value = Ngap.perDecode(AMF_UE_NGAP_ID.class, encodedAmfUeNgapId).value;
+                replaced = reencode(result, ngapMessage -> {
+                    for (var ie : NgapInternal.extractProtocolIe(ngapMessage, AMF_UE_NGAP_ID.class))
+                        ie.value = value;
+                });
+            }
+            result = replaced;
+        }
+        return result;
+    }
+
+    static Long readRanUeNgapId(byte[] pdu) {
+        var value = NgapRawPdu.getIeValue(pdu, Values.NGAP_Constants__id_RAN_UE_NGAP_ID);
+        return value != null ? Ngap.perDecode(RAN_UE_NGAP_ID.class, value).value : null;
+    }
+
+    static Long readAmfUeNgapId(byte[] pdu) {
+        var value = NgapRawPdu.getIeValue(pdu, Values.NGAP_Constants__id_AMF_UE_NGAP_ID);
+        return value != null ? Ngap.perDecode(AMF_UE_NGAP_ID.class, value).value : null;
+    }
+
+    /**
+     * Fallback for changes that cannot be made on the raw bytes, i.e. when a length determinant changes size.
+     */
+    private static byte[] reencode(byte[] pdu, Consumer<SequenceValue> modifier) {
+        var ngapPdu = Ngap.perDecode(NGAP_PDU.class, pdu);
+        modifier.accept(NgapInternal.extractNgapMessage(ngapPdu));
+        return Ngap.perEncode(ngapPdu);
+    }
+
+    private static IEImsiMobileIdentity findImsiIdentity(NasMessage nasMessage) {
+        if (nasMessage == null)
+            return null;
+        try {
+            for (var field : nasMessage.getClass().getFields()) {
+                var value = field.get(nasMessage);
+                if (value instanceof IEImsiMobileIdentity) {
+                    var imsi = (IEImsiMobileIdentity) value;
+                    if (imsi.protectionSchemaId.equals(IEImsiMobileIdentity.EProtectionSchemeIdentifier.NULL_SCHEME))
+                        return imsi;
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+        return null;
+    }
+
+    private static List<byte[]> findTeids(NGAP_PDU ngapPdu) {
+        var teids = new ArrayList<byte[]>();
+        var ngapMessage = NgapInternal.extractNgapMessage(ngapPdu);
+        for (var list : NgapInternal.extractProtocolIe(ngapMessage, PDUSessionResourceSetupListSURes.class)) {
+            for (var item : list.valueList) {
+                var transfer = item.pDUSessionResourceSetupResponseTransfer;
+                if (transfer == null || !(transfer.getDecodedValue() instanceof PDUSessionResourceSetupResponseTransfer))
+                    continue;
+                var information = ((PDUSessionResourceSetupResponseTransfer) transfer.getDecodedValue())
+                        .qosFlowPerTNLInformation.uPTransportLayerInformation;
+                if (information.getValue() instanceof GTPTunnel) {
+                    teids.add(((GTPTunnel) information.getValue()).gTP_TEID.getValue());
+                }
+            }
+        }
+        return teids;
+    }
+
+    private static String offsetDigits(String digits, int offset) {
+        var value = new BigInteger(digits).add(BigInteger.valueOf(offset)).mod(BigInteger.TEN.pow(digits.length()));
+        return Utils.padLeft(value.toString(), digits.length(), '0');
+    }
+
+    private static byte[] bcd(String digits) {
+        var stream = new OctetOutputStream();
+        NasEncoder.bcdString(stream, digits, -1, false, null);
+        return stream.toByteArray();
+    }
+
+    private static int indexOfUnique(byte[] array, byte[] pattern) {
+        int found = -1;
+        for (int i = 0; i + pattern.length <= array.length; i++) {
+            if (Arrays.equals(array, i, i + pattern.length, pattern, 0, pattern.length)) {
+                if (found >= 0) return -1;
+                found = i;
+            }
+        }
+        return found;
+    }
+
+    private static int toInt(byte[] bytes) {
+        return ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+    }
+}
@@ -0,0 +1,186 @@
+package tr.havelsan.ueransim.replay;
+
+import tr.havelsan.ueransim.contexts.SimulationContext;
+import tr.havelsan.ueransim.core.Constants;
+import tr.havelsan.ueransim.sctp.ISCTPBufferHandler;
+import tr.havelsan.ueransim.sctp.ISCTPClient;
+import tr.havelsan.ueransim.sctp.PcapReader;
+import tr.havelsan.ueransim.utils.Color;
+import tr.havelsan.ueransim.utils.Console;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays the uplink NGAP messages of a capture against an AMF. Non UE associated messages are replayed once,
+ * then every recorded UE is fanned out into the given number of UEs, each with its own RAN-UE-NGAP-ID, SUCI and
+ * TEIDs. The AMF-UE-NGAP-IDs are taken from the downlink messages of the live AMF.
+ */
+public class TraceReplayer {
+    private final ISCTPClient sctpClient;
+    private final SimulationContext simContext;
+    private final double speed;
+
+    private final List<ReplayTemplate> nonUeMessages;
+    private final List<List<ReplayTemplate>> ueMessages;
+
+    private final ScheduledExecutorService scheduler;
+    private final Map<Long, ReplaySession> sessions;
+    private final AtomicLong sentMessages;
+    private final AtomicLong receivedMessages;
+    private CountDownLatch remainingSessions;
+
+    /**
+     * @param trace NGAP messages of the capture. The destination of the first message is taken as the AMF.
+     * @param speed replay speed relative to the capture, or 0 to send every message as soon as possible.
+     */
+    public TraceReplayer(ISCTPClient sctpClient, List<PcapReader.Message> trace, double speed) {
+        if (trace.isEmpty()) throw new IllegalArgumentException("trace contains no NGAP messages");
+
+        this.sctpClient = sctpClient;
+        this.simContext = new SimulationContext(sctpClient);
+        this.speed = speed;
+
+        var amf = trace.get(0).destination;
+        this.nonUeMessages = new ArrayList<>();
+        var byRecordedUe = new LinkedHashMap<Long, List<ReplayTemplate>>();
+        var firstTimestamps = new LinkedHashMap<Long, Long>();
+        long origin = trace.get(0).timestamp;
+
+        for (var message : trace) {
+            if (!message.destination.equals(amf))
+                continue;
+
+            var ranUeNgapId = ReplayTemplate.readRanUeNgapId(message.payload);
+            if (ranUeNgapId == null) {
+                nonUeMessages.add(ReplayTemplate.learn(message.payload, message.timestamp - origin));
+            } else {
+                long first = firstTimestamps.computeIfAbsent(ranUeNgapId, id -> message.timestamp);
+                byRecordedUe.computeIfAbsent(ranUeNgapId, id -> new ArrayList<>())
+                        .add(ReplayTemplate.learn(message.payload, message.timestamp - first));
+            }
+        }
+        this.ueMessages = new ArrayList<>(byRecordedUe.values());
+
+        this.scheduler = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            var thread = new Thread(runnable, "replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sessions = new ConcurrentHashMap<>();
+        this.sentMessages = new AtomicLong();
+        this.receivedMessages = new AtomicLong();
+    }
+
+    public int getRecordedUeCount() {
+        return ueMessages.size();
+    }
+
+    /**
+     * Replays the capture and blocks until every UE has sent its last message, or the timeout elapses.
+     *
+     * @param ueCount             number of replayed UEs per recorded UE.
+     * @param ueStartInterval     time between the starts of two consecutive replayed UEs.
+     * @param firstRanUeNgapId    RAN-UE-NGAP-ID of the first replayed UE, the others are numbered consecutively.
+     * @return whether every UE has completed
+     */
+    public boolean replay(int ueCount, long ueStartInterval, TimeUnit unit, long firstRanUeNgapId,
+                          long timeout, TimeUnit timeoutUnit) throws Exception {
+        var receiver = new Thread(() -> {
+            try {
+                ISCTPBufferHandler handler = (receivedBuffer, messageInfo, channel) -> onDownlink(receivedBuffer);
+                sctpClient.receiverLoop(handler);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }, "replay-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+
+        long startNanos = System.nanoTime();
+        for (var message : nonUeMessages) {
+            long delay = startNanos + scale(message.offsetNanos) - System.nanoTime();
+            if (delay > 0) TimeUnit.NANOSECONDS.sleep(delay);
+            sctpClient.send(Constants.NON_UE_ASSOCIATED_STREAM_NUMBER, message.pdu);
+            sentMessages.incrementAndGet();
+        }
+
+        long ueStartNanos = System.nanoTime();
+        long intervalNanos = unit.toNanos(ueStartInterval);
+        remainingSessions = new CountDownLatch(ueCount * ueMessages.size());
+
+        int ueIndex = 0;
+        for (int replica = 0; replica < ueCount; replica++) {
+            for (var messages : ueMessages) {
+                long ranUeNgapId = firstRanUeNgapId + ueIndex;
+                var session = new ReplaySession(this, ueIndex, ranUeNgapId, messages,
+                        ueStartNanos + replica * intervalNanos);
+                sessions.put(ranUeNgapId, session);
+                schedule(session::advance, ueStartNanos + replica * intervalNanos - System.nanoTime(),
+                        TimeUnit.NANOSECONDS);
+                ueIndex++;
+            }
+        }
+
+        boolean completed = remainingSessions.await(timeout, timeoutUnit);
+        long elapsed = System.nanoTime() - startNanos;
+
+        long waiting = sessions.values().stream().filter(ReplaySession::isWaitingForAmf).count();
+        Console.println(Color.BLUE, "Replay %s: %d UEs, %d messages sent, %d received in %.3f s (%.1f msg/s)%s",
+                completed ? "completed" : "timed out", ueIndex, sentMessages.get(), receivedMessages.get(),
+                elapsed / 1e9, sentMessages.get() / (elapsed / 1e9),
+                waiting > 0 ? String.format(", %d UEs waiting for AMF-UE-NGAP-ID", waiting) : "");
+
+        scheduler.shutdownNow();
+        sctpClient.abortReceiver();
+        return completed;
+    }
+
+    long scale(long offsetNanos) {
+        return speed > 0 ? (long) (offsetNanos / speed) : 0;
+    }
+
+    void schedule(Runnable task, long delay, TimeUnit unit) {
+        scheduler.schedule(task, Math.max(0, delay), unit);
+    }
+
+    void send(ReplaySession session, byte[] pdu) {
+        try {
+            sctpClient.send(simContext.getStreamNumber(session.ranUeNgapId), pdu);
+            sentMessages.incrementAndGet();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    void sessionCompleted(ReplaySession session) {
+        remainingSessions.countDown();
+    }
+
+    private void onDownlink(ByteBuffer receivedBuffer) {
+        receivedMessages.incrementAndGet();
+
+        var pdu = new byte[receivedBuffer.remaining()];
+        receivedBuffer.get(pdu);
+
+        var ranUeNgapId = ReplayTemplate.readRanUeNgapId(pdu);
+        if (ranUeNgapId == null)
+            return;
+        var session = sessions.get(ranUeNgapId);
+        if (session == null)
+            return;
+        var amfUeNgapId = ReplayTemplate.readAmfUeNgapId(pdu);
+        if (amfUeNgapId != null) {
+            session.amfUeNgapIdReceived(amfUeNgapId);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package tr.havelsan.ueransim.scenario;
+
+import tr.havelsan.ueransim.FlowScanner;
+import tr.havelsan.ueransim.FlowTemplate;
+import tr.havelsan.ueransim.InputGenerator;
+import tr.havelsan.ueransim.mts.ImplicitTypedObject;
+import tr.havelsan.ueransim.mts.MtsDecoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable, fully resolved form of a scenario file. A scenario has the steps run once for the gNB (e.g. NG Setup)
+ * and the steps run for every UE, for example:
+ * <pre>
+ * gnb:
+ *   - flow: NgSetupFlow
+ *     input: ngsetup.yaml
+ * ue:
+ *   - flow: RegistrationFlow
+ *     input: registration.yaml
+ *     perUe:
+ *       mobileIdentity.schemeOutput: { start: 1, pattern: '%09d' }
+ *   - think: 1000
+ *   - loop:
+ *       count: 3
+ *       steps:
+ *         - flow: UEContextReleaseRequestFlow
+ *           input: ueContextReleaseRequest.yaml
+ *         - think: 5000
+ *         - flow: ServiceRequestFlow
+ *           input: serviceRequest.yaml
+ *   - flow: DeregistrationFlow
+ *     input: deregistration.yaml
+ * </pre>
+ * The optional <code>perUe</code> values of a flow make its input differ for each UE, see {@link InputGenerator}.
+ * Think times are in milliseconds. A flow input is either the path of an input file, or given inline (which also
+ * allows MTS references). All inputs are decoded when the plan is loaded, and the plan is shared by all UEs.
+ */
+public class ScenarioPlan {
+    private final List<Step> gnbSteps;
+    private final List<Step> ueSteps;
+
+    private ScenarioPlan(List<Step> gnbSteps, List<Step> ueSteps) {
+        this.gnbSteps = gnbSteps;
+        this.ueSteps = ueSteps;
+    }
+
+    public static ScenarioPlan load(String path) {
+        var scenario = MtsDecoder.decode(path);
+        if (!(scenario instanceof ImplicitTypedObject))
+            throw new RuntimeException("invalid scenario file: " + path);
+
+        var parameters = ((ImplicitTypedObject) scenario).getParameters();
+        for (var key : parameters.keySet()) {
+            if (!key.equals("gnb") && !key.equals("ue"))
+                throw new RuntimeException("unrecognized scenario key: " + key);
+        }
+
+        var ueSteps = parseSteps(parameters.get("ue"), "ue");
+        if (ueSteps.isEmpty())
+            throw new RuntimeException("scenario has no UE steps: " + path);
+        return new ScenarioPlan(parseSteps(parameters.get("gnb"), "gnb"), ueSteps);
+    }
+
+    private static List<Step> parseSteps(Object value, String location) {
+        if (value == null)
+            return List.of();
+        if (!(value instanceof Object[]))
+            throw new RuntimeException("steps must be a list: " + location);
+
+        var array = (Object[]) value;
+        var steps = new ArrayList<Step>(array.length);
+        for (int i = 0; i < array.length; i++) {
+            steps.add(parseStep(array[i], location + "[" + i + "]"));
+        }
+        return List.copyOf(steps);
+    }
+
+    private static Step parseStep(Object value, String location) {
+        if (!(value instanceof ImplicitTypedObject))
+            throw new RuntimeException("invalid step: " + location);
+        var parameters = ((ImplicitTypedObject) value).getParameters();
+
+        if (parameters.containsKey("flow")) {
+            var flowName = String.valueOf(parameters.get("flow"));
+            var flowType = FlowScanner.getFlowType(flowName);
+            if (flowType == null)
+                throw new RuntimeException("Flow not found: " + flowName + " (" + location + ")");
+            return new FlowStep(new FlowTemplate(flowType, readInput(parameters.get("input")),
+                    readPerUeValues(parameters.get("perUe"), location)));
+        }
+
+        if (parameters.containsKey("think")) {
+            var think = parameters.get("think");
+            if (!(think instanceof Number) || ((Number) think).longValue() < 0)
+                throw new RuntimeException("think time must be a non-negative number: " + location);
+            return new ThinkStep(TimeUnit.MILLISECONDS.toNanos(((Number) think).longValue()));
+        }
+
+        if (parameters.containsKey("loop")) {
+            var loop = parameters.get("loop");
+            if (!(loop instanceof ImplicitTypedObject))
+                throw new RuntimeException("invalid loop: " + location);
+            var loopParameters = ((ImplicitTypedObject) loop).getParameters();
+            var count = loopParameters.get("count");
+            if (!(count instanceof Number) || ((Number) count).intValue() < 0)
+                throw new RuntimeException("loop count must be a non-negative number: " + location);
+            return new LoopStep(((Number) count).intValue(), parseSteps(loopParameters.get("steps"), location + ".loop"));
+        }
+
+        throw new RuntimeException("step must have one of flow, think or loop: " + location);
+    }
+
+    private static Map<String, Object> readInput(Object input) {
+        if (input == null)
+            return null;
+        if (input instanceof String)
+            input = MtsDecoder.decode((String) input);
+        if (!(input instanceof ImplicitTypedObject))
+            throw new RuntimeException("invalid flow input: " + input);
+        return ((ImplicitTypedObject) input).getParameters();
+    }
+
+    private static Map<String, InputGenerator.ValueSpec> readPerUeValues(Object perUe, String location) {
+        if (perUe == null)
+            return Map.of();
+        if (!(perUe instanceof ImplicitTypedObject))
+            throw new RuntimeException("invalid per-UE values: " + location);
+        return InputGenerator.parseSpecs(((ImplicitTypedObject) perUe).getParameters());
+    }
+
+    public List<Step> getGnbSteps() {
+        return gnbSteps;
+    }
+
+    public List<Step> getUeSteps() {
+        return ueSteps;
+    }
+
+    //======================================================================================================
+    //                                             STEPS
+    //======================================================================================================
+
+    public abstract static class Step {
+        private Step() {
+        }
+    }
+
+    public static final class FlowStep extends Step {
+        public final FlowTemplate template;
+
+        FlowStep(FlowTemplate template) {
+            this.template = template;
+        }
+    }
+
+    public static final class ThinkStep extends Step {
+        public final long nanos;
+
+        ThinkStep(long nanos) {
+            this.nanos = nanos;
+        }
+    }
+
+    public static final class LoopStep extends Step {
+        public final int count;
+        public final List<Step> steps;
+
+        LoopStep(int count, List<Step> steps) {
+            this.count = count;
+            this.steps = steps;
+        }
+    }
+}
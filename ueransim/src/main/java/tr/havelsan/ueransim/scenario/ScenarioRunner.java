@@ -0,0 +1,201 @@
+package tr.havelsan.ueransim.scenario;
+
+import tr.havelsan.ueransim.FlowEngine;
+import tr.havelsan.ueransim.contexts.SimulationContext;
+import tr.havelsan.ueransim.utils.Color;
+import tr.havelsan.ueransim.utils.Console;
+import tr.havelsan.ueransim.utils.TimingWheel;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs a {@link ScenarioPlan} on a {@link FlowEngine}: the gNB steps once, then the UE steps for each UE. The flows
+ * of a UE share its simulation context and run one after another; think times are waited on a timing wheel, so a
+ * waiting UE costs no thread.
+ */
+public class ScenarioRunner {
+    private final FlowEngine engine;
+    private final ScenarioPlan plan;
+    private final TimingWheel timers;
+
+    private final AtomicInteger completedUes;
+    private final AtomicInteger failedUes;
+    private volatile boolean gnbStepsFailed;
+
+    public ScenarioRunner(FlowEngine engine, ScenarioPlan plan) {
+        this.engine = engine;
+        this.plan = plan;
+        this.timers = new TimingWheel("scenario-timers", 1, TimeUnit.MILLISECONDS, 4096);
+        this.completedUes = new AtomicInteger();
+        this.failedUes = new AtomicInteger();
+    }
+
+    /**
+     * Runs the gNB steps, then starts the UEs at the given interval and waits for all of them to end. The interval
+     * and the timeout are both in the given unit.
+     *
+     * @return <code>true</code> if the gNB steps and the steps of every UE completed within the timeout
+     */
+    public boolean run(int ueCount, long ueStartInterval, long timeout, TimeUnit unit) throws InterruptedException {
+        return run(ueCount, 0, ueStartInterval, timeout, unit);
+    }
+
+    /**
+     * Same as {@link #run(int, long, long, TimeUnit)}, with the UEs having the indexes starting from
+     * <code>firstUeIndex</code>. Runs against the same AMF use distinct indexes, so that their UEs get distinct
+     * identities from the flow templates.
+     */
+    public boolean run(int ueCount, int firstUeIndex, long ueStartInterval, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        timers.start();
+        try {
+            if (!plan.getGnbSteps().isEmpty()) {
+                var gnbDone = new CountDownLatch(1);
+                var gnbSucceeded = new boolean[1];
+                new Execution(plan.getGnbSteps(), engine.createUeContext(), 0, success -> {
+                    gnbSucceeded[0] = success;
+                    gnbDone.countDown();
+                }).next();
+
+                if (!gnbDone.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS) || !gnbSucceeded[0]) {
+                    gnbStepsFailed = true;
+                    Console.println(Color.RED, "Scenario gNB steps failed");
+                    return false;
+                }
+            }
+
+            var uesDone = new CountDownLatch(ueCount);
+            for (int i = 0; i < ueCount; i++) {
+                int ueIndex = firstUeIndex + i;
+                var execution = new Execution(plan.getUeSteps(), engine.createUeContext(), ueIndex, success -> {
+                    if (success) {
+                        completedUes.incrementAndGet();
+                    } else {
+                        failedUes.incrementAndGet();
+                    }
+                    uesDone.countDown();
+                });
+                timers.schedule(execution::resume, i * ueStartInterval, unit);
+            }
+
+            boolean finished = uesDone.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            Console.println(Color.BLUE, "Scenario %s: %d UEs completed, %d failed, %d still running",
+                    finished ? "finished" : "timed out", completedUes.get(), failedUes.get(), uesDone.getCount());
+            return finished && failedUes.get() == 0;
+        } finally {
+            timers.stop();
+        }
+    }
+
+    public int getCompletedUeCount() {
+        return completedUes.get();
+    }
+
+    public int getFailedUeCount() {
+        return failedUes.get();
+    }
+
+    public boolean hasGnbStepsFailed() {
+        return gnbStepsFailed;
+    }
+
+    /**
+     * Position of one UE in the plan. Only one step of a UE is in progress at a time, and each step calls
+     * {@link #next()} when it ends. The execution holds a reference to the UE's context until it is done, so that
+     * the UE is kept in the store between its flows.
+     */
+    private class Execution {
+        private final SimulationContext simContext;
+        private final int ueIndex;
+        private final Consumer<Boolean> onDone;
+        private final ArrayDeque<Frame> frames;
+
+        Execution(List<ScenarioPlan.Step> steps, SimulationContext simContext, int ueIndex, Consumer<Boolean> onDone) {
+            this.simContext = simContext;
+            this.ueIndex = ueIndex;
+            this.onDone = onDone;
+            this.frames = new ArrayDeque<>();
+            this.frames.push(new Frame(steps, 1));
+            simContext.retain();
+        }
+
+        /**
+         * Continues with the next step on one of the engine's workers. Called on the timer thread, which must not
+         * create or start flows itself, so that it keeps ticking on time.
+         */
+        void resume() {
+            engine.execute(this::next);
+        }
+
+        void next() {
+            while (true) {
+                var frame = frames.peek();
+                if (frame == null) {
+                    done(true);
+                    return;
+                }
+                if (frame.index == frame.steps.size()) {
+                    if (--frame.remaining > 0) {
+                        frame.index = 0;
+                    } else {
+                        frames.pop();
+                    }
+                    continue;
+                }
+
+                var step = frame.steps.get(frame.index++);
+                if (step instanceof ScenarioPlan.LoopStep) {
+                    var loop = (ScenarioPlan.LoopStep) step;
+                    if (loop.count > 0 && !loop.steps.isEmpty()) {
+                        frames.push(new Frame(loop.steps, loop.count));
+                    }
+                } else if (step instanceof ScenarioPlan.ThinkStep) {
+                    timers.schedule(this::resume, ((ScenarioPlan.ThinkStep) step).nanos, TimeUnit.NANOSECONDS);
+                    return;
+                } else {
+                    startFlow((ScenarioPlan.FlowStep) step);
+                    return;
+                }
+            }
+        }
+
+        private void startFlow(ScenarioPlan.FlowStep step) {
+            try {
+                var flow = step.template.create(simContext, ueIndex);
+                engine.startFlow(flow, System.nanoTime(), (f, success, durationNanos) -> {
+                    if (success) {
+                        next();
+                    } else {
+                        done(false);
+                    }
+                });
+            } catch (Exception e) {
+                Console.println(Color.RED, "%s could not be started: %s",
+                        step.template.getFlowType().getSimpleName(), e);
+                done(false);
+            }
+        }
+
+        private void done(boolean success) {
+            simContext.release();
+            onDone.accept(success);
+        }
+    }
+
+    private static class Frame {
+        final List<ScenarioPlan.Step> steps;
+        int index;
+        int remaining;
+
+        Frame(List<ScenarioPlan.Step> steps, int remaining) {
+            this.steps = steps;
+            this.remaining = remaining;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package tr.havelsan.ueransim.contexts;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+public class Test_UeContextStore {
+
+    @Test
+    public void testReleaseAndReuse() {
+        var store = new UeContextStore(16);
+        int ue1 = store.allocate();
+        int ue2 = store.allocate();
+        Assert.assertEquals(2, store.size());
+        Assert.assertEquals(UeContextStore.STATE_DEREGISTERED, store.getState(ue1));
+
+        store.setRanUeNgapId(ue1, 1000);
+        store.setAmfUeNgapId(ue1, 2000);
+        store.set5gSTmsi(ue1, 3000);
+        store.setUplinkNasCount(ue1, 5);
+        store.setOwner(ue1, "flow");
+        store.release(ue1);
+
+        Assert.assertEquals(1, store.size());
+        Assert.assertEquals(UeContextStore.STATE_FREE, store.getState(ue1));
+        Assert.assertEquals(UeContextStore.NOT_FOUND, store.findByRanUeNgapId(1000));
+        Assert.assertEquals(UeContextStore.NOT_FOUND, store.findByAmfUeNgapId(2000));
+        Assert.assertEquals(UeContextStore.NOT_FOUND, store.findBy5gSTmsi(3000));
+
+        // the released index is reused, without any state of the previous UE
+        int ue3 = store.allocate();
+        Assert.assertEquals(ue1, ue3);
+        Assert.assertEquals(0, store.getRanUeNgapId(ue3));
+        Assert.assertEquals(0, store.getAmfUeNgapId(ue3));
+        Assert.assertEquals(0, store.getUplinkNasCount(ue3));
+        Assert.assertNull(store.getOwner(ue3));
+        Assert.assertEquals(UeContextStore.STATE_DEREGISTERED, store.getState(ue2));
+
+        try {
+            store.release(ue2);
+            store.release(ue2);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void testReindex() {
+        var store = new UeContextStore(16);
+        int ue = store.allocate();
+
+        store.setRanUeNgapId(ue, 1000);
+        store.setRanUeNgapId(ue, 1001);
+        Assert.assertEquals(UeContextStore.NOT_FOUND, store.findByRanUeNgapId(1000));
+        Assert.assertEquals(ue, store.findByRanUeNgapId(1001));
+
+        store.setAmfUeNgapId(ue, 2000);
+        store.setAmfUeNgapId(ue, 0);
+        Assert.assertEquals(UeContextStore.NOT_FOUND, store.findByAmfUeNgapId(2000));
+        Assert.assertEquals(UeContextStore.NOT_FOUND, store.findByAmfUeNgapId(0));
+
+        // an id taken over by another UE is not unindexed when the previous UE changes its id
+        int other = store.allocate();
+        store.set5gSTmsi(ue, 3000);
+        store.set5gSTmsi(other, 3000);
+        store.set5gSTmsi(ue, 3001);
+        Assert.assertEquals(other, store.findBy5gSTmsi(3000));
+        Assert.assertEquals(ue, store.findBy5gSTmsi(3001));
+    }
+
+    @Test
+    public void testGrowth() {
+        var store = new UeContextStore(16);
+        for (int i = 0; i < 1000; i++) {
+            int ue = store.allocate();
+            store.setRanUeNgapId(ue, 1000 + i);
+        }
+        Assert.assertEquals(1000, store.size());
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(1000 + i, store.getRanUeNgapId(store.findByRanUeNgapId(1000 + i)));
+        }
+    }
+
+    @Test
+    public void testSetAmfUeNgapIdIf() {
+        var store = new UeContextStore(16);
+        int ue = store.allocate();
+        store.setRanUeNgapId(ue, 1000);
+        store.setOwner(ue, "flow");
+
+        Assert.assertTrue(store.setAmfUeNgapIdIf(ue, 1000, "flow", 2000));
+        Assert.assertEquals(ue, store.findByAmfUeNgapId(2000));
+        Assert.assertFalse(store.setAmfUeNgapIdIf(ue, 1000, "other flow", 2001));
+
+        // a message of a released UE must not change the UE reusing its index
+        store.release(ue);
+        Assert.assertFalse(store.setAmfUeNgapIdIf(ue, 1000, "flow", 2000));
+        int reused = store.allocate();
+        Assert.assertEquals(ue, reused);
+        Assert.assertFalse(store.setAmfUeNgapIdIf(reused, 1000, null, 2000));
+        Assert.assertEquals(0, store.getAmfUeNgapId(reused));
+        Assert.assertEquals(UeContextStore.NOT_FOUND, store.findByAmfUeNgapId(2000));
+    }
+}
@@ -0,0 +1,54 @@
+package tr.havelsan.ueransim.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the class indexes generated at compile time, without loading any of the listed classes.
+ */
+public class ClassIndex {
+
+    /**
+     * Returns the whitespace separated fields of the lines of the given index, from all modules on the classpath
+     * having one.
+     */
+    public static List<String[]> read(String resource) {
+        var entries = new ArrayList<String[]>();
+        try {
+            var urls = ClassIndex.class.getClassLoader().getResources(resource);
+            if (!urls.hasMoreElements())
+                throw new RuntimeException("class index not found: " + resource);
+
+            while (urls.hasMoreElements()) {
+                var url = urls.nextElement();
+                try (var reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if (!line.isEmpty()) {
+                            entries.add(line.split("\\s+"));
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return entries;
+    }
+
+    /**
+     * Loads the given class without initializing it.
+     */
+    public static Class<?> loadClass(String binaryName) {
+        try {
+            return Class.forName(binaryName, false, ClassIndex.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
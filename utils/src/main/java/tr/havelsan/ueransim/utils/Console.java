@@ -17,7 +17,7 @@ public class Console {
         return String.format("[%s] ", DATE_FORMAT.format(cal.getTime()));
     }
 
-    public static void println(Color color, String format, Object... args) {
+    public synchronized static void println(Color color, String format, Object... args) {
         if (color == null)
             color = Color.RESET;
         String string = String.format(format, args);
@@ -30,7 +30,7 @@ public class Console {
         startOfLine = true;
     }
 
-    public static void println(String format, Object... args) {
+    public synchronized static void println(String format, Object... args) {
         String string = String.format(format, args);
         if (startOfLine) {
             startOfLine = false;
@@ -41,12 +41,12 @@ public class Console {
         startOfLine = true;
     }
 
-    public static void println() {
+    public synchronized static void println() {
         outputLine();
         startOfLine = true;
     }
 
-    public static void print(String format, Object... args) {
+    public synchronized static void print(String format, Object... args) {
         String string = String.format(format, args);
         if (startOfLine) {
             startOfLine = false;
@@ -56,7 +56,7 @@ public class Console {
         output(string);
     }
 
-    public static void print(Color color, String format, Object... args) {
+    public synchronized static void print(Color color, String format, Object... args) {
         if (color == null)
             color = Color.RESET;
         String string = String.format(format, args);
@@ -68,7 +68,7 @@ public class Console {
         output(color + string + Color.RESET);
     }
 
-    public static void printDiv() {
+    public synchronized static void printDiv() {
         println("-----------------------------------------------------------------------------");
     }
 
@@ -0,0 +1,151 @@
+package tr.havelsan.ueransim.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of non-negative values, in the style of HdrHistogram. Values below 128 are counted exactly,
+ * larger values are counted in buckets whose width is at most 1/64 of the value, so percentiles are accurate to
+ * about 1.5%.
+ * <p>
+ * Recording is lock-free and allocation-free, and may be done from any number of threads. Snapshots taken by
+ * {@link #copy()} and {@link #copyAndReset()} can be merged with {@link #add(LatencyHistogram)}.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts;
+    private final AtomicLongArray summary; // total count, sum, max
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.summary = new AtomicLongArray(3);
+    }
+
+    private static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the largest value counted in the bucket with the given index.
+     */
+    private static long highestValueOf(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT)
+            return index;
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts.incrementAndGet(indexOf(value));
+        summary.incrementAndGet(0);
+        summary.addAndGet(1, value);
+
+        long max;
+        while (value > (max = summary.get(2)) && !summary.compareAndSet(2, max, value)) {
+            // retry
+        }
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        summary.addAndGet(0, other.summary.get(0));
+        summary.addAndGet(1, other.summary.get(1));
+
+        long value = other.summary.get(2);
+        long max;
+        while (value > (max = summary.get(2)) && !summary.compareAndSet(2, max, value)) {
+            // retry
+        }
+    }
+
+    public LatencyHistogram copy() {
+        var copy = new LatencyHistogram();
+        copy.add(this);
+        return copy;
+    }
+
+    /**
+     * Returns a copy of this histogram and clears it. Values recorded concurrently end up in exactly one of them.
+     */
+    public LatencyHistogram copyAndReset() {
+        var copy = new LatencyHistogram();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (counts.get(i) != 0) {
+                copy.counts.set(i, counts.getAndSet(i, 0));
+            }
+        }
+        for (int i = 0; i < 3; i++) {
+            copy.summary.set(i, summary.getAndSet(i, 0));
+        }
+        return copy;
+    }
+
+    public long getTotalCount() {
+        return summary.get(0);
+    }
+
+    public long getMax() {
+        return summary.get(2);
+    }
+
+    public double getMean() {
+        long count = summary.get(0);
+        return count == 0 ? 0 : summary.get(1) / (double) count;
+    }
+
+    /**
+     * Returns the value below which the given percentage of the recorded values fall, rounded up to the end of
+     * its bucket. Returns 0 if the histogram is empty.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Formats count, mean and the usual percentiles, with the values divided by <code>unitScale</code> (e.g. 1e6
+     * for nanoseconds recorded and milliseconds printed).
+     */
+    public String toString(double unitScale) {
+        return String.format("n=%d mean=%.3f p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f",
+                getTotalCount(),
+                getMean() / unitScale,
+                getValueAtPercentile(50) / unitScale,
+                getValueAtPercentile(90) / unitScale,
+                getValueAtPercentile(99) / unitScale,
+                getValueAtPercentile(99.9) / unitScale,
+                getMax() / unitScale);
+    }
+
+    @Override
+    public String toString() {
+        return toString(1);
+    }
+}
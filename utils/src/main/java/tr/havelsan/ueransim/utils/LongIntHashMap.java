@@ -0,0 +1,133 @@
+package tr.havelsan.ueransim.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from <code>long</code> keys to non-negative <code>int</code> values, without boxing.
+ * Uses linear probing and backward-shift deletion, so there are no tombstones. Not thread-safe.
+ */
+public class LongIntHashMap {
+    public static final int NO_VALUE = -1;
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values; // NO_VALUE marks a free slot
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        Arrays.fill(values, NO_VALUE);
+        this.mask = capacity - 1;
+        this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int hash(long key) {
+        // murmur3 finalizer, to spread sequential ids
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    public int get(long key) {
+        int index = hash(key) & mask;
+        while (values[index] != NO_VALUE) {
+            if (keys[index] == key)
+                return values[index];
+            index = (index + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Returns the previous value of the key, or {@link #NO_VALUE}.
+     */
+    public int put(long key, int value) {
+        if (value < 0) throw new IllegalArgumentException("value must be non-negative");
+
+        int index = hash(key) & mask;
+        while (values[index] != NO_VALUE) {
+            if (keys[index] == key) {
+                int old = values[index];
+                values[index] = value;
+                return old;
+            }
+            index = (index + 1) & mask;
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Returns the removed value of the key, or {@link #NO_VALUE}.
+     */
+    public int remove(long key) {
+        int index = hash(key) & mask;
+        while (values[index] != NO_VALUE) {
+            if (keys[index] == key) {
+                int old = values[index];
+                shiftBack(index);
+                size--;
+                return old;
+            }
+            index = (index + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void shiftBack(int freed) {
+        int index = freed;
+        while (true) {
+            index = (index + 1) & mask;
+            if (values[index] == NO_VALUE)
+                break;
+
+            // move the entry to the freed slot unless its home slot lies cyclically in (freed, index]
+            int home = hash(keys[index]) & mask;
+            if (((index - home) & mask) >= ((index - freed) & mask)) {
+                keys[freed] = keys[index];
+                values[freed] = values[index];
+                freed = index;
+            }
+        }
+        values[freed] = NO_VALUE;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != NO_VALUE) {
+                int index = hash(oldKeys[i]) & mask;
+                while (values[index] != NO_VALUE) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+}
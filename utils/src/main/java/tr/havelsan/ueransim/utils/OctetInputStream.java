@@ -20,6 +20,14 @@ public class OctetInputStream {
         this(data, true);
     }
 
+    /**
+     * Creates a big endian stream over the data, positioned at the given index.
+     */
+    public OctetInputStream(byte[] data, int index) {
+        this(data, true);
+        this.index = index;
+    }
+
     /************ Peek Bit ************/
 
     public int peekBitI(int offset) {
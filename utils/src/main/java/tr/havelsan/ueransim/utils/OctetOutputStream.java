@@ -6,12 +6,17 @@ import tr.havelsan.ueransim.utils.bits.BitN;
 import tr.havelsan.ueransim.utils.octets.*;
 import tr.havelsan.ueransim.utils.octets.*;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
+/**
+ * Writes octets into a single byte array, which is grown as needed. Length fields can be written as placeholders
+ * and set with {@link #setOctet} or {@link #setOctet2} once the length is known.
+ */
 public class OctetOutputStream {
-    private final List<Octet> data;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private byte[] data;
+    private int length;
     private final boolean isBigEndian;
 
     public OctetOutputStream() {
@@ -19,16 +24,33 @@ public class OctetOutputStream {
     }
 
     public OctetOutputStream(boolean isBigEndian) {
-        this.data = new ArrayList<>();
+        this(new byte[INITIAL_CAPACITY], isBigEndian);
+    }
+
+    /**
+     * Creates a big endian stream writing into the buffer from its start. The buffer is replaced with a larger
+     * copy if it is exhausted, see {@link #getBuffer}.
+     */
+    public OctetOutputStream(byte[] buffer) {
+        this(buffer, true);
+    }
+
+    public OctetOutputStream(byte[] buffer, boolean isBigEndian) {
+        this.data = buffer;
+        this.length = 0;
         this.isBigEndian = isBigEndian;
     }
 
     public void writeOctet(int octet) {
-        writeOctet(new Octet(octet));
+        if (octet < 0)
+            throw new IllegalArgumentException("negative value");
+        if (length == data.length)
+            grow(1);
+        data[length++] = (byte) octet;
     }
 
     public void writeOctet(Octet octet) {
-        data.add(octet);
+        writeOctet(octet.intValue());
     }
 
     public void writeOctet(Bit8 octet) {
@@ -46,13 +68,7 @@ public class OctetOutputStream {
     }
 
     public void writeOctet2(Octet bigOctet, Octet littleOctet) {
-        if (isBigEndian) {
-            writeOctet(bigOctet);
-            writeOctet(littleOctet);
-        } else {
-            writeOctet(littleOctet);
-            writeOctet(bigOctet);
-        }
+        writeOctet2(bigOctet.intValue(), littleOctet.intValue());
     }
 
     public void writeOctet2(int bigOctet, int littleOctet) {
@@ -66,17 +82,13 @@ public class OctetOutputStream {
     }
 
     public void writeOctet2(Octet2 octet2) {
-        if (isBigEndian) {
-            writeOctet(octet2.intValue() >> 8 & 0xFF);
-            writeOctet(octet2.intValue() & 0xFF);
-        } else {
-            writeOctet(octet2.intValue() & 0xFF);
-            writeOctet(octet2.intValue() >> 8 & 0xFF);
-        }
+        writeOctet2(octet2.intValue() >> 8 & 0xFF, octet2.intValue() & 0xFF);
     }
 
     public void writeOctet2(int octet2) {
-        writeOctet2(new Octet2(octet2));
+        if (octet2 < 0)
+            throw new IllegalArgumentException("negative value");
+        writeOctet2(octet2 >> 8 & 0xFF, octet2 & 0xFF);
     }
 
     public void writeOctet4(Octet4 octet4) {
@@ -96,22 +108,28 @@ public class OctetOutputStream {
     }
 
     public void writeStream(OctetOutputStream stream) {
-        var data = stream.data;
-        for (var octet : data) {
-            writeOctet(octet);
-        }
+        writeOctets(stream.data, stream.length);
     }
 
     public void writeOctetString(OctetString octetString) {
-        writeOctets(octetString.getAsArray());
+        for (int i = 0; i < octetString.length; i++) {
+            writeOctet(octetString.get(i).intValue());
+        }
     }
 
     public void writeOctets(Octet[] octets) {
-        data.addAll(Arrays.asList(octets));
+        for (var octet : octets) {
+            writeOctet(octet.intValue());
+        }
     }
 
     private void writeOctetN(OctetN octets) {
-        writeOctets(octets.toOctetArray(isBigEndian));
+        long value = octets.longValue();
+        int count = octets.octetCount();
+        for (int i = 0; i < count; i++) {
+            int shift = 8 * (isBigEndian ? count - 1 - i : i);
+            writeOctet((int) (value >> shift & 0xFF));
+        }
     }
 
     public void writeOctets(int[] octets) {
@@ -121,9 +139,14 @@ public class OctetOutputStream {
     }
 
     public void writeOctets(byte[] octets) {
-        for (byte octet : octets) {
-            writeOctet(octet & 0xFF);
-        }
+        writeOctets(octets, octets.length);
+    }
+
+    private void writeOctets(byte[] octets, int count) {
+        if (data.length - length < count)
+            grow(count);
+        System.arraycopy(octets, 0, data, length, count);
+        length += count;
     }
 
     public void writeBits(BitN value, boolean useMsb) {
@@ -134,27 +157,58 @@ public class OctetOutputStream {
         writeBits(value, true);
     }
 
+    /**
+     * Overwrites the already written octet at the index.
+     */
+    public void setOctet(int index, int octet) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+        if (octet < 0 || octet > 0xFF)
+            throw new IllegalArgumentException("value does not fit into an octet: " + octet);
+        data[index] = (byte) octet;
+    }
+
+    /**
+     * Overwrites the already written two octets starting at the index.
+     */
+    public void setOctet2(int index, int octet2) {
+        if (octet2 < 0 || octet2 > 0xFFFF)
+            throw new IllegalArgumentException("value does not fit into two octets: " + octet2);
+        setOctet(isBigEndian ? index : index + 1, octet2 >> 8);
+        setOctet(isBigEndian ? index + 1 : index, octet2 & 0xFF);
+    }
+
     public Octet[] toOctetArray() {
-        return data.toArray(new Octet[0]);
+        Octet[] arr = new Octet[length];
+        for (int i = 0; i < length; i++)
+            arr[i] = new Octet(data[i] & 0xFF);
+        return arr;
     }
 
     public int[] toIntArray() {
-        Octet[] arr = toOctetArray();
-        int[] buf = new int[arr.length];
-        for (int i = 0; i < arr.length; i++)
-            buf[i] = arr[i].intValue();
+        int[] buf = new int[length];
+        for (int i = 0; i < length; i++)
+            buf[i] = data[i] & 0xFF;
         return buf;
     }
 
     public byte[] toByteArray() {
-        Octet[] arr = toOctetArray();
-        byte[] buf = new byte[arr.length];
-        for (int i = 0; i < arr.length; i++)
-            buf[i] = (byte) arr[i].intValue();
-        return buf;
+        return Arrays.copyOf(data, length);
+    }
+
+    /**
+     * Returns the array holding the written octets in its first {@link #length()} elements. It is the buffer given
+     * to the constructor, unless that has been outgrown.
+     */
+    public byte[] getBuffer() {
+        return data;
     }
 
     public int length() {
-        return data.size();
+        return length;
+    }
+
+    private void grow(int required) {
+        data = Arrays.copyOf(data, Math.max(Math.max(data.length * 2, INITIAL_CAPACITY), length + required));
     }
 }
@@ -0,0 +1,99 @@
+package tr.havelsan.ueransim.utils;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+public class Test_LongIntHashMap {
+
+    @Test
+    public void testPutGetRemove() {
+        var map = new LongIntHashMap();
+        Assert.assertEquals(LongIntHashMap.NO_VALUE, map.get(1000));
+        Assert.assertEquals(LongIntHashMap.NO_VALUE, map.put(1000, 1));
+        Assert.assertEquals(1, map.put(1000, 2));
+        Assert.assertEquals(2, map.get(1000));
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals(2, map.remove(1000));
+        Assert.assertEquals(LongIntHashMap.NO_VALUE, map.remove(1000));
+        Assert.assertEquals(LongIntHashMap.NO_VALUE, map.get(1000));
+        Assert.assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testNegativeValue() {
+        var map = new LongIntHashMap();
+        try {
+            map.put(1, -1);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void testGrowth() {
+        var map = new LongIntHashMap(2);
+        for (int i = 0; i < 10_000; i++) {
+            map.put(i * 7919L, i);
+        }
+        Assert.assertEquals(10_000, map.size());
+        for (int i = 0; i < 10_000; i++) {
+            Assert.assertEquals(i, map.get(i * 7919L));
+        }
+    }
+
+    @Test
+    public void testRemoveInsideClusters() {
+        // a full table at the load factor has long probe chains, so that removing an entry has to move the entries
+        // after it back; every remaining key must still be found afterwards
+        var map = new LongIntHashMap(64);
+        for (int i = 0; i < 64; i++) {
+            map.put(i, i);
+        }
+        for (int i = 0; i < 64; i += 3) {
+            Assert.assertEquals(i, map.remove(i));
+        }
+        for (int i = 0; i < 64; i++) {
+            Assert.assertEquals(i % 3 == 0 ? LongIntHashMap.NO_VALUE : i, map.get(i));
+        }
+
+        for (int i = 0; i < 64; i += 3) {
+            map.put(i, i + 1);
+        }
+        for (int i = 0; i < 64; i++) {
+            Assert.assertEquals(i % 3 == 0 ? i + 1 : i, map.get(i));
+        }
+        Assert.assertEquals(64, map.size());
+    }
+
+    @Test
+    public void testRandomOperations() {
+        var random = new Random(42);
+        var map = new LongIntHashMap(16);
+        var expected = new HashMap<Long, Integer>();
+
+        for (int i = 0; i < 200_000; i++) {
+            // a small key range keeps the table small and crowded, with many removals inside clusters
+            long key = random.nextInt(512) - 256;
+            int op = random.nextInt(3);
+            if (op == 0) {
+                int value = random.nextInt(Integer.MAX_VALUE);
+                Integer old = expected.put(key, value);
+                Assert.assertEquals(old == null ? LongIntHashMap.NO_VALUE : old, map.put(key, value));
+            } else if (op == 1) {
+                Integer old = expected.remove(key);
+                Assert.assertEquals(old == null ? LongIntHashMap.NO_VALUE : old, map.remove(key));
+            } else {
+                Integer value = expected.get(key);
+                Assert.assertEquals(value == null ? LongIntHashMap.NO_VALUE : value, map.get(key));
+            }
+            Assert.assertEquals(expected.size(), map.size());
+        }
+
+        for (var entry : expected.entrySet()) {
+            Assert.assertEquals((int) entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package tr.havelsan.ueransim.utils;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+public class Test_OctetOutputStream {
+
+    @Test
+    public void testSetOctet() {
+        var stream = new OctetOutputStream();
+        stream.writeOctet(0x11);
+        stream.writeOctet(0);
+        stream.writeOctet(0x33);
+        stream.setOctet(1, 0x22);
+        Assert.assertArrayEquals(new byte[]{0x11, 0x22, 0x33}, stream.toByteArray());
+
+        try {
+            stream.setOctet(3, 0);
+            Assert.fail();
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+        try {
+            stream.setOctet(0, 0x100);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void testSetOctet2BigEndian() {
+        var stream = new OctetOutputStream(true);
+        stream.writeOctet(0x11);
+        stream.writeOctet2(0);
+        stream.setOctet2(1, 0x1234);
+        Assert.assertArrayEquals(new byte[]{0x11, 0x12, 0x34}, stream.toByteArray());
+    }
+
+    @Test
+    public void testSetOctet2LittleEndian() {
+        var stream = new OctetOutputStream(false);
+        stream.writeOctet(0x11);
+        stream.writeOctet2(0);
+        stream.setOctet2(1, 0x1234);
+        Assert.assertArrayEquals(new byte[]{0x11, 0x34, 0x12}, stream.toByteArray());
+
+        // the same value written directly has the same layout
+        var written = new OctetOutputStream(false);
+        written.writeOctet(0x11);
+        written.writeOctet2(0x1234);
+        Assert.assertArrayEquals(written.toByteArray(), stream.toByteArray());
+    }
+
+    @Test
+    public void testSetOctet2Bounds() {
+        var stream = new OctetOutputStream();
+        stream.writeOctet2(0);
+        try {
+            stream.setOctet2(1, 0);
+            Assert.fail();
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+        try {
+            stream.setOctet2(0, 0x10000);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void testCallerBuffer() {
+        var buffer = new byte[4];
+        var stream = new OctetOutputStream(buffer);
+        stream.writeOctets(new byte[]{1, 2, 3, 4});
+        Assert.assertSame(buffer, stream.getBuffer());
+
+        // growing copies the written octets into a new array and leaves the caller's buffer alone
+        stream.writeOctet(5);
+        Assert.assertFalse(buffer == stream.getBuffer());
+        Assert.assertEquals(5, stream.length());
+        Assert.assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, stream.toByteArray());
+        Assert.assertArrayEquals(new byte[]{1, 2, 3, 4}, buffer);
+
+        stream.setOctet(0, 9);
+        Assert.assertEquals(9, stream.getBuffer()[0]);
+        Assert.assertEquals(1, buffer[0]);
+    }
+
+    @Test
+    public void testGrowthByLargeWrite() {
+        var stream = new OctetOutputStream(new byte[2]);
+        var octets = new byte[1000];
+        for (int i = 0; i < octets.length; i++) {
+            octets[i] = (byte) i;
+        }
+        stream.writeOctet(0xFF);
+        stream.writeOctets(octets);
+        Assert.assertEquals(1001, stream.length());
+        Assert.assertEquals((byte) 0xFF, stream.toByteArray()[0]);
+        Assert.assertEquals(octets[999], stream.toByteArray()[1000]);
+    }
+}